@@ -0,0 +1,261 @@
+/*
+ * Copyright 2021 Alex Thomson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.lxgaming.binary;
+
+import io.github.lxgaming.binary.tag.Tag;
+import io.github.lxgaming.binary.util.ByteBufferInputStream;
+import org.checkerframework.checker.index.qual.NonNegative;
+import org.checkerframework.checker.nullness.qual.NonNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+/**
+ * Runs a {@link BinarySerializer} on a caller supplied {@link Executor}.
+ * <p>
+ * Stream operations run entirely on the executor, file operations encode or decode on the executor and transfer the
+ * bytes through an {@link AsynchronousFileChannel} so no thread is blocked while the disk is busy.
+ */
+public class AsyncBinarySerializer {
+    
+    private final BinarySerializer serializer;
+    private final Executor executor;
+    
+    public AsyncBinarySerializer(@NonNull BinarySerializer serializer, @NonNull Executor executor) {
+        this.serializer = serializer;
+        this.executor = executor;
+    }
+    
+    public @NonNull CompletableFuture<Tag> readAsync(@NonNull InputStream input) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return serializer.read(input);
+            } catch (IOException ex) {
+                throw new CompletionException(ex);
+            }
+        }, executor);
+    }
+    
+    public @NonNull CompletableFuture<Void> writeAsync(@NonNull OutputStream output, @NonNull Tag tag) {
+        return CompletableFuture.runAsync(() -> {
+            try {
+                serializer.write(output, tag);
+            } catch (IOException ex) {
+                throw new CompletionException(ex);
+            }
+        }, executor);
+    }
+    
+    /**
+     * Reads a tag stored at the position of the channel.
+     */
+    public @NonNull CompletableFuture<Tag> readAsync(@NonNull AsynchronousFileChannel channel, @NonNegative long position, @NonNegative int length) {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        return read(channel, buffer, position).thenApplyAsync(ignored -> {
+            buffer.flip();
+            try {
+                return serializer.read(new ByteBufferInputStream(buffer));
+            } catch (IOException ex) {
+                throw new CompletionException(ex);
+            }
+        }, executor);
+    }
+    
+    /**
+     * Writes a tag at the position of the channel.
+     *
+     * @return the number of bytes written
+     */
+    public @NonNull CompletableFuture<Integer> writeAsync(@NonNull AsynchronousFileChannel channel, @NonNegative long position, @NonNull Tag tag) {
+        return encode(tag).thenCompose(buffer -> write(channel, buffer, position).thenApply(ignored -> buffer.limit()));
+    }
+    
+    public @NonNull CompletableFuture<Tag> readAsync(@NonNull Path path) {
+        AsynchronousFileChannel channel;
+        long size;
+        try {
+            channel = AsynchronousFileChannel.open(path, StandardOpenOption.READ);
+            size = channel.size();
+        } catch (IOException ex) {
+            return failedFuture(ex);
+        }
+        
+        if (size > Integer.MAX_VALUE) {
+            close(channel);
+            return failedFuture(new IOException(String.format("%s is too large", path)));
+        }
+        
+        return readAsync(channel, 0L, (int) size).whenComplete((tag, ex) -> close(channel));
+    }
+    
+    /**
+     * Encodes the tag, then writes it to a temporary file beside the path which replaces the path once it is on disk, so
+     * a failed encode or write leaves the previous file intact.
+     */
+    public @NonNull CompletableFuture<Void> writeAsync(@NonNull Path path, @NonNull Tag tag) {
+        return encode(tag).thenCompose(buffer -> {
+            Path temporaryPath = path.resolveSibling(path.getFileName() + ".tmp");
+            AsynchronousFileChannel channel;
+            try {
+                channel = AsynchronousFileChannel.open(temporaryPath, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+            } catch (IOException ex) {
+                return failedFuture(ex);
+            }
+            
+            return write(channel, buffer, 0L).thenRunAsync(() -> {
+                try {
+                    channel.force(true);
+                    channel.close();
+                    move(temporaryPath, path);
+                } catch (IOException ex) {
+                    throw new CompletionException(ex);
+                }
+            }, executor).whenComplete((ignored, ex) -> {
+                close(channel);
+                if (ex != null) {
+                    delete(temporaryPath);
+                }
+            });
+        });
+    }
+    
+    public @NonNull BinarySerializer getSerializer() {
+        return serializer;
+    }
+    
+    public @NonNull Executor getExecutor() {
+        return executor;
+    }
+    
+    private CompletableFuture<ByteBuffer> encode(Tag tag) {
+        return CompletableFuture.supplyAsync(() -> {
+            Buffer buffer = new Buffer();
+            try {
+                serializer.write(buffer, tag);
+            } catch (IOException ex) {
+                throw new CompletionException(ex);
+            }
+            
+            return buffer.toByteBuffer();
+        }, executor);
+    }
+    
+    private static CompletableFuture<Void> read(AsynchronousFileChannel channel, ByteBuffer buffer, long position) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        channel.read(buffer, position, future, new CompletionHandler<Integer, CompletableFuture<Void>>() {
+            
+            private long currentPosition = position;
+            
+            @Override
+            public void completed(Integer result, CompletableFuture<Void> attachment) {
+                if (result < 0) {
+                    attachment.completeExceptionally(new EOFException());
+                } else if (buffer.hasRemaining()) {
+                    currentPosition += result;
+                    channel.read(buffer, currentPosition, attachment, this);
+                } else {
+                    attachment.complete(null);
+                }
+            }
+            
+            @Override
+            public void failed(Throwable ex, CompletableFuture<Void> attachment) {
+                attachment.completeExceptionally(ex);
+            }
+        });
+        return future;
+    }
+    
+    private static CompletableFuture<Void> write(AsynchronousFileChannel channel, ByteBuffer buffer, long position) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        channel.write(buffer, position, future, new CompletionHandler<Integer, CompletableFuture<Void>>() {
+            
+            private long currentPosition = position;
+            
+            @Override
+            public void completed(Integer result, CompletableFuture<Void> attachment) {
+                if (buffer.hasRemaining()) {
+                    currentPosition += result;
+                    channel.write(buffer, currentPosition, attachment, this);
+                } else {
+                    attachment.complete(null);
+                }
+            }
+            
+            @Override
+            public void failed(Throwable ex, CompletableFuture<Void> attachment) {
+                attachment.completeExceptionally(ex);
+            }
+        });
+        return future;
+    }
+    
+    private static void close(AsynchronousFileChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException ex) {
+            // no-op
+        }
+    }
+    
+    private static void move(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException ex) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+    
+    private static void delete(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException ex) {
+            // no-op
+        }
+    }
+    
+    private static <T> CompletableFuture<T> failedFuture(Throwable ex) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(ex);
+        return future;
+    }
+    
+    private static final class Buffer extends ByteArrayOutputStream {
+        
+        private Buffer() {
+            super(256);
+        }
+        
+        private ByteBuffer toByteBuffer() {
+            return ByteBuffer.wrap(buf, 0, count);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,209 @@
+/*
+ * Copyright 2021 Alex Thomson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.lxgaming.binary.record;
+
+import io.github.lxgaming.binary.BinarySerializer;
+import io.github.lxgaming.binary.tag.Tag;
+import io.github.lxgaming.binary.util.ByteBufferInputStream;
+import org.checkerframework.checker.index.qual.NonNegative;
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.zip.CRC32;
+
+/**
+ * Random access to the records of a container file through the offset index.
+ * <p>
+ * Records are read with positional reads, or from a read-only mapping of the file when requested, and instances are
+ * safe to share between threads.
+ */
+public class RecordFile implements Closeable {
+    
+    private final FileChannel channel;
+    private final BinarySerializer serializer;
+    private final boolean checksum;
+    private final long[] offsets;
+    private final int size;
+    private final long end;
+    private final @Nullable MappedByteBuffer mappedBuffer;
+    
+    public RecordFile(@NonNull Path path, @NonNull BinarySerializer serializer) throws IOException {
+        this(path, serializer, false);
+    }
+    
+    public RecordFile(@NonNull Path path, @NonNull BinarySerializer serializer, boolean map) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.serializer = serializer;
+        try {
+            this.checksum = RecordFormat.readHeader(channel);
+            RecordFormat.Index index = RecordFormat.readIndex(channel, checksum);
+            this.offsets = index.offsets;
+            this.size = index.size;
+            this.end = index.end;
+            if (map && end <= Integer.MAX_VALUE) {
+                this.mappedBuffer = channel.map(FileChannel.MapMode.READ_ONLY, 0L, end);
+            } else {
+                this.mappedBuffer = null;
+            }
+        } catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+    
+    public int size() {
+        return size;
+    }
+    
+    public boolean isChecksum() {
+        return checksum;
+    }
+    
+    public boolean isMapped() {
+        return mappedBuffer != null;
+    }
+    
+    public long getOffset(@NonNegative int index) {
+        checkIndex(index);
+        return offsets[index];
+    }
+    
+    public @NonNull Tag read(@NonNegative int index) throws IOException {
+        return serializer.read(new ByteBufferInputStream(readPayload(index)));
+    }
+    
+    /**
+     * Reads the payload of the record, verifying its checksum when present.
+     */
+    public @NonNull ByteBuffer readPayload(@NonNegative int index) throws IOException {
+        checkIndex(index);
+        long start = offsets[index];
+        int length = (int) ((index + 1 < size ? offsets[index + 1] : end) - start);
+        ByteBuffer buffer;
+        if (mappedBuffer != null) {
+            buffer = mappedBuffer.duplicate();
+            ((Buffer) buffer).position((int) start).limit((int) start + length);
+            buffer = buffer.slice();
+        } else {
+            buffer = ByteBuffer.allocate(length);
+            RecordFormat.readFully(channel, buffer, start);
+            ((Buffer) buffer).flip();
+        }
+        
+        int payloadLength = buffer.getInt();
+        int expected = checksum ? buffer.getInt() : 0;
+        if (payloadLength != buffer.remaining()) {
+            throw new IOException(String.format("Record %s has an invalid length", index));
+        }
+        
+        if (checksum) {
+            CRC32 crc = new CRC32();
+            crc.update(buffer.duplicate());
+            if ((int) crc.getValue() != expected) {
+                throw new IOException(String.format("Record %s checksum mismatch", index));
+            }
+        }
+        
+        return buffer;
+    }
+    
+    public void forEach(@NonNegative int start, @NonNegative int end, @NonNull RecordConsumer consumer) throws IOException {
+        checkRange(start, end);
+        for (int index = start; index < end; index++) {
+            consumer.accept(index, read(index));
+        }
+    }
+    
+    /**
+     * Reads and consumes the records in the range concurrently, the consumer may be called from any worker thread.
+     */
+    public void forEach(@NonNull ForkJoinPool pool, @NonNegative int start, @NonNegative int end, @NonNull RecordConsumer consumer) throws IOException {
+        checkRange(start, end);
+        int granularity = Math.max(1, (end - start) / (pool.getParallelism() * 8));
+        try {
+            pool.invoke(new ScanTask(start, end, granularity, consumer));
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+    }
+    
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException(String.format("Index: %s, Size: %s", index, size));
+        }
+    }
+    
+    private void checkRange(int start, int end) {
+        if (start < 0 || end > size || start > end) {
+            throw new IndexOutOfBoundsException(String.format("Range: %s-%s, Size: %s", start, end, size));
+        }
+    }
+    
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+    
+    @FunctionalInterface
+    public interface RecordConsumer {
+        
+        void accept(int index, @NonNull Tag tag) throws IOException;
+    }
+    
+    private class ScanTask extends RecursiveAction {
+        
+        private static final long serialVersionUID = 1L;
+        
+        private final int start;
+        private final int end;
+        private final int granularity;
+        private final RecordConsumer consumer;
+        
+        private ScanTask(int start, int end, int granularity, RecordConsumer consumer) {
+            this.start = start;
+            this.end = end;
+            this.granularity = granularity;
+            this.consumer = consumer;
+        }
+        
+        @Override
+        protected void compute() {
+            if (end - start > granularity) {
+                int middle = (start + end) >>> 1;
+                invokeAll(new ScanTask(start, middle, granularity, consumer), new ScanTask(middle, end, granularity, consumer));
+                return;
+            }
+            
+            try {
+                forEach(start, end, consumer);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+    }
+}
\ No newline at end of file
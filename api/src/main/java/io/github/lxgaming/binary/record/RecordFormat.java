@@ -0,0 +1,197 @@
+/*
+ * Copyright 2021 Alex Thomson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.lxgaming.binary.record;
+
+import org.checkerframework.checker.nullness.qual.NonNull;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * Layout of a record container file.
+ * <pre>
+ * header  : int magic, byte version, byte flags, short reserved
+ * record  : int length, [int crc32], byte[length] payload
+ * index   : int -1, int count, long[count] offsets
+ * footer  : long index offset, int index magic
+ * </pre>
+ * The index and footer are only written when a {@link RecordWriter} is closed, files without them are recovered by
+ * scanning the records.
+ */
+public class RecordFormat {
+    
+    public static final int MAGIC = 0x42494E52;
+    public static final int INDEX_MAGIC = 0x42494458;
+    public static final byte VERSION = 1;
+    public static final byte FLAG_CHECKSUM = 0x01;
+    public static final int HEADER_LENGTH = 8;
+    public static final int FOOTER_LENGTH = 12;
+    public static final int INDEX_MARKER = -1;
+    
+    public static int getPrefixLength(boolean checksum) {
+        return checksum ? 8 : 4;
+    }
+    
+    static @NonNull ByteBuffer createHeader(boolean checksum) {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_LENGTH);
+        buffer.putInt(MAGIC);
+        buffer.put(VERSION);
+        buffer.put(checksum ? FLAG_CHECKSUM : 0);
+        buffer.putShort((short) 0);
+        ((Buffer) buffer).flip();
+        return buffer;
+    }
+    
+    static boolean readHeader(@NonNull FileChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_LENGTH);
+        readFully(channel, buffer, 0L);
+        ((Buffer) buffer).flip();
+        return readHeader(buffer);
+    }
+    
+    static boolean readHeader(@NonNull ByteBuffer buffer) throws IOException {
+        if (buffer.getInt() != MAGIC) {
+            throw new IOException("Invalid record file magic");
+        }
+        
+        byte version = buffer.get();
+        if (version != VERSION) {
+            throw new IOException(String.format("Record file version %s is not supported", version));
+        }
+        
+        boolean checksum = (buffer.get() & FLAG_CHECKSUM) != 0;
+        buffer.getShort();
+        return checksum;
+    }
+    
+    static @NonNull ByteBuffer createIndex(long @NonNull [] offsets, int size, long indexOffset) {
+        ByteBuffer buffer = ByteBuffer.allocate(8 + size * 8 + FOOTER_LENGTH);
+        buffer.putInt(INDEX_MARKER);
+        buffer.putInt(size);
+        for (int index = 0; index < size; index++) {
+            buffer.putLong(offsets[index]);
+        }
+        
+        buffer.putLong(indexOffset);
+        buffer.putInt(INDEX_MAGIC);
+        ((Buffer) buffer).flip();
+        return buffer;
+    }
+    
+    /**
+     * Loads the trailing index, or recovers it by scanning the records when the file was not closed cleanly.
+     */
+    static @NonNull Index readIndex(@NonNull FileChannel channel, boolean checksum) throws IOException {
+        long size = channel.size();
+        if (size >= HEADER_LENGTH + 8 + FOOTER_LENGTH) {
+            ByteBuffer footer = ByteBuffer.allocate(FOOTER_LENGTH);
+            readFully(channel, footer, size - FOOTER_LENGTH);
+            ((Buffer) footer).flip();
+            long indexOffset = footer.getLong();
+            if (footer.getInt() == INDEX_MAGIC && indexOffset >= HEADER_LENGTH && indexOffset <= size - FOOTER_LENGTH - 8) {
+                ByteBuffer header = ByteBuffer.allocate(8);
+                readFully(channel, header, indexOffset);
+                ((Buffer) header).flip();
+                int count = header.getInt() == INDEX_MARKER ? header.getInt() : -1;
+                if (count >= 0 && indexOffset + 8 + count * 8L + FOOTER_LENGTH == size) {
+                    ByteBuffer buffer = ByteBuffer.allocate(count * 8);
+                    readFully(channel, buffer, indexOffset + 8);
+                    ((Buffer) buffer).flip();
+                    long[] offsets = new long[Math.max(16, count)];
+                    buffer.asLongBuffer().get(offsets, 0, count);
+                    return new Index(offsets, count, indexOffset);
+                }
+            }
+        }
+        
+        return scan(channel, checksum);
+    }
+    
+    static @NonNull Index scan(@NonNull FileChannel channel, boolean checksum) throws IOException {
+        long size = channel.size();
+        int prefixLength = getPrefixLength(checksum);
+        ByteBuffer prefix = ByteBuffer.allocate(prefixLength);
+        CRC32 crc = new CRC32();
+        long[] offsets = new long[16];
+        int count = 0;
+        long position = HEADER_LENGTH;
+        while (position + prefixLength <= size) {
+            ((Buffer) prefix).clear();
+            readFully(channel, prefix, position);
+            ((Buffer) prefix).flip();
+            int length = prefix.getInt();
+            if (length < 0 || position + prefixLength + length > size) {
+                break;
+            }
+            
+            if (checksum) {
+                ByteBuffer payload = ByteBuffer.allocate(length);
+                readFully(channel, payload, position + prefixLength);
+                ((Buffer) payload).flip();
+                crc.reset();
+                crc.update(payload);
+                if ((int) crc.getValue() != prefix.getInt()) {
+                    break;
+                }
+            }
+            
+            if (count == offsets.length) {
+                offsets = Arrays.copyOf(offsets, count << 1);
+            }
+            
+            offsets[count++] = position;
+            position += prefixLength + length;
+        }
+        
+        return new Index(offsets, count, position);
+    }
+    
+    static void readFully(@NonNull FileChannel channel, @NonNull ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int count = channel.read(buffer, position);
+            if (count < 0) {
+                throw new EOFException();
+            }
+            
+            position += count;
+        }
+    }
+    
+    static void writeFully(@NonNull FileChannel channel, @NonNull ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+    
+    static final class Index {
+        
+        final long[] offsets;
+        final int size;
+        final long end;
+        
+        Index(long @NonNull [] offsets, int size, long end) {
+            this.offsets = offsets;
+            this.size = size;
+            this.end = end;
+        }
+    }
+}
\ No newline at end of file
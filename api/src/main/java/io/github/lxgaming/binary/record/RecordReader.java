@@ -0,0 +1,108 @@
+/*
+ * Copyright 2021 Alex Thomson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.lxgaming.binary.record;
+
+import io.github.lxgaming.binary.BinarySerializer;
+import io.github.lxgaming.binary.tag.Tag;
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+
+/**
+ * Reads the records of a container file in order from a stream.
+ */
+public class RecordReader implements Closeable {
+    
+    private final DataInputStream input;
+    private final BinarySerializer serializer;
+    private final boolean checksum;
+    private final CRC32 crc;
+    private boolean finished;
+    
+    public RecordReader(@NonNull InputStream input, @NonNull BinarySerializer serializer) throws IOException {
+        this.input = new DataInputStream(input);
+        this.serializer = serializer;
+        this.crc = new CRC32();
+        
+        byte[] header = new byte[RecordFormat.HEADER_LENGTH];
+        this.input.readFully(header);
+        this.checksum = RecordFormat.readHeader(ByteBuffer.wrap(header));
+    }
+    
+    /**
+     * Reads the next record.
+     *
+     * @return the tag, or {@code null} once all records have been read
+     */
+    public @Nullable Tag read() throws IOException {
+        byte[] bytes = readPayload();
+        return bytes != null ? serializer.read(new ByteArrayInputStream(bytes)) : null;
+    }
+    
+    public byte @Nullable [] readPayload() throws IOException {
+        if (finished) {
+            return null;
+        }
+        
+        int length;
+        try {
+            length = input.readInt();
+        } catch (EOFException ex) {
+            finished = true;
+            return null;
+        }
+        
+        if (length == RecordFormat.INDEX_MARKER) {
+            finished = true;
+            return null;
+        }
+        
+        if (length < 0) {
+            throw new IOException(String.format("Invalid record length %s", length));
+        }
+        
+        int expected = checksum ? input.readInt() : 0;
+        byte[] bytes = new byte[length];
+        input.readFully(bytes);
+        if (checksum) {
+            crc.reset();
+            crc.update(bytes, 0, bytes.length);
+            if ((int) crc.getValue() != expected) {
+                throw new IOException("Record checksum mismatch");
+            }
+        }
+        
+        return bytes;
+    }
+    
+    public boolean isChecksum() {
+        return checksum;
+    }
+    
+    @Override
+    public void close() throws IOException {
+        input.close();
+    }
+}
\ No newline at end of file
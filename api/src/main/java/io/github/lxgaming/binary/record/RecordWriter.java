@@ -0,0 +1,148 @@
+/*
+ * Copyright 2021 Alex Thomson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.lxgaming.binary.record;
+
+import io.github.lxgaming.binary.BinarySerializer;
+import io.github.lxgaming.binary.tag.Tag;
+import org.checkerframework.checker.nullness.qual.NonNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * Appends length-prefixed records to a container file, writing the offset index when closed.
+ * <p>
+ * Opening an existing file continues after its last record, the previous index is discarded and rewritten on close.
+ */
+public class RecordWriter implements Closeable {
+    
+    private final FileChannel channel;
+    private final BinarySerializer serializer;
+    private final boolean checksum;
+    private final Buffer buffer;
+    private final CRC32 crc;
+    private long[] offsets;
+    private int size;
+    private long position;
+    
+    public RecordWriter(@NonNull Path path, @NonNull BinarySerializer serializer) throws IOException {
+        this(path, serializer, true);
+    }
+    
+    public RecordWriter(@NonNull Path path, @NonNull BinarySerializer serializer, boolean checksum) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.serializer = serializer;
+        this.buffer = new Buffer();
+        this.crc = new CRC32();
+        try {
+            if (channel.size() == 0) {
+                this.checksum = checksum;
+                this.offsets = new long[16];
+                RecordFormat.writeFully(channel, RecordFormat.createHeader(checksum), 0L);
+                this.position = RecordFormat.HEADER_LENGTH;
+            } else {
+                this.checksum = RecordFormat.readHeader(channel);
+                RecordFormat.Index index = RecordFormat.readIndex(channel, this.checksum);
+                this.offsets = index.offsets;
+                this.size = index.size;
+                this.position = index.end;
+                channel.truncate(position);
+            }
+        } catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+    
+    /**
+     * Serializes the tag and appends it as a new record.
+     *
+     * @return the index of the record
+     */
+    public synchronized int append(@NonNull Tag tag) throws IOException {
+        buffer.reset();
+        serializer.write(buffer, tag);
+        
+        int prefixLength = RecordFormat.getPrefixLength(checksum);
+        ByteBuffer prefix = ByteBuffer.allocate(prefixLength);
+        prefix.putInt(buffer.size());
+        if (checksum) {
+            crc.reset();
+            crc.update(buffer.getBytes(), 0, buffer.size());
+            prefix.putInt((int) crc.getValue());
+        }
+        
+        ((java.nio.Buffer) prefix).flip();
+        RecordFormat.writeFully(channel, prefix, position);
+        RecordFormat.writeFully(channel, ByteBuffer.wrap(buffer.getBytes(), 0, buffer.size()), position + prefixLength);
+        
+        if (size == offsets.length) {
+            offsets = Arrays.copyOf(offsets, size << 1);
+        }
+        
+        offsets[size] = position;
+        position += prefixLength + buffer.size();
+        return size++;
+    }
+    
+    public synchronized int size() {
+        return size;
+    }
+    
+    public boolean isChecksum() {
+        return checksum;
+    }
+    
+    /**
+     * Forces appended records to the storage device.
+     */
+    public synchronized void flush() throws IOException {
+        channel.force(false);
+    }
+    
+    @Override
+    public synchronized void close() throws IOException {
+        if (!channel.isOpen()) {
+            return;
+        }
+        
+        try {
+            RecordFormat.writeFully(channel, RecordFormat.createIndex(offsets, size, position), position);
+            channel.force(true);
+        } finally {
+            channel.close();
+        }
+    }
+    
+    private static class Buffer extends ByteArrayOutputStream {
+        
+        private Buffer() {
+            super(256);
+        }
+        
+        private byte[] getBytes() {
+            return buf;
+        }
+    }
+}
\ No newline at end of file
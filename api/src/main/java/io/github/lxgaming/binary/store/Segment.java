@@ -0,0 +1,225 @@
+/*
+ * Copyright 2021 Alex Thomson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.lxgaming.binary.store;
+
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only segment file of a {@link TagStore}.
+ * <pre>
+ * header : int magic, byte version, byte[3] reserved
+ * entry  : int key length, int value length (-1 for removals), int crc32, byte[] key, byte[] value
+ * </pre>
+ */
+final class Segment {
+    
+    static final int MAGIC = 0x42494E53;
+    static final byte VERSION = 1;
+    static final int HEADER_LENGTH = 8;
+    static final int ENTRY_HEADER_LENGTH = 12;
+    static final int TOMBSTONE = -1;
+    
+    final long id;
+    final Path path;
+    final FileChannel channel;
+    final AtomicLong liveBytes;
+    long size;
+    boolean compacting;
+    
+    private Segment(long id, @NonNull Path path, @NonNull FileChannel channel, long size) {
+        this.id = id;
+        this.path = path;
+        this.channel = channel;
+        this.liveBytes = new AtomicLong();
+        this.size = size;
+    }
+    
+    static @NonNull Segment create(@NonNull Path directory, long id) throws IOException {
+        Path path = directory.resolve(getFileName(id));
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+            header.putInt(MAGIC);
+            header.put(VERSION);
+            ((Buffer) header).flip();
+            writeFully(channel, header, 0L);
+            return new Segment(id, path, channel, HEADER_LENGTH);
+        } catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+    
+    static @NonNull Segment open(@NonNull Path path, long id) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+            readFully(channel, header, 0L);
+            ((Buffer) header).flip();
+            if (header.getInt() != MAGIC) {
+                throw new IOException(String.format("Invalid segment magic in %s", path));
+            }
+            
+            byte version = header.get();
+            if (version != VERSION) {
+                throw new IOException(String.format("Segment version %s is not supported", version));
+            }
+            
+            return new Segment(id, path, channel, channel.size());
+        } catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+    
+    static @NonNull String getFileName(long id) {
+        return String.format("%016x.segment", id);
+    }
+    
+    static @NonNull ByteBuffer createEntry(byte @NonNull [] key, byte @Nullable [] value, int valueLength) {
+        ByteBuffer buffer = ByteBuffer.allocate(ENTRY_HEADER_LENGTH + key.length + Math.max(0, valueLength));
+        CRC32 crc = new CRC32();
+        crc.update(key, 0, key.length);
+        if (value != null) {
+            crc.update(value, 0, valueLength);
+        }
+        
+        buffer.putInt(key.length);
+        buffer.putInt(value != null ? valueLength : TOMBSTONE);
+        buffer.putInt((int) crc.getValue());
+        buffer.put(key);
+        if (value != null) {
+            buffer.put(value, 0, valueLength);
+        }
+        
+        ((Buffer) buffer).flip();
+        return buffer;
+    }
+    
+    long append(@NonNull ByteBuffer entry) throws IOException {
+        long position = size;
+        writeFully(channel, entry, position);
+        size = position + entry.limit();
+        return position;
+    }
+    
+    /**
+     * Reads a whole entry, verifying its checksum.
+     */
+    @NonNull ByteBuffer read(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        readFully(channel, buffer, position);
+        ((Buffer) buffer).flip();
+        
+        int keyLength = buffer.getInt();
+        int valueLength = buffer.getInt();
+        int expected = buffer.getInt();
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), ENTRY_HEADER_LENGTH, keyLength + Math.max(0, valueLength));
+        if ((int) crc.getValue() != expected) {
+            throw new IOException(String.format("Entry checksum mismatch at %s in %s", position, path));
+        }
+        
+        ((Buffer) buffer).rewind();
+        return buffer;
+    }
+    
+    /**
+     * Reads every valid entry in order, truncating the segment at the first torn or corrupt entry.
+     */
+    void scan(@NonNull EntryConsumer consumer) throws IOException {
+        long end = channel.size();
+        long position = HEADER_LENGTH;
+        CRC32 crc = new CRC32();
+        byte[] bytes = new byte[256];
+        DataInputStream input = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel.position(position)), 1 << 16));
+        try {
+            while (position + ENTRY_HEADER_LENGTH <= end) {
+                int keyLength = input.readInt();
+                int valueLength = input.readInt();
+                int expected = input.readInt();
+                long entryLength = (long) keyLength + Math.max(0, valueLength);
+                if (keyLength < 0 || valueLength < TOMBSTONE || entryLength > Integer.MAX_VALUE - ENTRY_HEADER_LENGTH || position + ENTRY_HEADER_LENGTH + entryLength > end) {
+                    break;
+                }
+                
+                int length = (int) entryLength;
+                
+                if (bytes.length < length) {
+                    bytes = new byte[Math.max(length, bytes.length << 1)];
+                }
+                
+                input.readFully(bytes, 0, length);
+                crc.reset();
+                crc.update(bytes, 0, length);
+                if ((int) crc.getValue() != expected) {
+                    break;
+                }
+                
+                String key = new String(bytes, 0, keyLength, StandardCharsets.UTF_8);
+                consumer.accept(key, position, ENTRY_HEADER_LENGTH + length, keyLength, valueLength == TOMBSTONE);
+                position += ENTRY_HEADER_LENGTH + length;
+            }
+        } catch (EOFException ex) {
+            // Torn entry at the end of the segment
+        }
+        
+        if (position < end) {
+            channel.truncate(position);
+        }
+        
+        size = position;
+    }
+    
+    static void readFully(@NonNull FileChannel channel, @NonNull ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int count = channel.read(buffer, position);
+            if (count < 0) {
+                throw new EOFException();
+            }
+            
+            position += count;
+        }
+    }
+    
+    static void writeFully(@NonNull FileChannel channel, @NonNull ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+    
+    @FunctionalInterface
+    interface EntryConsumer {
+        
+        void accept(@NonNull String key, long position, int length, int keyLength, boolean tombstone) throws IOException;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,511 @@
+/*
+ * Copyright 2021 Alex Thomson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.lxgaming.binary.store;
+
+import io.github.lxgaming.binary.BinarySerializer;
+import io.github.lxgaming.binary.tag.CompoundTag;
+import io.github.lxgaming.binary.tag.Tag;
+import io.github.lxgaming.binary.util.ByteBufferInputStream;
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Persistent key to {@link CompoundTag} store backed by append-only segment files.
+ * <p>
+ * Every put or remove is appended to the active segment and the in-memory index is updated to point at it. Writes
+ * from concurrent threads are made durable together by a single fsync (group commit), segments whose records have
+ * mostly been overwritten are compacted in the background, and opening a store rebuilds the index by scanning the
+ * segments, discarding any torn entry left by a crash.
+ */
+public class TagStore implements Closeable {
+    
+    public static final long DEFAULT_SEGMENT_SIZE = 64L << 20;
+    public static final double DEFAULT_COMPACTION_RATIO = 0.5D;
+    
+    private final Path directory;
+    private final BinarySerializer serializer;
+    private final long segmentSize;
+    private final double compactionRatio;
+    private final boolean sync;
+    private final FileChannel lockChannel;
+    private final FileLock lock;
+    private final Map<String, Location> index;
+    private final TreeMap<Long, Segment> segments;
+    private final ExecutorService executor;
+    private final Object writeLock;
+    private final Object syncLock;
+    private Segment active;
+    private volatile long writeSequence;
+    private long syncedSequence;
+    private boolean syncing;
+    private volatile boolean closed;
+    private volatile @Nullable IOException compactionFailure;
+    
+    public TagStore(@NonNull Path directory, @NonNull BinarySerializer serializer) throws IOException {
+        this(directory, serializer, DEFAULT_SEGMENT_SIZE, DEFAULT_COMPACTION_RATIO, true);
+    }
+    
+    /**
+     * @param segmentSize     the size after which a new segment is started
+     * @param compactionRatio the fraction of live bytes below which a segment is compacted
+     * @param sync            whether writes wait for the data to reach the storage device
+     */
+    public TagStore(@NonNull Path directory, @NonNull BinarySerializer serializer, long segmentSize, double compactionRatio, boolean sync) throws IOException {
+        this.directory = directory;
+        this.serializer = serializer;
+        this.segmentSize = segmentSize;
+        this.compactionRatio = compactionRatio;
+        this.sync = sync;
+        this.index = new ConcurrentHashMap<>();
+        this.segments = new TreeMap<>();
+        this.writeLock = new Object();
+        this.syncLock = new Object();
+        
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "TagStore Compaction");
+            thread.setDaemon(true);
+            return thread;
+        });
+        
+        Files.createDirectories(directory);
+        this.lockChannel = FileChannel.open(directory.resolve("store.lock"), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        try {
+            this.lock = lockChannel.tryLock();
+            if (lock == null) {
+                throw new IOException(String.format("%s is locked by another process", directory));
+            }
+            
+            recover();
+        } catch (IOException | RuntimeException ex) {
+            executor.shutdown();
+            closeSegments();
+            lockChannel.close();
+            throw ex;
+        }
+    }
+    
+    public @Nullable CompoundTag get(@NonNull String key) throws IOException {
+        while (true) {
+            Location location = index.get(key);
+            if (location == null) {
+                return null;
+            }
+            
+            ByteBuffer buffer;
+            try {
+                buffer = location.segment.read(location.position, location.length);
+            } catch (ClosedChannelException ex) {
+                // The segment was compacted after the lookup, retry against the new location
+                checkOpen();
+                if (index.get(key) == location) {
+                    throw ex;
+                }
+                
+                continue;
+            }
+            
+            ((java.nio.Buffer) buffer).position(Segment.ENTRY_HEADER_LENGTH + location.keyLength);
+            Tag tag = serializer.read(new ByteBufferInputStream(buffer));
+            if (!(tag instanceof CompoundTag)) {
+                throw new IOException(String.format("%s is not a CompoundTag", tag.getClass().getSimpleName()));
+            }
+            
+            return (CompoundTag) tag;
+        }
+    }
+    
+    public void put(@NonNull String key, @NonNull CompoundTag value) throws IOException {
+        Buffer buffer = new Buffer();
+        serializer.write(buffer, value);
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer entry = Segment.createEntry(keyBytes, buffer.getBytes(), buffer.size());
+        
+        long sequence;
+        synchronized (writeLock) {
+            checkOpen();
+            long position = append(entry);
+            active.liveBytes.addAndGet(entry.limit());
+            release(index.put(key, new Location(active, position, entry.limit(), keyBytes.length)));
+            sequence = ++writeSequence;
+        }
+        
+        if (sync) {
+            sync(sequence);
+        }
+    }
+    
+    /**
+     * @return {@code true} if the key was present
+     */
+    public boolean remove(@NonNull String key) throws IOException {
+        ByteBuffer entry = Segment.createEntry(key.getBytes(StandardCharsets.UTF_8), null, 0);
+        long sequence;
+        synchronized (writeLock) {
+            checkOpen();
+            if (!index.containsKey(key)) {
+                return false;
+            }
+            
+            append(entry);
+            release(index.remove(key));
+            sequence = ++writeSequence;
+        }
+        
+        if (sync) {
+            sync(sequence);
+        }
+        
+        return true;
+    }
+    
+    public boolean contains(@NonNull String key) {
+        return index.containsKey(key);
+    }
+    
+    public int size() {
+        return index.size();
+    }
+    
+    public @NonNull Set<String> keys() {
+        return Collections.unmodifiableSet(index.keySet());
+    }
+    
+    /**
+     * Forces every write made so far to the storage device.
+     */
+    public void flush() throws IOException {
+        checkOpen();
+        sync(writeSequence);
+    }
+    
+    /**
+     * Compacts every inactive segment below the compaction ratio on the calling thread.
+     */
+    public void compact() throws IOException {
+        List<Segment> candidates = new ArrayList<>();
+        synchronized (writeLock) {
+            checkOpen();
+            for (Segment segment : segments.values()) {
+                if (segment != active && !segment.compacting && isCompactable(segment)) {
+                    segment.compacting = true;
+                    candidates.add(segment);
+                }
+            }
+        }
+        
+        for (Segment segment : candidates) {
+            compact(segment);
+        }
+    }
+    
+    public @NonNull Path getDirectory() {
+        return directory;
+    }
+    
+    public int getSegmentCount() {
+        synchronized (writeLock) {
+            return segments.size();
+        }
+    }
+    
+    @Override
+    public void close() throws IOException {
+        synchronized (writeLock) {
+            if (closed) {
+                return;
+            }
+            
+            closed = true;
+        }
+        
+        executor.shutdown();
+        try {
+            executor.awaitTermination(1L, TimeUnit.MINUTES);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        
+        try {
+            synchronized (writeLock) {
+                active.channel.force(true);
+            }
+        } finally {
+            closeSegments();
+            lock.release();
+            lockChannel.close();
+        }
+        
+        IOException failure = compactionFailure;
+        if (failure != null) {
+            throw new IOException("Background compaction failed", failure);
+        }
+    }
+    
+    private void recover() throws IOException {
+        List<Path> paths = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*.segment")) {
+            for (Path path : stream) {
+                paths.add(path);
+            }
+        }
+        
+        for (Path path : paths) {
+            String fileName = path.getFileName().toString();
+            long id;
+            try {
+                id = Long.parseUnsignedLong(fileName.substring(0, fileName.length() - ".segment".length()), 16);
+            } catch (NumberFormatException ex) {
+                continue;
+            }
+            
+            segments.put(id, Segment.open(path, id));
+        }
+        
+        for (Segment segment : segments.values()) {
+            segment.scan((key, position, length, keyLength, tombstone) -> {
+                Location previous;
+                if (tombstone) {
+                    previous = index.remove(key);
+                } else {
+                    previous = index.put(key, new Location(segment, position, length, keyLength));
+                    segment.liveBytes.addAndGet(length);
+                }
+                
+                if (previous != null) {
+                    previous.segment.liveBytes.addAndGet(-previous.length);
+                }
+            });
+        }
+        
+        if (segments.isEmpty()) {
+            active = Segment.create(directory, 0L);
+            segments.put(active.id, active);
+        } else {
+            active = segments.lastEntry().getValue();
+        }
+        
+        synchronized (writeLock) {
+            for (Segment segment : segments.values()) {
+                scheduleCompaction(segment);
+            }
+        }
+    }
+    
+    /**
+     * Appends the entry to the active segment, starting a new segment once it is full. Must hold the write lock.
+     */
+    private long append(ByteBuffer entry) throws IOException {
+        if (active.size > Segment.HEADER_LENGTH && active.size + entry.limit() > segmentSize) {
+            Segment previous = active;
+            previous.channel.force(false);
+            active = Segment.create(directory, previous.id + 1);
+            segments.put(active.id, active);
+            scheduleCompaction(previous);
+        }
+        
+        return active.append(entry);
+    }
+    
+    /**
+     * Accounts for a record that has been superseded. Must hold the write lock.
+     */
+    private void release(@Nullable Location location) {
+        if (location == null) {
+            return;
+        }
+        
+        location.segment.liveBytes.addAndGet(-location.length);
+        scheduleCompaction(location.segment);
+    }
+    
+    private boolean isCompactable(Segment segment) {
+        return segment.liveBytes.get() < (segment.size - Segment.HEADER_LENGTH) * compactionRatio;
+    }
+    
+    private void scheduleCompaction(Segment segment) {
+        if (segment == active || segment.compacting || !isCompactable(segment)) {
+            return;
+        }
+        
+        segment.compacting = true;
+        executor.execute(() -> {
+            try {
+                compact(segment);
+            } catch (IOException ex) {
+                if (!closed) {
+                    compactionFailure = ex;
+                }
+            }
+        });
+    }
+    
+    /**
+     * Copies the live entries of the segment to the active segment and deletes it.
+     */
+    private void compact(Segment segment) throws IOException {
+        if (closed) {
+            return;
+        }
+        
+        segment.scan((key, position, length, keyLength, tombstone) -> {
+            synchronized (writeLock) {
+                checkOpen();
+                if (tombstone) {
+                    // Removals only need to survive while an older segment may still hold the key
+                    if (index.containsKey(key) || segments.firstKey() == segment.id) {
+                        return;
+                    }
+                    
+                    append(segment.read(position, length));
+                    return;
+                }
+                
+                Location location = index.get(key);
+                if (location == null || location.segment != segment || location.position != position) {
+                    return;
+                }
+                
+                long newPosition = append(segment.read(position, length));
+                active.liveBytes.addAndGet(length);
+                index.put(key, new Location(active, newPosition, length, keyLength));
+                segment.liveBytes.addAndGet(-length);
+                writeSequence++;
+            }
+        });
+        
+        flush();
+        synchronized (writeLock) {
+            segments.remove(segment.id);
+        }
+        
+        segment.channel.close();
+        Files.deleteIfExists(segment.path);
+    }
+    
+    private void sync(long sequence) throws IOException {
+        synchronized (syncLock) {
+            while (syncedSequence < sequence && syncing) {
+                try {
+                    syncLock.wait();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException();
+                }
+            }
+            
+            if (syncedSequence >= sequence) {
+                return;
+            }
+            
+            syncing = true;
+        }
+        
+        // Every write up to the target is either in the active segment or a segment forced when it was rolled
+        long target;
+        Segment segment;
+        synchronized (writeLock) {
+            target = writeSequence;
+            segment = active;
+        }
+        
+        boolean success = false;
+        try {
+            segment.channel.force(false);
+            success = true;
+        } finally {
+            synchronized (syncLock) {
+                syncing = false;
+                if (success) {
+                    syncedSequence = Math.max(syncedSequence, target);
+                }
+                
+                syncLock.notifyAll();
+            }
+        }
+    }
+    
+    private void checkOpen() throws IOException {
+        if (closed) {
+            throw new IOException("TagStore is closed");
+        }
+    }
+    
+    private void closeSegments() throws IOException {
+        IOException failure = null;
+        for (Segment segment : segments.values()) {
+            try {
+                segment.channel.close();
+            } catch (IOException ex) {
+                failure = ex;
+            }
+        }
+        
+        if (failure != null) {
+            throw failure;
+        }
+    }
+    
+    private static final class Location {
+        
+        private final Segment segment;
+        private final long position;
+        private final int length;
+        private final int keyLength;
+        
+        private Location(Segment segment, long position, int length, int keyLength) {
+            this.segment = segment;
+            this.position = position;
+            this.length = length;
+            this.keyLength = keyLength;
+        }
+    }
+    
+    private static final class Buffer extends ByteArrayOutputStream {
+        
+        private Buffer() {
+            super(256);
+        }
+        
+        private byte[] getBytes() {
+            return buf;
+        }
+    }
+}
\ No newline at end of file
@@ -16,17 +16,30 @@
 
 package io.github.lxgaming.binary.tag;
 
+import io.github.lxgaming.binary.util.TagUtils;
 import org.checkerframework.checker.nullness.qual.NonNull;
 import org.checkerframework.checker.nullness.qual.Nullable;
 
+import java.util.AbstractCollection;
+import java.util.AbstractSet;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
 
-public final class CompoundTag implements CollectionTag {
+public class CompoundTag implements CollectionTag {
     
     private final Map<String, Tag> tags;
+    private int modCount;
+    private Set<String> dirtyKeys;
+    private Set<String> changedKeys;
+    private Tag parent;
+    private String parentKey;
+    private int parentIndex;
     
     public CompoundTag() {
         this(new HashMap<>());
@@ -46,26 +59,180 @@ public final class CompoundTag implements CollectionTag {
     
     public void put(@NonNull String key, @NonNull Tag tag) {
         this.tags.put(key, tag);
+        changed(key);
     }
     
     public void remove(@NonNull String key) {
-        this.tags.remove(key);
+        if (this.tags.remove(key) != null) {
+            changed(key);
+        }
     }
     
     public void clear() {
+        if (isTracking()) {
+            for (String key : new ArrayList<>(this.tags.keySet())) {
+                remove(key);
+            }
+            
+            return;
+        }
+        
         this.tags.clear();
+        modified();
     }
     
+    /**
+     * A view of the keys, removing a key through the view removes it through {@link #remove(String)}.
+     */
     public @NonNull Set<String> keySet() {
-        return this.tags.keySet();
+        return new AbstractSet<String>() {
+            
+            @Override
+            public @NonNull Iterator<String> iterator() {
+                EntryIterator iterator = new EntryIterator(false);
+                return new Iterator<String>() {
+                    
+                    @Override
+                    public boolean hasNext() {
+                        return iterator.hasNext();
+                    }
+                    
+                    @Override
+                    public String next() {
+                        return iterator.nextEntry().getKey();
+                    }
+                    
+                    @Override
+                    public void remove() {
+                        iterator.remove();
+                    }
+                };
+            }
+            
+            @Override
+            public boolean contains(Object o) {
+                return CompoundTag.this.tags.containsKey(o);
+            }
+            
+            @Override
+            public boolean remove(Object o) {
+                if (!(o instanceof String) || !CompoundTag.this.tags.containsKey(o)) {
+                    return false;
+                }
+                
+                CompoundTag.this.remove((String) o);
+                return true;
+            }
+            
+            @Override
+            public void clear() {
+                CompoundTag.this.clear();
+            }
+            
+            @Override
+            public int size() {
+                return CompoundTag.this.tags.size();
+            }
+        };
     }
     
+    /**
+     * A view of the tags, removing a tag through the view removes its key through {@link #remove(String)}.
+     */
     public @NonNull Collection<Tag> values() {
-        return this.tags.values();
+        return new AbstractCollection<Tag>() {
+            
+            @Override
+            public @NonNull Iterator<Tag> iterator() {
+                EntryIterator iterator = new EntryIterator(false);
+                return new Iterator<Tag>() {
+                    
+                    @Override
+                    public boolean hasNext() {
+                        return iterator.hasNext();
+                    }
+                    
+                    @Override
+                    public Tag next() {
+                        return iterator.nextEntry().getValue();
+                    }
+                    
+                    @Override
+                    public void remove() {
+                        iterator.remove();
+                    }
+                };
+            }
+            
+            @Override
+            public boolean contains(Object o) {
+                return CompoundTag.this.tags.containsValue(o);
+            }
+            
+            @Override
+            public void clear() {
+                CompoundTag.this.clear();
+            }
+            
+            @Override
+            public int size() {
+                return CompoundTag.this.tags.size();
+            }
+        };
     }
     
+    /**
+     * A view of the entries, removing an entry or setting its value through the view goes through
+     * {@link #remove(String)} and {@link #put(String, Tag)}.
+     */
     public @NonNull Set<Map.Entry<String, Tag>> entrySet() {
-        return this.tags.entrySet();
+        return new AbstractSet<Map.Entry<String, Tag>>() {
+            
+            @Override
+            public @NonNull Iterator<Map.Entry<String, Tag>> iterator() {
+                return new EntryIterator(true);
+            }
+            
+            @Override
+            public boolean contains(Object o) {
+                if (!(o instanceof Map.Entry)) {
+                    return false;
+                }
+                
+                Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
+                Tag tag = CompoundTag.this.tags.get(entry.getKey());
+                return tag != null && tag.equals(entry.getValue());
+            }
+            
+            @Override
+            public boolean remove(Object o) {
+                if (!contains(o)) {
+                    return false;
+                }
+                
+                CompoundTag.this.remove((String) ((Map.Entry<?, ?>) o).getKey());
+                return true;
+            }
+            
+            @Override
+            public void clear() {
+                CompoundTag.this.clear();
+            }
+            
+            @Override
+            public int size() {
+                return CompoundTag.this.tags.size();
+            }
+        };
+    }
+    
+    /**
+     * The backing entries, for callers which only read the compound without allocating an entry per key as
+     * {@link #entrySet()} does. A value set on one of these entries is not seen by tracking or memoization, removals
+     * through the iterator are.
+     */
+    public @NonNull Iterable<Map.Entry<String, Tag>> entries() {
+        return () -> new EntryIterator(false);
     }
     
     // region Boolean
@@ -80,7 +247,7 @@ public final class CompoundTag implements CollectionTag {
     }
     
     public void putBoolean(@NonNull String key, boolean value) {
-        this.tags.put(key, new BooleanTag(value));
+        put(key, new BooleanTag(value));
     }
     
     // endregion
@@ -96,7 +263,7 @@ public final class CompoundTag implements CollectionTag {
     }
     
     public void putByte(@NonNull String key, byte value) {
-        this.tags.put(key, new ByteTag(value));
+        put(key, new ByteTag(value));
     }
     
     // endregion
@@ -112,7 +279,7 @@ public final class CompoundTag implements CollectionTag {
     }
     
     public void putShort(@NonNull String key, short value) {
-        this.tags.put(key, new ShortTag(value));
+        put(key, new ShortTag(value));
     }
     
     // endregion
@@ -128,7 +295,7 @@ public final class CompoundTag implements CollectionTag {
     }
     
     public void putInt(@NonNull String key, int value) {
-        this.tags.put(key, new IntTag(value));
+        put(key, new IntTag(value));
     }
     
     // endregion
@@ -144,7 +311,7 @@ public final class CompoundTag implements CollectionTag {
     }
     
     public void putLong(@NonNull String key, long value) {
-        this.tags.put(key, new LongTag(value));
+        put(key, new LongTag(value));
     }
     
     // endregion
@@ -160,7 +327,7 @@ public final class CompoundTag implements CollectionTag {
     }
     
     public void putFloat(@NonNull String key, float value) {
-        this.tags.put(key, new FloatTag(value));
+        put(key, new FloatTag(value));
     }
     
     // endregion
@@ -176,7 +343,7 @@ public final class CompoundTag implements CollectionTag {
     }
     
     public void putDouble(@NonNull String key, double value) {
-        this.tags.put(key, new DoubleTag(value));
+        put(key, new DoubleTag(value));
     }
     
     // endregion
@@ -193,7 +360,7 @@ public final class CompoundTag implements CollectionTag {
     }
     
     public void putByteArray(@NonNull String key, byte @NonNull [] value) {
-        this.tags.put(key, new ByteArrayTag(value));
+        put(key, new ByteArrayTag(value));
     }
     
     // endregion
@@ -209,7 +376,7 @@ public final class CompoundTag implements CollectionTag {
     }
     
     public void putString(@NonNull String key, @NonNull String value) {
-        this.tags.put(key, new StringTag(value));
+        put(key, new StringTag(value));
     }
     
     // endregion
@@ -226,7 +393,7 @@ public final class CompoundTag implements CollectionTag {
     }
     
     public void putShortArray(@NonNull String key, short @NonNull [] value) {
-        this.tags.put(key, new ShortArrayTag(value));
+        put(key, new ShortArrayTag(value));
     }
     
     // endregion
@@ -243,7 +410,7 @@ public final class CompoundTag implements CollectionTag {
     }
     
     public void putIntArray(@NonNull String key, int @NonNull [] value) {
-        this.tags.put(key, new IntArrayTag(value));
+        put(key, new IntArrayTag(value));
     }
     
     // endregion
@@ -260,7 +427,7 @@ public final class CompoundTag implements CollectionTag {
     }
     
     public void putLongArray(@NonNull String key, long @NonNull [] value) {
-        this.tags.put(key, new LongArrayTag(value));
+        put(key, new LongArrayTag(value));
     }
     
     // endregion
@@ -277,7 +444,7 @@ public final class CompoundTag implements CollectionTag {
     }
     
     public void putFloatArray(@NonNull String key, float @NonNull [] value) {
-        this.tags.put(key, new FloatArrayTag(value));
+        put(key, new FloatArrayTag(value));
     }
     
     // endregion
@@ -294,7 +461,7 @@ public final class CompoundTag implements CollectionTag {
     }
     
     public void putDoubleArray(@NonNull String key, double @NonNull [] value) {
-        this.tags.put(key, new DoubleArrayTag(value));
+        put(key, new DoubleArrayTag(value));
     }
     
     // endregion
@@ -335,7 +502,7 @@ public final class CompoundTag implements CollectionTag {
     }
     
     public void putList(@NonNull String key, @NonNull ListTag value) {
-        this.tags.put(key, value);
+        put(key, value);
     }
     
     // endregion
@@ -352,7 +519,121 @@ public final class CompoundTag implements CollectionTag {
     }
     
     public void putCompound(@NonNull String key, @NonNull CompoundTag value) {
-        this.tags.put(key, value);
+        put(key, value);
+    }
+    
+    // endregion
+    
+    /**
+     * Counts the updates made through this compound, not including updates made to the tags it holds.
+     */
+    public int getModCount() {
+        return modCount;
+    }
+    
+    protected void modified() {
+        modCount++;
+    }
+    
+    /**
+     * Records an update to the key made through this compound.
+     */
+    protected void changed(@NonNull String key) {
+        modified();
+        if (!isTracking()) {
+            return;
+        }
+        
+        Tag tag = this.tags.get(key);
+        if (tag != null) {
+            TagTracking.attach(tag, this, key, -1);
+        }
+        
+        this.changedKeys.add(key);
+        childChanged(key);
+    }
+    
+    // region Tracking
+    
+    /**
+     * Enables change tracking on this compound and every compound and list it holds, and on those added later.
+     * <p>
+     * Scalar tags are not tracked, a scalar changed in place through its {@code setValue} is not marked dirty and must
+     * be replaced with {@link #put(String, Tag)} instead.
+     */
+    public void track() {
+        TagTracking.track(this);
+    }
+    
+    public boolean isTracking() {
+        return this.dirtyKeys != null;
+    }
+    
+    /**
+     * Whether any key has been updated, or any tag held by a key has changed, since the last {@link #markClean()}.
+     */
+    public boolean isDirty() {
+        return this.dirtyKeys != null && !this.dirtyKeys.isEmpty();
+    }
+    
+    /**
+     * The keys which have been updated, or whose tags have changed, since the last {@link #markClean()}.
+     */
+    public @NonNull Set<String> getDirtyKeys() {
+        return this.dirtyKeys != null ? new HashSet<>(this.dirtyKeys) : Collections.emptySet();
+    }
+    
+    /**
+     * The keys which have been put or removed through this compound since the last {@link #markClean()}, a subset of
+     * {@link #getDirtyKeys()}.
+     */
+    public @NonNull Set<String> getChangedKeys() {
+        return this.changedKeys != null ? new HashSet<>(this.changedKeys) : Collections.emptySet();
+    }
+    
+    /**
+     * Marks this compound and every dirty tag it holds clean.
+     */
+    public void markClean() {
+        TagTracking.markClean(this);
+    }
+    
+    /**
+     * Creates the sets holding dirty keys, which may be updated by any thread that may update this compound.
+     */
+    protected @NonNull Set<String> createKeySet() {
+        return new HashSet<>();
+    }
+    
+    void enableTracking() {
+        if (this.dirtyKeys == null) {
+            this.changedKeys = createKeySet();
+            this.dirtyKeys = createKeySet();
+        }
+    }
+    
+    void setParent(Tag parent, String key, int index) {
+        this.parent = parent;
+        this.parentKey = key;
+        this.parentIndex = index;
+    }
+    
+    void childChanged(String key) {
+        if (this.dirtyKeys == null) {
+            return;
+        }
+        
+        boolean dirty = !this.dirtyKeys.isEmpty();
+        if (this.dirtyKeys.add(key) && !dirty) {
+            TagTracking.notifyParent(this.parent, this.parentKey, this.parentIndex, this);
+        }
+    }
+    
+    void clean() {
+        if (this.dirtyKeys != null) {
+            this.changedKeys.clear();
+            this.dirtyKeys.clear();
+        }
     }
     
     // endregion
@@ -369,21 +650,108 @@ public final class CompoundTag implements CollectionTag {
     
     @Override
     public @NonNull CompoundTag copy() {
-        CompoundTag compound = new CompoundTag();
-        for (Map.Entry<String, Tag> entry : this.tags.entrySet()) {
-            compound.put(entry.getKey(), entry.getValue().copy());
-        }
-        
-        return compound;
+        return (CompoundTag) TagUtils.copy(this);
     }
     
     @Override
     public int hashCode() {
-        return this.tags.hashCode();
+        return TagUtils.hashCode(this);
     }
     
     @Override
     public boolean equals(Object obj) {
-        return this == obj || (obj instanceof CompoundTag && this.tags.equals(((CompoundTag) obj).tags));
+        return this == obj || (obj instanceof CompoundTag && TagUtils.equals(this, (CompoundTag) obj));
+    }
+    
+    /**
+     * Iterates the entries, routing removals through {@link #changed(String)} and, when wrapping them, values set on an
+     * entry through {@link #put(String, Tag)}.
+     */
+    private final class EntryIterator implements Iterator<Map.Entry<String, Tag>> {
+        
+        private final Iterator<Map.Entry<String, Tag>> iterator = CompoundTag.this.tags.entrySet().iterator();
+        private final boolean wrap;
+        private String key;
+        
+        private EntryIterator(boolean wrap) {
+            this.wrap = wrap;
+        }
+        
+        @Override
+        public boolean hasNext() {
+            return iterator.hasNext();
+        }
+        
+        @Override
+        public Map.Entry<String, Tag> next() {
+            Map.Entry<String, Tag> entry = nextEntry();
+            return wrap ? new Entry(entry.getKey(), entry.getValue()) : entry;
+        }
+        
+        @Override
+        public void remove() {
+            if (key == null) {
+                throw new IllegalStateException();
+            }
+            
+            iterator.remove();
+            changed(key);
+            key = null;
+        }
+        
+        Map.Entry<String, Tag> nextEntry() {
+            Map.Entry<String, Tag> entry = iterator.next();
+            key = entry.getKey();
+            return entry;
+        }
+    }
+    
+    private final class Entry implements Map.Entry<String, Tag> {
+        
+        private final String key;
+        private Tag value;
+        
+        private Entry(String key, Tag value) {
+            this.key = key;
+            this.value = value;
+        }
+        
+        @Override
+        public String getKey() {
+            return key;
+        }
+        
+        @Override
+        public Tag getValue() {
+            return value;
+        }
+        
+        @Override
+        public Tag setValue(Tag value) {
+            Tag previous = this.value;
+            put(key, value);
+            this.value = value;
+            return previous;
+        }
+        
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Map.Entry)) {
+                return false;
+            }
+            
+            Map.Entry<?, ?> entry = (Map.Entry<?, ?>) obj;
+            return key.equals(entry.getKey()) && value.equals(entry.getValue());
+        }
+        
+        @Override
+        public int hashCode() {
+            return key.hashCode() ^ value.hashCode();
+        }
+        
+        @Override
+        public String toString() {
+            return key + "=" + value;
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2021 Alex Thomson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.lxgaming.binary.tag;
+
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.util.HashMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * A {@link CompoundTag} backed by a {@link ConcurrentMap} which may be read, updated and serialized by multiple threads
+ * without external locking.
+ * <p>
+ * The update helpers replace values atomically rather than mutating the tag already stored, so a value obtained from
+ * {@link #get(String)} is never changed by another thread through this compound. Iteration is weakly consistent and
+ * serializers write a {@link #snapshot()} so the entry count always matches the entries written.
+ */
+public class ConcurrentCompoundTag extends CompoundTag {
+    
+    private final ConcurrentMap<String, Tag> tags;
+    private final AtomicInteger modCount;
+    
+    public ConcurrentCompoundTag() {
+        this(new ConcurrentHashMap<>());
+    }
+    
+    public ConcurrentCompoundTag(@NonNull ConcurrentMap<String, Tag> tags) {
+        super(tags);
+        this.tags = tags;
+        this.modCount = new AtomicInteger();
+    }
+    
+    public @Nullable Tag putIfAbsent(@NonNull String key, @NonNull Tag tag) {
+        Tag previous = this.tags.putIfAbsent(key, tag);
+        if (previous == null) {
+            changed(key);
+        }
+        
+        return previous;
+    }
+    
+    public @NonNull Tag computeIfAbsent(@NonNull String key, @NonNull Function<String, Tag> function) {
+        boolean[] computed = new boolean[1];
+        Tag tag = this.tags.computeIfAbsent(key, k -> {
+            computed[0] = true;
+            return function.apply(k);
+        });
+        
+        if (computed[0]) {
+            changed(key);
+        }
+        
+        return tag;
+    }
+    
+    public @Nullable Tag compute(@NonNull String key, @NonNull BiFunction<String, Tag, Tag> function) {
+        Tag tag = this.tags.compute(key, function);
+        changed(key);
+        return tag;
+    }
+    
+    public boolean replace(@NonNull String key, @NonNull Tag expected, @NonNull Tag tag) {
+        if (!this.tags.replace(key, expected, tag)) {
+            return false;
+        }
+        
+        changed(key);
+        return true;
+    }
+    
+    public boolean remove(@NonNull String key, @NonNull Tag expected) {
+        if (!this.tags.remove(key, expected)) {
+            return false;
+        }
+        
+        changed(key);
+        return true;
+    }
+    
+    public int incrementInt(@NonNull String key) {
+        return addInt(key, 1);
+    }
+    
+    /**
+     * Atomically adds to an int, treating a missing or non-int value as {@code 0}.
+     *
+     * @return the updated value
+     */
+    public int addInt(@NonNull String key, int delta) {
+        Tag tag = this.tags.compute(key, (k, value) -> new IntTag(value instanceof IntTag ? ((IntTag) value).getValue() + delta : delta));
+        changed(key);
+        return ((IntTag) tag).getValue();
+    }
+    
+    public long incrementLong(@NonNull String key) {
+        return addLong(key, 1L);
+    }
+    
+    /**
+     * Atomically adds to a long, treating a missing or non-long value as {@code 0}.
+     *
+     * @return the updated value
+     */
+    public long addLong(@NonNull String key, long delta) {
+        Tag tag = this.tags.compute(key, (k, value) -> new LongTag(value instanceof LongTag ? ((LongTag) value).getValue() + delta : delta));
+        changed(key);
+        return ((LongTag) tag).getValue();
+    }
+    
+    /**
+     * Atomically adds to a double, treating a missing or non-double value as {@code 0}.
+     *
+     * @return the updated value
+     */
+    public double addDouble(@NonNull String key, double delta) {
+        Tag tag = this.tags.compute(key, (k, value) -> new DoubleTag(value instanceof DoubleTag ? ((DoubleTag) value).getValue() + delta : delta));
+        changed(key);
+        return ((DoubleTag) tag).getValue();
+    }
+    
+    @Override
+    public int getModCount() {
+        return modCount.get();
+    }
+    
+    @Override
+    protected void modified() {
+        modCount.incrementAndGet();
+    }
+    
+    @Override
+    protected @NonNull Set<String> createKeySet() {
+        return ConcurrentHashMap.newKeySet();
+    }
+    
+    /**
+     * Creates a {@link CompoundTag} holding the entries present while it is created, sharing their values.
+     */
+    public @NonNull CompoundTag snapshot() {
+        return new CompoundTag(new HashMap<>(this.tags));
+    }
+    
+    @Override
+    public @NonNull ConcurrentCompoundTag copy() {
+        return (ConcurrentCompoundTag) super.copy();
+    }
+}
\ No newline at end of file
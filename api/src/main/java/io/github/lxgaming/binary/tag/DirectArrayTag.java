@@ -0,0 +1,79 @@
+/*
+ * Copyright 2021 Alex Thomson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.lxgaming.binary.tag;
+
+import org.checkerframework.checker.nullness.qual.NonNull;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A primitive array stored in a {@link ByteBuffer} rather than on the heap, such as a direct or memory-mapped buffer.
+ * <p>
+ * Elements are big-endian and addressed from the position of the buffer at construction, so a serializer can copy the
+ * buffer as is. A buffer holds at most 2 GiB.
+ */
+public abstract class DirectArrayTag implements CollectionTag {
+    
+    protected final ByteBuffer buffer;
+    private final int width;
+    
+    protected DirectArrayTag(@NonNull ByteBuffer buffer, int width) {
+        if (buffer.remaining() % width != 0) {
+            throw new IllegalArgumentException(String.format("%s bytes is not a multiple of %s", buffer.remaining(), width));
+        }
+        
+        this.buffer = buffer.slice().order(ByteOrder.BIG_ENDIAN);
+        this.width = width;
+    }
+    
+    /**
+     * Returns a view of the backing buffer, changes to its contents are visible to this tag.
+     */
+    public @NonNull ByteBuffer getBuffer() {
+        return buffer.duplicate().order(ByteOrder.BIG_ENDIAN);
+    }
+    
+    /**
+     * Returns the number of bytes used by each element.
+     */
+    public int getWidth() {
+        return width;
+    }
+    
+    @Override
+    public int size() {
+        return buffer.capacity() / width;
+    }
+    
+    protected @NonNull ByteBuffer copyBuffer() {
+        ByteBuffer copy = ByteBuffer.allocateDirect(buffer.capacity());
+        copy.put(buffer.duplicate());
+        copy.clear();
+        return copy;
+    }
+    
+    @Override
+    public int hashCode() {
+        return buffer.duplicate().hashCode();
+    }
+    
+    @Override
+    public boolean equals(Object obj) {
+        return this == obj || (obj != null && obj.getClass() == getClass() && buffer.duplicate().equals(((DirectArrayTag) obj).buffer.duplicate()));
+    }
+}
\ No newline at end of file
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2021 Alex Thomson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.lxgaming.binary.tag;
+
+import org.checkerframework.checker.index.qual.NonNegative;
+import org.checkerframework.checker.nullness.qual.NonNull;
+
+import java.nio.ByteBuffer;
+
+public final class DirectByteArrayTag extends DirectArrayTag {
+    
+    public DirectByteArrayTag(@NonNegative int size) {
+        this(ByteBuffer.allocateDirect(Math.multiplyExact(size, 1)));
+    }
+    
+    public DirectByteArrayTag(@NonNull ByteBuffer buffer) {
+        super(buffer, 1);
+    }
+    
+    public byte get(@NonNegative int index) {
+        return this.buffer.get(index);
+    }
+    
+    public void set(@NonNegative int index, byte value) {
+        this.buffer.put(index, value);
+    }
+    
+    /**
+     * Copies the elements into a new heap array.
+     */
+    public byte @NonNull [] toArray() {
+        byte[] value = new byte[size()];
+        getBuffer().get(value);
+        return value;
+    }
+    
+    @Override
+    public @NonNull DirectByteArrayTag copy() {
+        return new DirectByteArrayTag(copyBuffer());
+    }
+}
\ No newline at end of file
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2021 Alex Thomson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.lxgaming.binary.tag;
+
+import org.checkerframework.checker.index.qual.NonNegative;
+import org.checkerframework.checker.nullness.qual.NonNull;
+
+import java.nio.ByteBuffer;
+
+public final class DirectIntArrayTag extends DirectArrayTag {
+    
+    public DirectIntArrayTag(@NonNegative int size) {
+        this(ByteBuffer.allocateDirect(Math.multiplyExact(size, 4)));
+    }
+    
+    public DirectIntArrayTag(@NonNull ByteBuffer buffer) {
+        super(buffer, 4);
+    }
+    
+    public int get(@NonNegative int index) {
+        return this.buffer.getInt(index << 2);
+    }
+    
+    public void set(@NonNegative int index, int value) {
+        this.buffer.putInt(index << 2, value);
+    }
+    
+    /**
+     * Copies the elements into a new heap array.
+     */
+    public int @NonNull [] toArray() {
+        int[] value = new int[size()];
+        getBuffer().asIntBuffer().get(value);
+        return value;
+    }
+    
+    @Override
+    public @NonNull DirectIntArrayTag copy() {
+        return new DirectIntArrayTag(copyBuffer());
+    }
+}
\ No newline at end of file
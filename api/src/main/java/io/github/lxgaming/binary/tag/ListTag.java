@@ -16,10 +16,12 @@
 
 package io.github.lxgaming.binary.tag;
 
+import io.github.lxgaming.binary.util.TagUtils;
 import org.checkerframework.checker.index.qual.NonNegative;
 import org.checkerframework.checker.nullness.qual.NonNull;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Iterator;
 import java.util.List;
 
@@ -27,6 +29,13 @@ public final class ListTag implements CollectionTag, Iterable<Tag> {
     
     private final List<Tag> tags;
     private Class<? extends Tag> type;
+    private int modCount;
+    private boolean tracking;
+    private boolean structureChanged;
+    private BitSet dirtyIndices;
+    private Tag parent;
+    private String parentKey;
+    private int parentIndex;
     
     public ListTag() {
         this(Tag.class);
@@ -51,35 +60,176 @@ public final class ListTag implements CollectionTag, Iterable<Tag> {
     
     public boolean add(@NonNull Tag tag) {
         checkType(tag.getClass());
-        return this.tags.add(tag);
+        this.tags.add(tag);
+        changed(tag, this.tags.size() - 1, true);
+        return true;
     }
     
     public void add(@NonNegative int index, @NonNull Tag tag) {
         checkType(tag.getClass());
         this.tags.add(index, tag);
+        changed(tag, index, true);
     }
     
     public @NonNull Tag set(@NonNegative int index, @NonNull Tag tag) {
         checkType(tag.getClass());
-        return this.tags.set(index, tag);
+        Tag previous = this.tags.set(index, tag);
+        changed(tag, index, false);
+        return previous;
     }
     
     public boolean remove(@NonNull Tag tag) {
-        return this.tags.remove(tag);
+        if (!this.tags.remove(tag)) {
+            return false;
+        }
+        
+        changed(null, -1, true);
+        return true;
     }
     
     public @NonNull Tag remove(@NonNegative int index) {
-        return this.tags.remove(index);
+        Tag tag = this.tags.remove(index);
+        changed(null, -1, true);
+        return tag;
     }
     
     public void clear() {
         this.tags.clear();
+        changed(null, -1, true);
     }
     
     public @NonNull Class<? extends Tag> getType() {
         return type;
     }
     
+    /**
+     * Counts the updates made through this list, not including updates made to the tags it holds.
+     */
+    public int getModCount() {
+        return modCount;
+    }
+    
+    // region Tracking
+    
+    /**
+     * Enables change tracking on this list and every compound and list it holds, and on those added later.
+     */
+    public void track() {
+        TagTracking.track(this);
+    }
+    
+    public boolean isTracking() {
+        return tracking;
+    }
+    
+    /**
+     * Whether any tag has been added, removed or set, or any tag held has changed, since the last {@link #markClean()}.
+     */
+    public boolean isDirty() {
+        return structureChanged || (dirtyIndices != null && !dirtyIndices.isEmpty());
+    }
+    
+    /**
+     * Whether tags have been added or removed since the last {@link #markClean()}, which shifts indices so that
+     * {@link #getDirtyIndices()} no longer describes every change.
+     */
+    public boolean isStructureChanged() {
+        return structureChanged;
+    }
+    
+    /**
+     * The indices which have been set, or whose tags have changed, since the last {@link #markClean()}.
+     */
+    public @NonNull BitSet getDirtyIndices() {
+        return dirtyIndices != null ? (BitSet) dirtyIndices.clone() : new BitSet();
+    }
+    
+    /**
+     * Marks this list and every dirty tag it holds clean.
+     */
+    public void markClean() {
+        TagTracking.markClean(this);
+    }
+    
+    void enableTracking() {
+        if (!tracking) {
+            tracking = true;
+            dirtyIndices = new BitSet();
+        }
+    }
+    
+    void setParent(Tag parent, String key, int index) {
+        this.parent = parent;
+        this.parentKey = key;
+        this.parentIndex = index;
+    }
+    
+    /**
+     * Marks the index a tag was linked at dirty. A tag no longer at that index has either been detached or outlived a
+     * change to the structure, which is marked instead as it is correct either way.
+     */
+    void childChanged(Tag tag, int index) {
+        if (!tracking || structureChanged) {
+            return;
+        }
+        
+        if (index < this.tags.size() && this.tags.get(index) == tag) {
+            markDirty(index);
+        } else {
+            markDirty(-1);
+        }
+    }
+    
+    void clean() {
+        if (!tracking) {
+            return;
+        }
+        
+        if (structureChanged) {
+            // Tags were added or removed, so bring the index each tag is linked at up to date
+            for (int index = 0; index < this.tags.size(); index++) {
+                TagTracking.link(this.tags.get(index), this, null, index);
+            }
+        }
+        
+        structureChanged = false;
+        dirtyIndices.clear();
+    }
+    
+    private void changed(Tag tag, int index, boolean structureChanged) {
+        modCount++;
+        if (!tracking) {
+            return;
+        }
+        
+        if (tag != null) {
+            TagTracking.attach(tag, this, null, index);
+        }
+        
+        markDirty(structureChanged ? -1 : index);
+    }
+    
+    /**
+     * Marks an index dirty, or the structure of the list changed for {@code -1}, notifying the parent if this list was
+     * clean.
+     */
+    private void markDirty(int index) {
+        boolean dirty = isDirty();
+        if (index == -1) {
+            structureChanged = true;
+        } else if (dirtyIndices.get(index)) {
+            return;
+        } else {
+            dirtyIndices.set(index);
+        }
+        
+        if (!dirty) {
+            TagTracking.notifyParent(parent, parentKey, parentIndex, this);
+        }
+    }
+    
+    // endregion
+    
     private void checkType(@NonNull Class<? extends Tag> type) {
         if (this.type == Tag.class) {
             this.type = type;
@@ -90,9 +240,30 @@ public final class ListTag implements CollectionTag, Iterable<Tag> {
         }
     }
     
+    /**
+     * Removing a tag through the returned iterator is recorded as a change to the structure of this list.
+     */
     @Override
     public @NonNull Iterator<Tag> iterator() {
-        return this.tags.iterator();
+        Iterator<Tag> iterator = this.tags.iterator();
+        return new Iterator<Tag>() {
+            
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+            
+            @Override
+            public Tag next() {
+                return iterator.next();
+            }
+            
+            @Override
+            public void remove() {
+                iterator.remove();
+                changed(null, -1, true);
+            }
+        };
     }
     
     @Override
@@ -107,21 +278,16 @@ public final class ListTag implements CollectionTag, Iterable<Tag> {
     
     @Override
     public @NonNull ListTag copy() {
-        ListTag list = new ListTag(this.type);
-        for (Tag tag : this.tags) {
-            list.tags.add(tag.copy());
-        }
-        
-        return list;
+        return (ListTag) TagUtils.copy(this);
     }
     
     @Override
     public int hashCode() {
-        return this.tags.hashCode();
+        return TagUtils.hashCode(this);
     }
     
     @Override
     public boolean equals(Object obj) {
-        return this == obj || (obj instanceof ListTag && this.tags.equals(((ListTag) obj).tags));
+        return this == obj || (obj instanceof ListTag && TagUtils.equals(this, (ListTag) obj));
     }
 }
\ No newline at end of file
@@ -0,0 +1,168 @@
+/*
+ * Copyright 2021 Alex Thomson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.lxgaming.binary.tag;
+
+import io.github.lxgaming.binary.util.HashTrie;
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A {@link CompoundTag} whose entries are held in a {@link HashTrie}.
+ * <p>
+ * Every update swaps in a new version of the trie which shares structure with the previous one, so {@link #snapshot()}
+ * is {@code O(1)} and a snapshot never observes later updates to this compound. Values are shared rather than copied,
+ * nested compounds and mutable tags such as arrays are only isolated if they are replaced through {@link #put} instead
+ * of being modified in place, which is how a tree of persistent compounds should be updated while a snapshot of it is
+ * being saved.
+ */
+public class PersistentCompoundTag extends CompoundTag {
+    
+    private final TrieMap map;
+    
+    public PersistentCompoundTag() {
+        this(new TrieMap(HashTrie.empty()));
+    }
+    
+    private PersistentCompoundTag(TrieMap map) {
+        super(map);
+        this.map = map;
+    }
+    
+    /**
+     * Creates a compound holding this entry and the entries of this compound, leaving this compound unchanged.
+     */
+    public @NonNull PersistentCompoundTag with(@NonNull String key, @NonNull Tag tag) {
+        return new PersistentCompoundTag(new TrieMap(map.trie.put(key, tag)));
+    }
+    
+    /**
+     * Creates a compound holding the entries of this compound except the key, leaving this compound unchanged.
+     */
+    public @NonNull PersistentCompoundTag without(@NonNull String key) {
+        return new PersistentCompoundTag(new TrieMap(map.trie.remove(key)));
+    }
+    
+    /**
+     * Creates a compound sharing the current version of this compound, which is unaffected by later updates to either.
+     */
+    public @NonNull PersistentCompoundTag snapshot() {
+        return new PersistentCompoundTag(new TrieMap(map.trie));
+    }
+    
+    @Override
+    public @NonNull PersistentCompoundTag copy() {
+        return (PersistentCompoundTag) super.copy();
+    }
+    
+    /**
+     * Adapts a {@link HashTrie} to the {@link Map} used by {@link CompoundTag}, replacing the trie on every update. The
+     * entry set iterates the version of the trie present when iteration starts.
+     */
+    private static final class TrieMap extends AbstractMap<String, Tag> {
+        
+        private volatile HashTrie<String, Tag> trie;
+        
+        private TrieMap(HashTrie<String, Tag> trie) {
+            this.trie = trie;
+        }
+        
+        @Override
+        public boolean containsKey(Object key) {
+            return key != null && trie.containsKey(key);
+        }
+        
+        @Override
+        public @Nullable Tag get(Object key) {
+            return key != null ? trie.get(key) : null;
+        }
+        
+        @Override
+        public @Nullable Tag put(String key, Tag value) {
+            HashTrie<String, Tag> trie = this.trie;
+            this.trie = trie.put(key, value);
+            return trie.get(key);
+        }
+        
+        @Override
+        public @Nullable Tag remove(Object key) {
+            if (key == null) {
+                return null;
+            }
+            
+            HashTrie<String, Tag> trie = this.trie;
+            this.trie = trie.remove(key);
+            return trie.get(key);
+        }
+        
+        @Override
+        public void clear() {
+            trie = HashTrie.empty();
+        }
+        
+        @Override
+        public int size() {
+            return trie.size();
+        }
+        
+        @Override
+        public @NonNull Set<Map.Entry<String, Tag>> entrySet() {
+            return new AbstractSet<Map.Entry<String, Tag>>() {
+                
+                @Override
+                public @NonNull Iterator<Map.Entry<String, Tag>> iterator() {
+                    Iterator<Map.Entry<String, Tag>> iterator = trie.iterator();
+                    return new Iterator<Map.Entry<String, Tag>>() {
+                        
+                        private Map.Entry<String, Tag> entry;
+                        
+                        @Override
+                        public boolean hasNext() {
+                            return iterator.hasNext();
+                        }
+                        
+                        @Override
+                        public Map.Entry<String, Tag> next() {
+                            entry = iterator.next();
+                            return entry;
+                        }
+                        
+                        @Override
+                        public void remove() {
+                            if (entry == null) {
+                                throw new IllegalStateException();
+                            }
+                            
+                            TrieMap.this.remove(entry.getKey());
+                            entry = null;
+                        }
+                    };
+                }
+                
+                @Override
+                public int size() {
+                    return trie.size();
+                }
+            };
+        }
+    }
+}
\ No newline at end of file
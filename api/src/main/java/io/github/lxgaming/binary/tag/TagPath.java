@@ -0,0 +1,275 @@
+/*
+ * Copyright 2021 Alex Thomson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.lxgaming.binary.tag;
+
+import org.checkerframework.checker.index.qual.NonNegative;
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A path to a nested tag, parsed once from a string such as {@code a.b[3].c} where {@code .} separates compound keys
+ * and {@code [n]} selects a list index.
+ * <p>
+ * Lookups walk the segments directly, returning {@code null} or the default value as soon as a segment is missing or
+ * of the wrong type rather than allocating empty compounds and lists the way {@link CompoundTag#getCompound(String)}
+ * does.
+ */
+public final class TagPath {
+    
+    private final String path;
+    private final String[] keys;
+    private final int[] indexes;
+    
+    private TagPath(String path, String[] keys, int[] indexes) {
+        this.path = path;
+        this.keys = keys;
+        this.indexes = indexes;
+    }
+    
+    public static @NonNull TagPath compile(@NonNull String path) {
+        List<String> keys = new ArrayList<>();
+        List<Integer> indexes = new ArrayList<>();
+        int position = 0;
+        while (position < path.length()) {
+            if (path.charAt(position) == '[') {
+                int end = path.indexOf(']', position);
+                if (end == -1) {
+                    throw new IllegalArgumentException(String.format("Unclosed index at %s in %s", position, path));
+                }
+                
+                String index = path.substring(position + 1, end);
+                if (index.isEmpty() || !index.chars().allMatch(character -> character >= '0' && character <= '9')) {
+                    throw new IllegalArgumentException(String.format("Invalid index at %s in %s", position, path));
+                }
+                
+                try {
+                    keys.add(null);
+                    indexes.add(Integer.parseInt(index));
+                } catch (NumberFormatException ex) {
+                    throw new IllegalArgumentException(String.format("Index out of range at %s in %s", position, path), ex);
+                }
+                
+                position = end + 1;
+            } else {
+                if (!keys.isEmpty()) {
+                    if (path.charAt(position) != '.') {
+                        throw new IllegalArgumentException(String.format("Expected . at %s in %s", position, path));
+                    }
+                    
+                    position++;
+                }
+                
+                int end = position;
+                while (end < path.length() && path.charAt(end) != '.' && path.charAt(end) != '[') {
+                    end++;
+                }
+                
+                if (end == position) {
+                    throw new IllegalArgumentException(String.format("Empty key at %s in %s", position, path));
+                }
+                
+                keys.add(path.substring(position, end));
+                indexes.add(-1);
+                position = end;
+            }
+        }
+        
+        if (keys.isEmpty()) {
+            throw new IllegalArgumentException("Path is empty");
+        }
+        
+        return new TagPath(path, keys.toArray(new String[0]), indexes.stream().mapToInt(Integer::intValue).toArray());
+    }
+    
+    public int size() {
+        return keys.length;
+    }
+    
+    public boolean isIndex(@NonNegative int segment) {
+        return keys[segment] == null;
+    }
+    
+    /**
+     * @return the key of the segment, or {@code null} if the segment is an index
+     */
+    public @Nullable String getKey(@NonNegative int segment) {
+        return keys[segment];
+    }
+    
+    /**
+     * @return the index of the segment, or {@code -1} if the segment is a key
+     */
+    public int getIndex(@NonNegative int segment) {
+        return indexes[segment];
+    }
+    
+    public @Nullable Tag get(@NonNull Tag root) {
+        return resolve(root, keys.length);
+    }
+    
+    public boolean contains(@NonNull Tag root) {
+        return get(root) != null;
+    }
+    
+    public boolean getBoolean(@NonNull Tag root, boolean defaultValue) {
+        Tag tag = get(root);
+        return tag instanceof BooleanTag ? ((BooleanTag) tag).getValue() : defaultValue;
+    }
+    
+    public int getInt(@NonNull Tag root, int defaultValue) {
+        Tag tag = get(root);
+        return tag instanceof IntTag ? ((IntTag) tag).getValue() : defaultValue;
+    }
+    
+    public long getLong(@NonNull Tag root, long defaultValue) {
+        Tag tag = get(root);
+        return tag instanceof LongTag ? ((LongTag) tag).getValue() : defaultValue;
+    }
+    
+    public float getFloat(@NonNull Tag root, float defaultValue) {
+        Tag tag = get(root);
+        return tag instanceof FloatTag ? ((FloatTag) tag).getValue() : defaultValue;
+    }
+    
+    public double getDouble(@NonNull Tag root, double defaultValue) {
+        Tag tag = get(root);
+        return tag instanceof DoubleTag ? ((DoubleTag) tag).getValue() : defaultValue;
+    }
+    
+    public @Nullable String getString(@NonNull Tag root, @Nullable String defaultValue) {
+        Tag tag = get(root);
+        return tag instanceof StringTag ? ((StringTag) tag).getValue() : defaultValue;
+    }
+    
+    public @Nullable CompoundTag getCompound(@NonNull Tag root) {
+        Tag tag = get(root);
+        return tag instanceof CompoundTag ? (CompoundTag) tag : null;
+    }
+    
+    public @Nullable ListTag getList(@NonNull Tag root) {
+        Tag tag = get(root);
+        return tag instanceof ListTag ? (ListTag) tag : null;
+    }
+    
+    /**
+     * Puts the tag at the path, creating missing compounds for key segments. Index segments must already exist.
+     *
+     * @throws IllegalArgumentException if a segment is of the wrong type or an index is out of range
+     */
+    public void set(@NonNull Tag root, @NonNull Tag tag) {
+        Tag parent = root;
+        for (int segment = 0; segment < keys.length - 1; segment++) {
+            Tag child = resolve(parent, keys[segment], indexes[segment]);
+            if (child == null && keys[segment] != null && parent instanceof CompoundTag) {
+                child = new CompoundTag();
+                ((CompoundTag) parent).put(keys[segment], child);
+            }
+            
+            if (child == null) {
+                throw new IllegalArgumentException(String.format("Cannot resolve segment %s of %s", segment, path));
+            }
+            
+            parent = child;
+        }
+        
+        int segment = keys.length - 1;
+        if (keys[segment] != null && parent instanceof CompoundTag) {
+            ((CompoundTag) parent).put(keys[segment], tag);
+        } else if (keys[segment] == null && parent instanceof ListTag && indexes[segment] < ((ListTag) parent).size()) {
+            ((ListTag) parent).set(indexes[segment], tag);
+        } else {
+            throw new IllegalArgumentException(String.format("Cannot resolve segment %s of %s", segment, path));
+        }
+    }
+    
+    public void setInt(@NonNull Tag root, int value) {
+        set(root, new IntTag(value));
+    }
+    
+    public void setLong(@NonNull Tag root, long value) {
+        set(root, new LongTag(value));
+    }
+    
+    public void setDouble(@NonNull Tag root, double value) {
+        set(root, new DoubleTag(value));
+    }
+    
+    public void setString(@NonNull Tag root, @NonNull String value) {
+        set(root, new StringTag(value));
+    }
+    
+    /**
+     * Removes the key at the end of the path.
+     *
+     * @return {@code false} if the path does not end in a key or its compound does not exist
+     */
+    public boolean remove(@NonNull Tag root) {
+        Tag parent = resolve(root, keys.length - 1);
+        String key = keys[keys.length - 1];
+        if (key == null || !(parent instanceof CompoundTag) || !((CompoundTag) parent).contains(key)) {
+            return false;
+        }
+        
+        ((CompoundTag) parent).remove(key);
+        return true;
+    }
+    
+    /**
+     * Resolves the given number of leading segments.
+     */
+    private Tag resolve(Tag root, int segments) {
+        Tag tag = root;
+        for (int segment = 0; segment < segments; segment++) {
+            tag = resolve(tag, keys[segment], indexes[segment]);
+            if (tag == null) {
+                return null;
+            }
+        }
+        
+        return tag;
+    }
+    
+    private static Tag resolve(Tag tag, String key, int index) {
+        if (key != null) {
+            return tag instanceof CompoundTag ? ((CompoundTag) tag).get(key) : null;
+        }
+        
+        if (tag instanceof ListTag && index < ((ListTag) tag).size()) {
+            return ((ListTag) tag).get(index);
+        }
+        
+        return null;
+    }
+    
+    @Override
+    public int hashCode() {
+        return path.hashCode();
+    }
+    
+    @Override
+    public boolean equals(Object obj) {
+        return this == obj || (obj instanceof TagPath && path.equals(((TagPath) obj).path));
+    }
+    
+    @Override
+    public @NonNull String toString() {
+        return path;
+    }
+}
\ No newline at end of file
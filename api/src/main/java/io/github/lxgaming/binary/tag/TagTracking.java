@@ -0,0 +1,144 @@
+/*
+ * Copyright 2021 Alex Thomson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.lxgaming.binary.tag;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+
+/**
+ * Change tracking shared by {@link CompoundTag} and {@link ListTag}.
+ * <p>
+ * A tracked compound or list links each compound and list it holds back to itself, so a change anywhere in a tracked
+ * tree marks the path to the root dirty. A tag only notifies its parent when it goes from clean to dirty, which keeps
+ * the cost of an update constant once its path is dirty. Links are not removed when a tag is detached, a stale link can
+ * only mark a key or index dirty which is still correct, if wasteful.
+ */
+final class TagTracking {
+    
+    private TagTracking() {
+    }
+    
+    /**
+     * Enables tracking on every compound and list in the tree.
+     */
+    static void track(Tag root) {
+        Deque<Tag> tags = new ArrayDeque<>();
+        tags.push(root);
+        while (!tags.isEmpty()) {
+            Tag tag = tags.pop();
+            if (tag instanceof CompoundTag) {
+                CompoundTag compound = (CompoundTag) tag;
+                compound.enableTracking();
+                for (Map.Entry<String, Tag> entry : compound.entries()) {
+                    if (link(entry.getValue(), compound, entry.getKey(), -1)) {
+                        tags.push(entry.getValue());
+                    }
+                }
+            } else if (tag instanceof ListTag) {
+                ListTag list = (ListTag) tag;
+                list.enableTracking();
+                for (int index = 0; index < list.size(); index++) {
+                    Tag child = list.get(index);
+                    if (link(child, list, null, index)) {
+                        tags.push(child);
+                    }
+                }
+            }
+        }
+    }
+    
+    /**
+     * Links a tag added to a tracked parent, tracking it as well if it was not already.
+     */
+    static void attach(Tag tag, Tag parent, String key, int index) {
+        if (link(tag, parent, key, index) && !isTracking(tag)) {
+            track(tag);
+        }
+    }
+    
+    /**
+     * Marks every dirty compound and list reachable from the root through dirty keys and indices clean.
+     */
+    static void markClean(Tag root) {
+        Deque<Tag> tags = new ArrayDeque<>();
+        tags.push(root);
+        while (!tags.isEmpty()) {
+            Tag tag = tags.pop();
+            if (tag instanceof CompoundTag) {
+                CompoundTag compound = (CompoundTag) tag;
+                for (String key : compound.getDirtyKeys()) {
+                    Tag value = compound.get(key);
+                    if (isDirty(value)) {
+                        tags.push(value);
+                    }
+                }
+                
+                compound.clean();
+            } else if (tag instanceof ListTag) {
+                ListTag list = (ListTag) tag;
+                for (Tag child : list) {
+                    if (isDirty(child)) {
+                        tags.push(child);
+                    }
+                }
+                
+                list.clean();
+            }
+        }
+    }
+    
+    /**
+     * Notifies the parent of a tag which has just become dirty.
+     */
+    static void notifyParent(Tag parent, String key, int index, Tag tag) {
+        if (parent instanceof CompoundTag) {
+            ((CompoundTag) parent).childChanged(key);
+        } else if (parent instanceof ListTag) {
+            ((ListTag) parent).childChanged(tag, index);
+        }
+    }
+    
+    /**
+     * Links a compound or list to the key or index it is held at in its parent.
+     */
+    static boolean link(Tag tag, Tag parent, String key, int index) {
+        if (tag instanceof CompoundTag) {
+            ((CompoundTag) tag).setParent(parent, key, index);
+            return true;
+        } else if (tag instanceof ListTag) {
+            ((ListTag) tag).setParent(parent, key, index);
+            return true;
+        } else {
+            return false;
+        }
+    }
+    
+    private static boolean isTracking(Tag tag) {
+        return tag instanceof CompoundTag ? ((CompoundTag) tag).isTracking() : ((ListTag) tag).isTracking();
+    }
+    
+    private static boolean isDirty(Tag tag) {
+        if (tag instanceof CompoundTag) {
+            return ((CompoundTag) tag).isDirty();
+        } else if (tag instanceof ListTag) {
+            return ((ListTag) tag).isDirty();
+        } else {
+            return false;
+        }
+    }
+}
\ No newline at end of file
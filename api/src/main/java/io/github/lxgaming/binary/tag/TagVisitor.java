@@ -0,0 +1,66 @@
+/*
+ * Copyright 2021 Alex Thomson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.lxgaming.binary.tag;
+
+import org.checkerframework.checker.nullness.qual.NonNull;
+
+/**
+ * Receives the tags of a tree in depth-first order from {@link io.github.lxgaming.binary.util.TagUtils#walk(Tag, TagVisitor)}.
+ * <p>
+ * Compounds and lists are entered before their children and exited after them, every other tag is visited. The key of
+ * each compound entry is visited immediately before its value.
+ */
+public interface TagVisitor {
+    
+    /**
+     * Called when a compound is reached.
+     *
+     * @return {@code false} to skip the children of the compound
+     */
+    default boolean enterCompound(@NonNull CompoundTag compound) {
+        return true;
+    }
+    
+    /**
+     * Called once every child of a compound has been visited, or straight after {@link #enterCompound(CompoundTag)} if
+     * the children were skipped.
+     */
+    default void exitCompound(@NonNull CompoundTag compound) {
+    }
+    
+    /**
+     * Called when a list is reached.
+     *
+     * @return {@code false} to skip the children of the list
+     */
+    default boolean enterList(@NonNull ListTag list) {
+        return true;
+    }
+    
+    /**
+     * Called once every child of a list has been visited, or straight after {@link #enterList(ListTag)} if the children
+     * were skipped.
+     */
+    default void exitList(@NonNull ListTag list) {
+    }
+    
+    default void visitKey(@NonNull String key) {
+    }
+    
+    default void visit(@NonNull Tag tag) {
+    }
+}
\ No newline at end of file
@@ -0,0 +1,350 @@
+/*
+ * Copyright 2021 Alex Thomson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.lxgaming.binary.util;
+
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.util.AbstractMap;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * An immutable hash array mapped trie. Updates return a new trie which shares every node off the path to the updated
+ * key with the original, so each version costs {@code O(log32 n)} nodes rather than a copy.
+ */
+public final class HashTrie<K, V> implements Iterable<Map.Entry<K, V>> {
+    
+    private static final HashTrie<?, ?> EMPTY = new HashTrie<>(BitmapNode.EMPTY, 0);
+    private static final Object NOT_FOUND = new Object();
+    
+    private final Node root;
+    private final int size;
+    
+    private HashTrie(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+    
+    @SuppressWarnings("unchecked")
+    public static <K, V> @NonNull HashTrie<K, V> empty() {
+        return (HashTrie<K, V>) EMPTY;
+    }
+    
+    public boolean containsKey(@NonNull Object key) {
+        return root.find(0, hash(key), key) != NOT_FOUND;
+    }
+    
+    @SuppressWarnings("unchecked")
+    public @Nullable V get(@NonNull Object key) {
+        Object value = root.find(0, hash(key), key);
+        return value != NOT_FOUND ? (V) value : null;
+    }
+    
+    public @NonNull HashTrie<K, V> put(@NonNull K key, @NonNull V value) {
+        boolean[] added = new boolean[1];
+        Node node = root.put(0, hash(key), key, value, added);
+        return node != root ? new HashTrie<>(node, added[0] ? size + 1 : size) : this;
+    }
+    
+    public @NonNull HashTrie<K, V> remove(@NonNull Object key) {
+        Node node = root.remove(0, hash(key), key);
+        if (node == root) {
+            return this;
+        }
+        
+        return node != null ? new HashTrie<>(node, size - 1) : empty();
+    }
+    
+    public int size() {
+        return size;
+    }
+    
+    public boolean isEmpty() {
+        return size == 0;
+    }
+    
+    @Override
+    public @NonNull Iterator<Map.Entry<K, V>> iterator() {
+        return new EntryIterator<>(root);
+    }
+    
+    private static int hash(Object key) {
+        int hash = key.hashCode();
+        return hash ^ (hash >>> 16);
+    }
+    
+    private static int bit(int hash, int shift) {
+        return 1 << ((hash >>> shift) & 31);
+    }
+    
+    private static Node createNode(int shift, Object key, Object value, int otherHash, Object otherKey, Object otherValue) {
+        int hash = hash(key);
+        if (hash == otherHash) {
+            return new CollisionNode(hash, new Object[]{key, value, otherKey, otherValue});
+        }
+        
+        boolean[] added = new boolean[1];
+        return BitmapNode.EMPTY.put(shift, hash, key, value, added).put(shift, otherHash, otherKey, otherValue, added);
+    }
+    
+    private static Object[] insert(Object[] array, int index, Object key, Object value) {
+        Object[] copy = new Object[array.length + 2];
+        System.arraycopy(array, 0, copy, 0, index);
+        copy[index] = key;
+        copy[index + 1] = value;
+        System.arraycopy(array, index, copy, index + 2, array.length - index);
+        return copy;
+    }
+    
+    private static Object[] delete(Object[] array, int index) {
+        Object[] copy = new Object[array.length - 2];
+        System.arraycopy(array, 0, copy, 0, index);
+        System.arraycopy(array, index + 2, copy, index, array.length - index - 2);
+        return copy;
+    }
+    
+    private static Object[] replace(Object[] array, int index, Object key, Object value) {
+        Object[] copy = array.clone();
+        copy[index] = key;
+        copy[index + 1] = value;
+        return copy;
+    }
+    
+    private interface Node {
+        
+        Object find(int shift, int hash, Object key);
+        
+        Node put(int shift, int hash, Object key, Object value, boolean[] added);
+        
+        /**
+         * @return this node if the key is absent, or {@code null} if the node is left empty
+         */
+        Node remove(int shift, int hash, Object key);
+        
+        Object[] array();
+    }
+    
+    /**
+     * Holds up to 32 slots selected by 5 bits of the hash. Each slot is a key and value pair, or a {@code null} key and
+     * the node for the next 5 bits.
+     */
+    private static final class BitmapNode implements Node {
+        
+        private static final BitmapNode EMPTY = new BitmapNode(0, new Object[0]);
+        
+        private final int bitmap;
+        private final Object[] array;
+        
+        private BitmapNode(int bitmap, Object[] array) {
+            this.bitmap = bitmap;
+            this.array = array;
+        }
+        
+        @Override
+        public Object find(int shift, int hash, Object key) {
+            int bit = bit(hash, shift);
+            if ((bitmap & bit) == 0) {
+                return NOT_FOUND;
+            }
+            
+            int index = 2 * Integer.bitCount(bitmap & (bit - 1));
+            Object slotKey = array[index];
+            Object slotValue = array[index + 1];
+            if (slotKey == null) {
+                return ((Node) slotValue).find(shift + 5, hash, key);
+            }
+            
+            return key.equals(slotKey) ? slotValue : NOT_FOUND;
+        }
+        
+        @Override
+        public Node put(int shift, int hash, Object key, Object value, boolean[] added) {
+            int bit = bit(hash, shift);
+            int index = 2 * Integer.bitCount(bitmap & (bit - 1));
+            if ((bitmap & bit) == 0) {
+                added[0] = true;
+                return new BitmapNode(bitmap | bit, insert(array, index, key, value));
+            }
+            
+            Object slotKey = array[index];
+            Object slotValue = array[index + 1];
+            if (slotKey == null) {
+                Node node = ((Node) slotValue).put(shift + 5, hash, key, value, added);
+                return node != slotValue ? new BitmapNode(bitmap, replace(array, index, null, node)) : this;
+            }
+            
+            if (key.equals(slotKey)) {
+                return value != slotValue ? new BitmapNode(bitmap, replace(array, index, slotKey, value)) : this;
+            }
+            
+            added[0] = true;
+            Node node = createNode(shift + 5, slotKey, slotValue, hash, key, value);
+            return new BitmapNode(bitmap, replace(array, index, null, node));
+        }
+        
+        @Override
+        public Node remove(int shift, int hash, Object key) {
+            int bit = bit(hash, shift);
+            if ((bitmap & bit) == 0) {
+                return this;
+            }
+            
+            int index = 2 * Integer.bitCount(bitmap & (bit - 1));
+            Object slotKey = array[index];
+            Object slotValue = array[index + 1];
+            if (slotKey == null) {
+                Node node = ((Node) slotValue).remove(shift + 5, hash, key);
+                if (node == slotValue) {
+                    return this;
+                }
+                
+                if (node != null) {
+                    return new BitmapNode(bitmap, replace(array, index, null, node));
+                }
+            } else if (!key.equals(slotKey)) {
+                return this;
+            }
+            
+            return bitmap != bit ? new BitmapNode(bitmap ^ bit, delete(array, index)) : null;
+        }
+        
+        @Override
+        public Object[] array() {
+            return array;
+        }
+    }
+    
+    /**
+     * Holds keys whose full hashes are equal.
+     */
+    private static final class CollisionNode implements Node {
+        
+        private final int hash;
+        private final Object[] array;
+        
+        private CollisionNode(int hash, Object[] array) {
+            this.hash = hash;
+            this.array = array;
+        }
+        
+        @Override
+        public Object find(int shift, int hash, Object key) {
+            int index = indexOf(hash, key);
+            return index != -1 ? array[index + 1] : NOT_FOUND;
+        }
+        
+        @Override
+        public Node put(int shift, int hash, Object key, Object value, boolean[] added) {
+            if (hash != this.hash) {
+                // Nest this node one level down so the new key can take its own slot
+                return new BitmapNode(bit(this.hash, shift), new Object[]{null, this}).put(shift, hash, key, value, added);
+            }
+            
+            int index = indexOf(hash, key);
+            if (index == -1) {
+                added[0] = true;
+                return new CollisionNode(hash, insert(array, array.length, key, value));
+            }
+            
+            return value != array[index + 1] ? new CollisionNode(hash, replace(array, index, key, value)) : this;
+        }
+        
+        @Override
+        public Node remove(int shift, int hash, Object key) {
+            int index = indexOf(hash, key);
+            if (index == -1) {
+                return this;
+            }
+            
+            return array.length != 2 ? new CollisionNode(hash, delete(array, index)) : null;
+        }
+        
+        @Override
+        public Object[] array() {
+            return array;
+        }
+        
+        private int indexOf(int hash, Object key) {
+            if (hash == this.hash) {
+                for (int index = 0; index < array.length; index += 2) {
+                    if (key.equals(array[index])) {
+                        return index;
+                    }
+                }
+            }
+            
+            return -1;
+        }
+    }
+    
+    private static final class EntryIterator<K, V> implements Iterator<Map.Entry<K, V>> {
+        
+        private final Deque<Object[]> arrays = new ArrayDeque<>();
+        private final Deque<Integer> indexes = new ArrayDeque<>();
+        private Map.Entry<K, V> next;
+        
+        private EntryIterator(Node root) {
+            arrays.push(root.array());
+            indexes.push(0);
+            advance();
+        }
+        
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+        
+        @Override
+        public Map.Entry<K, V> next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            
+            Map.Entry<K, V> entry = next;
+            advance();
+            return entry;
+        }
+        
+        @SuppressWarnings("unchecked")
+        private void advance() {
+            while (!arrays.isEmpty()) {
+                Object[] array = arrays.peek();
+                int index = indexes.pop();
+                if (index >= array.length) {
+                    arrays.pop();
+                    continue;
+                }
+                
+                indexes.push(index + 2);
+                if (array[index] == null) {
+                    arrays.push(((Node) array[index + 1]).array());
+                    indexes.push(0);
+                    continue;
+                }
+                
+                next = new AbstractMap.SimpleImmutableEntry<>((K) array[index], (V) array[index + 1]);
+                return;
+            }
+            
+            next = null;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,250 @@
+/*
+ * Copyright 2021 Alex Thomson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.lxgaming.binary.util;
+
+import io.github.lxgaming.binary.tag.CompoundTag;
+import io.github.lxgaming.binary.tag.ConcurrentCompoundTag;
+import io.github.lxgaming.binary.tag.ListTag;
+import io.github.lxgaming.binary.tag.PersistentCompoundTag;
+import io.github.lxgaming.binary.tag.Tag;
+import io.github.lxgaming.binary.tag.TagVisitor;
+import org.checkerframework.checker.nullness.qual.NonNull;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Tree operations using an explicit stack, so trees of any depth are handled without growing the thread stack.
+ */
+public class TagUtils {
+    
+    public static void walk(@NonNull Tag tag, @NonNull TagVisitor visitor) {
+        Deque<Frame> frames = new ArrayDeque<>();
+        enter(tag, visitor, frames);
+        while (!frames.isEmpty()) {
+            Frame frame = frames.peek();
+            if (!frame.iterator.hasNext()) {
+                frames.pop();
+                exit(frame.tag, visitor);
+                continue;
+            }
+            
+            Object next = frame.iterator.next();
+            if (frame.tag instanceof CompoundTag) {
+                Map.Entry<?, ?> entry = (Map.Entry<?, ?>) next;
+                visitor.visitKey((String) entry.getKey());
+                enter((Tag) entry.getValue(), visitor, frames);
+            } else {
+                enter((Tag) next, visitor, frames);
+            }
+        }
+    }
+    
+    /**
+     * Deep copies a tag, equivalent to {@link Tag#copy()}.
+     */
+    public static @NonNull Tag copy(@NonNull Tag tag) {
+        Tag root = shallowCopy(tag);
+        if (root == tag) {
+            return tag.copy();
+        }
+        
+        Deque<Frame> frames = new ArrayDeque<>();
+        frames.push(new Frame(tag, root));
+        while (!frames.isEmpty()) {
+            Frame frame = frames.peek();
+            if (!frame.iterator.hasNext()) {
+                frames.pop();
+                continue;
+            }
+            
+            Object next = frame.iterator.next();
+            Tag value = next instanceof Map.Entry ? (Tag) ((Map.Entry<?, ?>) next).getValue() : (Tag) next;
+            Tag copy = shallowCopy(value);
+            if (copy == value) {
+                copy = value.copy();
+            } else {
+                frames.push(new Frame(value, copy));
+            }
+            
+            if (frame.target instanceof CompoundTag) {
+                ((CompoundTag) frame.target).put((String) ((Map.Entry<?, ?>) next).getKey(), copy);
+            } else {
+                ((ListTag) frame.target).add(copy);
+            }
+        }
+        
+        return root;
+    }
+    
+    /**
+     * Compares two trees, equivalent to {@link Tag#equals(Object)}.
+     */
+    public static boolean equals(@NonNull Tag tag, @NonNull Tag other) {
+        Deque<Tag> tags = new ArrayDeque<>();
+        tags.push(tag);
+        tags.push(other);
+        while (!tags.isEmpty()) {
+            Tag right = tags.pop();
+            Tag left = tags.pop();
+            if (left == right) {
+                continue;
+            }
+            
+            if (left instanceof CompoundTag) {
+                if (!(right instanceof CompoundTag) || ((CompoundTag) left).size() != ((CompoundTag) right).size()) {
+                    return false;
+                }
+                
+                for (Map.Entry<String, Tag> entry : ((CompoundTag) left).entries()) {
+                    Tag value = ((CompoundTag) right).get(entry.getKey());
+                    if (value == null) {
+                        return false;
+                    }
+                    
+                    tags.push(entry.getValue());
+                    tags.push(value);
+                }
+            } else if (left instanceof ListTag) {
+                if (!(right instanceof ListTag) || ((ListTag) left).size() != ((ListTag) right).size()) {
+                    return false;
+                }
+                
+                Iterator<Tag> iterator = ((ListTag) right).iterator();
+                for (Tag value : (ListTag) left) {
+                    tags.push(value);
+                    tags.push(iterator.next());
+                }
+            } else if (!left.equals(right)) {
+                return false;
+            }
+        }
+        
+        return true;
+    }
+    
+    /**
+     * Hashes a tree, equivalent to {@link Tag#hashCode()}.
+     */
+    public static int hashCode(@NonNull Tag tag) {
+        if (!(tag instanceof CompoundTag || tag instanceof ListTag)) {
+            return tag.hashCode();
+        }
+        
+        // Compounds sum the hash of each entry like a Map and lists combine their elements in order like a List
+        Deque<Frame> frames = new ArrayDeque<>();
+        frames.push(new Frame(tag, null));
+        while (true) {
+            Frame frame = frames.peek();
+            if (!frame.iterator.hasNext()) {
+                frames.pop();
+                if (frames.isEmpty()) {
+                    return frame.hash;
+                }
+                
+                frames.peek().combine(frame.hash);
+                continue;
+            }
+            
+            Object next = frame.iterator.next();
+            Tag value;
+            if (next instanceof Map.Entry) {
+                frame.keyHash = ((Map.Entry<?, ?>) next).getKey().hashCode();
+                value = (Tag) ((Map.Entry<?, ?>) next).getValue();
+            } else {
+                value = (Tag) next;
+            }
+            
+            if (value instanceof CompoundTag || value instanceof ListTag) {
+                frames.push(new Frame(value, null));
+            } else {
+                frame.combine(value.hashCode());
+            }
+        }
+    }
+    
+    private static void enter(Tag tag, TagVisitor visitor, Deque<Frame> frames) {
+        if (tag instanceof CompoundTag) {
+            if (visitor.enterCompound((CompoundTag) tag)) {
+                frames.push(new Frame(tag, null));
+            } else {
+                visitor.exitCompound((CompoundTag) tag);
+            }
+        } else if (tag instanceof ListTag) {
+            if (visitor.enterList((ListTag) tag)) {
+                frames.push(new Frame(tag, null));
+            } else {
+                visitor.exitList((ListTag) tag);
+            }
+        } else {
+            visitor.visit(tag);
+        }
+    }
+    
+    private static void exit(Tag tag, TagVisitor visitor) {
+        if (tag instanceof CompoundTag) {
+            visitor.exitCompound((CompoundTag) tag);
+        } else {
+            visitor.exitList((ListTag) tag);
+        }
+    }
+    
+    private static Tag shallowCopy(Tag tag) {
+        if (tag instanceof ConcurrentCompoundTag) {
+            return new ConcurrentCompoundTag();
+        } else if (tag instanceof PersistentCompoundTag) {
+            return new PersistentCompoundTag();
+        } else if (tag instanceof CompoundTag) {
+            return new CompoundTag();
+        } else if (tag instanceof ListTag) {
+            return new ListTag(((ListTag) tag).getType());
+        } else {
+            return tag;
+        }
+    }
+    
+    private static class Frame {
+        
+        private final Tag tag;
+        private final Tag target;
+        private final Iterator<?> iterator;
+        private int hash;
+        private int keyHash;
+        
+        private Frame(Tag tag, Tag target) {
+            this.tag = tag;
+            this.target = target;
+            if (tag instanceof CompoundTag) {
+                this.iterator = ((CompoundTag) tag).entries().iterator();
+                this.hash = 0;
+            } else {
+                this.iterator = ((ListTag) tag).iterator();
+                this.hash = 1;
+            }
+        }
+        
+        private void combine(int hash) {
+            if (tag instanceof CompoundTag) {
+                this.hash += keyHash ^ hash;
+            } else {
+                this.hash = 31 * this.hash + hash;
+            }
+        }
+    }
+}
\ No newline at end of file
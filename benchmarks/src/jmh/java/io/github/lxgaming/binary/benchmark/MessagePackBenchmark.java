@@ -0,0 +1,145 @@
+/*
+ * Copyright 2021 Alex Thomson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.lxgaming.binary.benchmark;
+
+import io.github.lxgaming.binary.serializer.msgpack.MessagePackSerializer;
+import io.github.lxgaming.binary.tag.CompoundTag;
+import io.github.lxgaming.binary.tag.Tag;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Read and write throughput of a single {@link MessagePackSerializer} shared by 1, 4 and all available threads.
+ * <p>
+ * Run with {@code gradle :binary-benchmarks:jmh}, the GC profiler is enabled by the build to report allocation per
+ * operation and the {@code bytes} counter reports encoded bytes per second.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class MessagePackBenchmark {
+    
+    @Param
+    private TagShape shape;
+    
+    private MessagePackSerializer serializer;
+    private CompoundTag tag;
+    private byte[] bytes;
+    
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        serializer = new MessagePackSerializer();
+        tag = shape.create(new Random(0L));
+        
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        serializer.write(output, tag);
+        bytes = output.toByteArray();
+    }
+    
+    @Benchmark
+    @Threads(1)
+    public Tag read1(Counters counters) throws IOException {
+        return read(counters);
+    }
+    
+    @Benchmark
+    @Threads(4)
+    public Tag read4(Counters counters) throws IOException {
+        return read(counters);
+    }
+    
+    @Benchmark
+    @Threads(Threads.MAX)
+    public Tag readMax(Counters counters) throws IOException {
+        return read(counters);
+    }
+    
+    @Benchmark
+    @Threads(1)
+    public int write1(Output output, Counters counters) throws IOException {
+        return write(output, counters);
+    }
+    
+    @Benchmark
+    @Threads(4)
+    public int write4(Output output, Counters counters) throws IOException {
+        return write(output, counters);
+    }
+    
+    @Benchmark
+    @Threads(Threads.MAX)
+    public int writeMax(Output output, Counters counters) throws IOException {
+        return write(output, counters);
+    }
+    
+    private Tag read(Counters counters) throws IOException {
+        Tag tag = serializer.read(new ByteArrayInputStream(bytes));
+        counters.bytes += bytes.length;
+        return tag;
+    }
+    
+    private int write(Output output, Counters counters) throws IOException {
+        output.reset();
+        serializer.write(output, tag);
+        counters.bytes += output.size();
+        return output.size();
+    }
+    
+    /**
+     * Reused per thread so the measured allocation belongs to the serializer rather than a growing output buffer.
+     */
+    @State(Scope.Thread)
+    public static class Output extends ByteArrayOutputStream {
+        
+        public Output() {
+            super(1 << 20);
+        }
+    }
+    
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Counters {
+        
+        public long bytes;
+        
+        @Setup(Level.Iteration)
+        public void reset() {
+            bytes = 0L;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2021 Alex Thomson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.lxgaming.binary.benchmark;
+
+import io.github.lxgaming.binary.tag.CompoundTag;
+import io.github.lxgaming.binary.tag.ListTag;
+
+import java.util.Random;
+
+public enum TagShape {
+    
+    /**
+     * A single compound with a few hundred primitive entries.
+     */
+    FLAT {
+        @Override
+        public CompoundTag create(Random random) {
+            CompoundTag compound = new CompoundTag();
+            for (int index = 0; index < 64; index++) {
+                compound.putBoolean("boolean_" + index, random.nextBoolean());
+                compound.putInt("int_" + index, random.nextInt());
+                compound.putLong("long_" + index, random.nextLong());
+                compound.putDouble("double_" + index, random.nextDouble());
+                compound.putString("string_" + index, Integer.toHexString(random.nextInt()));
+            }
+            
+            return compound;
+        }
+    },
+    
+    /**
+     * Compounds nested a few hundred levels deep.
+     */
+    DEEP {
+        @Override
+        public CompoundTag create(Random random) {
+            CompoundTag root = new CompoundTag();
+            CompoundTag compound = root;
+            for (int index = 0; index < 256; index++) {
+                CompoundTag child = new CompoundTag();
+                child.putInt("depth", index);
+                child.putLong("value", random.nextLong());
+                compound.putCompound("child", child);
+                compound = child;
+            }
+            
+            return root;
+        }
+    },
+    
+    /**
+     * Large primitive arrays, similar to chunk or sample data.
+     */
+    ARRAYS {
+        @Override
+        public CompoundTag create(Random random) {
+            CompoundTag compound = new CompoundTag();
+            byte[] bytes = new byte[1 << 16];
+            random.nextBytes(bytes);
+            compound.putByteArray("byte_array", bytes);
+            
+            int[] ints = new int[1 << 14];
+            long[] longs = new long[1 << 14];
+            double[] doubles = new double[1 << 14];
+            for (int index = 0; index < ints.length; index++) {
+                ints[index] = random.nextInt(256);
+                longs[index] = random.nextLong();
+                doubles[index] = Math.sin(index * 0.01D);
+            }
+            
+            compound.putIntArray("int_array", ints);
+            compound.putLongArray("long_array", longs);
+            compound.putDoubleArray("double_array", doubles);
+            return compound;
+        }
+    },
+    
+    /**
+     * A list of small compounds, similar to entity or inventory data.
+     */
+    LIST {
+        @Override
+        public CompoundTag create(Random random) {
+            ListTag list = new ListTag();
+            for (int index = 0; index < 1024; index++) {
+                CompoundTag entry = new CompoundTag();
+                entry.putInt("id", index);
+                entry.putString("type", "entity_" + random.nextInt(32));
+                entry.putDoubleArray("position", new double[]{random.nextDouble(), random.nextDouble(), random.nextDouble()});
+                entry.putFloat("health", random.nextFloat() * 20F);
+                list.add(entry);
+            }
+            
+            CompoundTag compound = new CompoundTag();
+            compound.putList("entries", list);
+            return compound;
+        }
+    },
+    
+    /**
+     * Mostly text, with short and long values containing non-ASCII characters.
+     */
+    STRINGS {
+        @Override
+        public CompoundTag create(Random random) {
+            CompoundTag compound = new CompoundTag();
+            for (int index = 0; index < 256; index++) {
+                compound.putString("key_" + index, createString(random, 8 + random.nextInt(64)));
+            }
+            
+            compound.putString("document", createString(random, 1 << 14));
+            return compound;
+        }
+    };
+    
+    public abstract CompoundTag create(Random random);
+    
+    private static String createString(Random random, int length) {
+        StringBuilder stringBuilder = new StringBuilder(length);
+        for (int index = 0; index < length; index++) {
+            int value = random.nextInt(100);
+            if (value < 90) {
+                stringBuilder.append((char) ('a' + random.nextInt(26)));
+            } else if (value < 98) {
+                stringBuilder.append((char) ('\u00C0' + random.nextInt(64)));
+            } else {
+                stringBuilder.append((char) ('\u4E00' + random.nextInt(1024)));
+            }
+        }
+        
+        return stringBuilder.toString();
+    }
+}
\ No newline at end of file
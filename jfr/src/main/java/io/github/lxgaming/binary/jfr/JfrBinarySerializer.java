@@ -0,0 +1,171 @@
+/*
+ * Copyright 2021 Alex Thomson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.lxgaming.binary.jfr;
+
+import io.github.lxgaming.binary.BinarySerializer;
+import io.github.lxgaming.binary.tag.CompoundTag;
+import io.github.lxgaming.binary.tag.ListTag;
+import io.github.lxgaming.binary.tag.Tag;
+import org.checkerframework.checker.nullness.qual.NonNull;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Emits a {@link TagReadEvent} or {@link TagWriteEvent} for each call to the wrapped {@link BinarySerializer}.
+ * <p>
+ * Both events are configured through the usual JFR settings under {@code io.github.lxgaming.binary.TagRead} and
+ * {@code io.github.lxgaming.binary.TagWrite}. While an event is disabled the call goes straight to the wrapped
+ * serializer. The stream is only wrapped to count bytes, and the tree only walked to count tags, for events that will
+ * be committed.
+ */
+public class JfrBinarySerializer implements BinarySerializer {
+    
+    private final BinarySerializer serializer;
+    
+    public JfrBinarySerializer(@NonNull BinarySerializer serializer) {
+        this.serializer = serializer;
+    }
+    
+    @Override
+    public @NonNull Tag read(@NonNull InputStream input) throws IOException {
+        TagReadEvent event = new TagReadEvent();
+        if (!event.isEnabled()) {
+            return serializer.read(input);
+        }
+        
+        CountingInputStream countingInput = new CountingInputStream(input);
+        event.begin();
+        Tag tag = serializer.read(countingInput);
+        event.end();
+        if (event.shouldCommit()) {
+            event.bytes = countingInput.count;
+            event.tagCount = count(tag);
+            event.rootType = tag.getClass().getSimpleName();
+            event.commit();
+        }
+        
+        return tag;
+    }
+    
+    @Override
+    public void write(@NonNull OutputStream output, @NonNull Tag tag) throws IOException {
+        TagWriteEvent event = new TagWriteEvent();
+        if (!event.isEnabled()) {
+            serializer.write(output, tag);
+            return;
+        }
+        
+        CountingOutputStream countingOutput = new CountingOutputStream(output);
+        event.begin();
+        serializer.write(countingOutput, tag);
+        event.end();
+        if (event.shouldCommit()) {
+            event.bytes = countingOutput.count;
+            event.tagCount = count(tag);
+            event.rootType = tag.getClass().getSimpleName();
+            event.commit();
+        }
+    }
+    
+    public @NonNull BinarySerializer getSerializer() {
+        return serializer;
+    }
+    
+    private static long count(Tag tag) {
+        Deque<Tag> tags = new ArrayDeque<>();
+        tags.push(tag);
+        long count = 0;
+        while (!tags.isEmpty()) {
+            Tag current = tags.pop();
+            count++;
+            if (current instanceof CompoundTag) {
+                for (Tag child : ((CompoundTag) current).values()) {
+                    tags.push(child);
+                }
+            } else if (current instanceof ListTag) {
+                for (Tag child : (ListTag) current) {
+                    tags.push(child);
+                }
+            }
+        }
+        
+        return count;
+    }
+    
+    private static class CountingInputStream extends FilterInputStream {
+        
+        private long count;
+        
+        private CountingInputStream(InputStream input) {
+            super(input);
+        }
+        
+        @Override
+        public int read() throws IOException {
+            int value = super.read();
+            if (value != -1) {
+                count++;
+            }
+            
+            return value;
+        }
+        
+        @Override
+        public int read(byte @NonNull [] bytes, int offset, int length) throws IOException {
+            int read = super.read(bytes, offset, length);
+            if (read > 0) {
+                count += read;
+            }
+            
+            return read;
+        }
+        
+        @Override
+        public long skip(long length) throws IOException {
+            long skipped = super.skip(length);
+            count += skipped;
+            return skipped;
+        }
+    }
+    
+    private static class CountingOutputStream extends FilterOutputStream {
+        
+        private long count;
+        
+        private CountingOutputStream(OutputStream output) {
+            super(output);
+        }
+        
+        @Override
+        public void write(int value) throws IOException {
+            out.write(value);
+            count++;
+        }
+        
+        @Override
+        public void write(byte @NonNull [] bytes, int offset, int length) throws IOException {
+            out.write(bytes, offset, length);
+            count += length;
+        }
+    }
+}
\ No newline at end of file
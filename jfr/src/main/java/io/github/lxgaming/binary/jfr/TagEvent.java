@@ -0,0 +1,40 @@
+/*
+ * Copyright 2021 Alex Thomson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.lxgaming.binary.jfr;
+
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+
+/**
+ * Fields shared by {@link TagReadEvent} and {@link TagWriteEvent}.
+ */
+abstract class TagEvent extends Event {
+    
+    @Label("Bytes")
+    @Description("Bytes transferred through the stream")
+    @DataAmount
+    long bytes;
+    
+    @Label("Tag Count")
+    @Description("Number of tags in the tree, including the root")
+    long tagCount;
+    
+    @Label("Root Type")
+    String rootType;
+}
\ No newline at end of file
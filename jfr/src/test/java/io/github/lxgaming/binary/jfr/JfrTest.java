@@ -0,0 +1,84 @@
+/*
+ * Copyright 2021 Alex Thomson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.lxgaming.binary.jfr;
+
+import io.github.lxgaming.binary.serializer.msgpack.MessagePackSerializer;
+import io.github.lxgaming.binary.tag.CompoundTag;
+import io.github.lxgaming.binary.tag.ListTag;
+import io.github.lxgaming.binary.tag.Tag;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class JfrTest {
+    
+    private final JfrBinarySerializer serializer = new JfrBinarySerializer(new MessagePackSerializer());
+    
+    @Test
+    public void testEvents(@TempDir Path directory) throws IOException {
+        CompoundTag compound = new CompoundTag();
+        ListTag list = new ListTag();
+        for (int index = 0; index < 8; index++) {
+            CompoundTag entry = new CompoundTag();
+            entry.putInt("index", index);
+            list.add(entry);
+        }
+        
+        compound.putList("list", list);
+        compound.putString("name", "Binary");
+        
+        byte[] bytes;
+        Path path = directory.resolve("recording.jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable(TagReadEvent.class).withThreshold(null);
+            recording.enable(TagWriteEvent.class).withThreshold(null);
+            recording.start();
+            
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            serializer.write(output, compound);
+            bytes = output.toByteArray();
+            Tag tag = serializer.read(new ByteArrayInputStream(bytes));
+            Assertions.assertEquals(compound, tag);
+            
+            recording.stop();
+            recording.dump(path);
+        }
+        
+        List<RecordedEvent> events = RecordingFile.readAllEvents(path).stream()
+                .filter(event -> event.getEventType().getName().startsWith("io.github.lxgaming.binary."))
+                .collect(Collectors.toList());
+        Assertions.assertEquals(2, events.size());
+        for (RecordedEvent event : events) {
+            Assertions.assertEquals(bytes.length, event.getLong("bytes"));
+            Assertions.assertEquals(19, event.getLong("tagCount"));
+            Assertions.assertEquals("CompoundTag", event.getString("rootType"));
+        }
+        
+        Assertions.assertEquals("io.github.lxgaming.binary.TagWrite", events.get(0).getEventType().getName());
+        Assertions.assertEquals("io.github.lxgaming.binary.TagRead", events.get(1).getEventType().getName());
+    }
+}
\ No newline at end of file
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2021 Alex Thomson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.lxgaming.binary.serializer.msgpack;
+
+import org.checkerframework.checker.index.qual.NonNegative;
+import org.checkerframework.checker.nullness.qual.NonNull;
+
+/**
+ * Bounds the work a {@link MessagePackSerializer} will do for a single tag, enforced by {@link LimitedMessageUnpacker}.
+ * <p>
+ * Declared lengths are always checked against the input remaining in their enclosing payload before anything is
+ * allocated. {@link #DEFAULT} only limits depth, streams from untrusted sources should also set
+ * {@link #withMaxBytes(long)}.
+ */
+public final class DecodeLimits {
+    
+    public static final DecodeLimits DEFAULT = new DecodeLimits(Long.MAX_VALUE, Integer.MAX_VALUE, 512, Integer.MAX_VALUE, Long.MAX_VALUE);
+    public static final DecodeLimits UNLIMITED = new DecodeLimits(Long.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE, Long.MAX_VALUE);
+    
+    private final long maxBytes;
+    private final int maxArrayLength;
+    private final int maxDepth;
+    private final int maxStringLength;
+    private final long maxElements;
+    
+    private DecodeLimits(long maxBytes, int maxArrayLength, int maxDepth, int maxStringLength, long maxElements) {
+        this.maxBytes = maxBytes;
+        this.maxArrayLength = maxArrayLength;
+        this.maxDepth = maxDepth;
+        this.maxStringLength = maxStringLength;
+        this.maxElements = maxElements;
+    }
+    
+    /**
+     * Maximum number of bytes read for a tag.
+     */
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+    
+    public @NonNull DecodeLimits withMaxBytes(@NonNegative long maxBytes) {
+        return new DecodeLimits(maxBytes, maxArrayLength, maxDepth, maxStringLength, maxElements);
+    }
+    
+    /**
+     * Maximum length of a single array, list or compound.
+     */
+    public int getMaxArrayLength() {
+        return maxArrayLength;
+    }
+    
+    public @NonNull DecodeLimits withMaxArrayLength(@NonNegative int maxArrayLength) {
+        return new DecodeLimits(maxBytes, maxArrayLength, maxDepth, maxStringLength, maxElements);
+    }
+    
+    /**
+     * Maximum nesting of compounds, lists and arrays, the root tag has a depth of 0.
+     */
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+    
+    public @NonNull DecodeLimits withMaxDepth(@NonNegative int maxDepth) {
+        return new DecodeLimits(maxBytes, maxArrayLength, maxDepth, maxStringLength, maxElements);
+    }
+    
+    /**
+     * Maximum length in bytes of a single string.
+     */
+    public int getMaxStringLength() {
+        return maxStringLength;
+    }
+    
+    public @NonNull DecodeLimits withMaxStringLength(@NonNegative int maxStringLength) {
+        return new DecodeLimits(maxBytes, maxArrayLength, maxDepth, maxStringLength, maxElements);
+    }
+    
+    /**
+     * Maximum total length of every array, list and compound in a tag.
+     */
+    public long getMaxElements() {
+        return maxElements;
+    }
+    
+    public @NonNull DecodeLimits withMaxElements(@NonNegative long maxElements) {
+        return new DecodeLimits(maxBytes, maxArrayLength, maxDepth, maxStringLength, maxElements);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2021 Alex Thomson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.lxgaming.binary.serializer.msgpack;
+
+import org.checkerframework.checker.index.qual.NonNegative;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A concurrent histogram of non-negative values with log-linear buckets.
+ * <p>
+ * Values below 32 are recorded exactly, larger values fall into one of 16 buckets per power of two so percentiles are
+ * within 6.25% of the recorded value. Recording is wait-free and never allocates.
+ */
+public class Histogram {
+    
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    
+    private final AtomicLongArray counts;
+    private final LongAdder count;
+    private final LongAdder sum;
+    private final AtomicLong max;
+    
+    public Histogram() {
+        this.counts = new AtomicLongArray(index(Long.MAX_VALUE) + 1);
+        this.count = new LongAdder();
+        this.sum = new LongAdder();
+        this.max = new AtomicLong();
+    }
+    
+    public void record(@NonNegative long value) {
+        if (value < 0) {
+            throw new IllegalArgumentException(String.format("%s is negative", value));
+        }
+        
+        counts.incrementAndGet(index(value));
+        count.increment();
+        sum.add(value);
+        if (value > max.get()) {
+            max.accumulateAndGet(value, Math::max);
+        }
+    }
+    
+    /**
+     * Returns the highest value equivalent to the value at the percentile, or 0 if nothing has been recorded.
+     *
+     * @param percentile the percentile between 0 and 100
+     */
+    public long getPercentile(double percentile) {
+        if (percentile < 0D || percentile > 100D) {
+            throw new IllegalArgumentException(String.format("%s is not a percentile", percentile));
+        }
+        
+        long total = 0;
+        for (int index = 0; index < counts.length(); index++) {
+            total += counts.get(index);
+        }
+        
+        if (total == 0) {
+            return 0;
+        }
+        
+        long target = Math.max(1, (long) Math.ceil(total * (percentile / 100D)));
+        long cumulative = 0;
+        for (int index = 0; index < counts.length(); index++) {
+            cumulative += counts.get(index);
+            if (cumulative >= target) {
+                return Math.min(highestEquivalentValue(index), getMax());
+            }
+        }
+        
+        return getMax();
+    }
+    
+    public long getCount() {
+        return count.sum();
+    }
+    
+    public long getSum() {
+        return sum.sum();
+    }
+    
+    public long getMax() {
+        return max.get();
+    }
+    
+    public double getMean() {
+        long count = getCount();
+        return count != 0 ? (double) getSum() / count : 0D;
+    }
+    
+    public void reset() {
+        for (int index = 0; index < counts.length(); index++) {
+            counts.set(index, 0);
+        }
+        
+        count.reset();
+        sum.reset();
+        max.set(0);
+    }
+    
+    @Override
+    public String toString() {
+        return String.format("count=%s, mean=%.1f, p50=%s, p90=%s, p99=%s, p99.9=%s, max=%s",
+                getCount(), getMean(), getPercentile(50D), getPercentile(90D), getPercentile(99D), getPercentile(99.9D), getMax());
+    }
+    
+    private static int index(long value) {
+        // Values below 2 * SUB_BUCKET_COUNT share a shift of 0 and map to themselves
+        int magnitude = 63 - Long.numberOfLeadingZeros(value | (SUB_BUCKET_COUNT * 2 - 1));
+        int shift = magnitude - SUB_BUCKET_BITS;
+        return (shift << SUB_BUCKET_BITS) + (int) (value >>> shift);
+    }
+    
+    private static long highestEquivalentValue(int index) {
+        int shift = Math.max((index >> SUB_BUCKET_BITS) - 1, 0);
+        long subBucket = index - ((long) shift << SUB_BUCKET_BITS);
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
\ No newline at end of file
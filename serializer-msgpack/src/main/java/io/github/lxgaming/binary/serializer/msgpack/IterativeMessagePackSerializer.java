@@ -0,0 +1,195 @@
+/*
+ * Copyright 2021 Alex Thomson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.lxgaming.binary.serializer.msgpack;
+
+import io.github.lxgaming.binary.tag.CollectionTag;
+import io.github.lxgaming.binary.tag.CompoundTag;
+import io.github.lxgaming.binary.tag.ConcurrentCompoundTag;
+import io.github.lxgaming.binary.tag.ListTag;
+import io.github.lxgaming.binary.tag.Tag;
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.msgpack.core.ExtensionTypeHeader;
+import org.msgpack.core.MessageBufferPacker;
+import org.msgpack.core.MessagePack;
+import org.msgpack.core.MessagePacker;
+import org.msgpack.core.MessageUnpacker;
+import org.msgpack.value.ValueType;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * A {@link MessagePackSerializer} which walks {@link CompoundTag} and {@link ListTag} nesting with an explicit stack
+ * rather than recursion, so the depth of a tree is bounded by {@link DecodeLimits#getMaxDepth()} and heap rather than
+ * the thread stack.
+ * <p>
+ * The encoding is unchanged, each {@link #LIST_ID} frame is buffered until its last element has been written and then
+ * emitted into its parent.
+ */
+public class IterativeMessagePackSerializer extends MessagePackSerializer {
+    
+    public IterativeMessagePackSerializer() {
+        super();
+    }
+    
+    public IterativeMessagePackSerializer(MessagePack.@NonNull PackerConfig packerConfig, MessagePack.@NonNull UnpackerConfig unpackerConfig) {
+        super(packerConfig, unpackerConfig);
+    }
+    
+    @Override
+    public @NonNull Tag read(@NonNull MessageUnpacker unpacker) throws IOException {
+        Deque<ReadFrame> frames = new ArrayDeque<>();
+        try {
+            Tag tag = readValue(unpacker, frames);
+            while (!frames.isEmpty()) {
+                ReadFrame frame = frames.peek();
+                if (frame.remaining == 0) {
+                    frames.pop();
+                    exit(frame.unpacker);
+                    continue;
+                }
+                
+                frame.remaining--;
+                if (frame.tag instanceof CompoundTag) {
+                    String key = frame.unpacker.unpackString();
+                    ((CompoundTag) frame.tag).put(key, readValue(frame.unpacker, frames));
+                } else {
+                    ((ListTag) frame.tag).add(readValue(frame.unpacker, frames));
+                }
+            }
+            
+            return tag;
+        } finally {
+            // Frames left by a failed read are still entered
+            for (ReadFrame frame : frames) {
+                exit(frame.unpacker);
+            }
+        }
+    }
+    
+    @Override
+    public void write(@NonNull MessagePacker packer, @NonNull Tag tag) throws IOException {
+        if (!(tag instanceof CompoundTag || tag instanceof ListTag) || isMemoized(tag)) {
+            super.write(packer, tag);
+            return;
+        }
+        
+        Deque<WriteFrame> frames = new ArrayDeque<>();
+        frames.push(writeHeader(packer, tag));
+        while (!frames.isEmpty()) {
+            WriteFrame frame = frames.peek();
+            if (!frame.iterator.hasNext()) {
+                frames.pop();
+                if (frame.packer != frame.parentPacker) {
+                    writeExtension(frame.parentPacker, LIST_ID, ((MessageBufferPacker) frame.packer).toByteArray(), frame.start);
+                }
+                
+                continue;
+            }
+            
+            Object next = frame.iterator.next();
+            Tag value;
+            if (next instanceof Map.Entry) {
+                frame.packer.packString((String) ((Map.Entry<?, ?>) next).getKey());
+                value = (Tag) ((Map.Entry<?, ?>) next).getValue();
+            } else {
+                value = (Tag) next;
+            }
+            
+            if ((value instanceof CompoundTag || value instanceof ListTag) && !isMemoized(value)) {
+                frames.push(writeHeader(frame.packer, value));
+            } else {
+                super.write(frame.packer, value);
+            }
+        }
+    }
+    
+    /**
+     * Reads a value, pushing a frame for a compound or list whose children are still to be read.
+     */
+    private Tag readValue(MessageUnpacker unpacker, Deque<ReadFrame> frames) throws IOException {
+        ValueType type = unpacker.getNextFormat().getValueType();
+        if (type.isMapType()) {
+            int size = unpacker.unpackMapHeader();
+            enter(unpacker);
+            CompoundTag compound = new CompoundTag();
+            frames.push(new ReadFrame(unpacker, compound, size));
+            return compound;
+        } else if (type.isExtensionType()) {
+            ExtensionTypeHeader header = unpacker.unpackExtensionTypeHeader();
+            if (header.getType() != LIST_ID) {
+                return readExtension(unpacker, header);
+            }
+            
+            getListener().onExtensionRead(header.getType(), header.getLength());
+            MessageUnpacker extensionUnpacker = newExtensionUnpacker(unpacker.readPayload(header.getLength()), unpacker);
+            ListTag list = new ListTag();
+            frames.push(new ReadFrame(extensionUnpacker, list, extensionUnpacker.unpackArrayHeader()));
+            return list;
+        } else {
+            return super.read(unpacker);
+        }
+    }
+    
+    /**
+     * Writes the header of a compound, or starts buffering a list, and returns the frame for its children.
+     */
+    private WriteFrame writeHeader(MessagePacker packer, Tag tag) throws IOException {
+        if (tag instanceof CompoundTag) {
+            CompoundTag compound = tag instanceof ConcurrentCompoundTag ? ((ConcurrentCompoundTag) tag).snapshot() : (CompoundTag) tag;
+            packer.packMapHeader(compound.size());
+            return new WriteFrame(packer, packer, compound.entries().iterator(), 0L);
+        }
+        
+        ListTag list = (ListTag) tag;
+        long start = getListener() != SerializerListener.NONE ? System.nanoTime() : 0L;
+        MessageBufferPacker listPacker = new MessageBufferPackerImpl(getPackerConfig());
+        listPacker.packArrayHeader(list.size());
+        return new WriteFrame(packer, listPacker, list.iterator(), start);
+    }
+    
+    private static class ReadFrame {
+        
+        private final MessageUnpacker unpacker;
+        private final CollectionTag tag;
+        private int remaining;
+        
+        private ReadFrame(MessageUnpacker unpacker, CollectionTag tag, int remaining) {
+            this.unpacker = unpacker;
+            this.tag = tag;
+            this.remaining = remaining;
+        }
+    }
+    
+    private static class WriteFrame {
+        
+        private final MessagePacker parentPacker;
+        private final MessagePacker packer;
+        private final Iterator<?> iterator;
+        private final long start;
+        
+        private WriteFrame(MessagePacker parentPacker, MessagePacker packer, Iterator<?> iterator, long start) {
+            this.parentPacker = parentPacker;
+            this.packer = packer;
+            this.iterator = iterator;
+            this.start = start;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,227 @@
+/*
+ * Copyright 2021 Alex Thomson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.lxgaming.binary.serializer.msgpack;
+
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.msgpack.core.ExtensionTypeHeader;
+import org.msgpack.core.MessageFormat;
+import org.msgpack.core.MessagePack;
+import org.msgpack.core.MessageSizeException;
+import org.msgpack.core.MessageUnpacker;
+import org.msgpack.core.buffer.ArrayBufferInput;
+import org.msgpack.core.buffer.MessageBufferInput;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link MessageUnpacker} which rejects headers exceeding its {@link DecodeLimits} before their contents are
+ * allocated.
+ * <p>
+ * The capacity is the number of bytes this unpacker may consume, either {@link DecodeLimits#getMaxBytes()} or the length
+ * of the extension payload it reads. An array of {@code n} elements needs at least {@code n / 8} bytes when XOR
+ * compressed and a compound of {@code n} entries needs at least {@code 2n} bytes, so no header can cause an allocation
+ * out of proportion to the input. Payloads larger than a chunk are read into buffers which grow as the bytes arrive,
+ * so a length beyond the end of an unbounded input fails without being allocated. Unpackers created for nested payloads
+ * share the element count and continue the depth of their parent.
+ */
+public class LimitedMessageUnpacker extends MessageUnpacker {
+    
+    private static final int CHUNK_SIZE = 1 << 20;
+    
+    private final MessagePack.UnpackerConfig config;
+    private final DecodeLimits limits;
+    private final long capacity;
+    private final int initialDepth;
+    private final AtomicLong elements;
+    private long start;
+    private int depth;
+    
+    public LimitedMessageUnpacker(@NonNull MessageBufferInput input, MessagePack.@NonNull UnpackerConfig config, @NonNull DecodeLimits limits) {
+        this(input, config, limits, limits.getMaxBytes(), 0, new AtomicLong());
+    }
+    
+    protected LimitedMessageUnpacker(@NonNull MessageBufferInput input, MessagePack.@NonNull UnpackerConfig config, @NonNull DecodeLimits limits, long capacity, int depth, @NonNull AtomicLong elements) {
+        super(input, config);
+        this.config = config;
+        this.limits = limits;
+        this.capacity = capacity;
+        this.initialDepth = depth;
+        this.elements = elements;
+        this.depth = depth;
+    }
+    
+    /**
+     * Creates an unpacker for a payload nested within this one, at the current depth.
+     */
+    public @NonNull LimitedMessageUnpacker newUnpacker(byte @NonNull [] bytes, int offset, int length) {
+        return new LimitedMessageUnpacker(new ArrayBufferInput(bytes, offset, length), config, limits, length, depth, elements);
+    }
+    
+    public void enter() {
+        if (depth >= limits.getMaxDepth()) {
+            throw new MessageSizeException(String.format("Depth exceeds %s", limits.getMaxDepth()), depth + 1);
+        }
+        
+        depth++;
+    }
+    
+    public void exit() {
+        depth--;
+    }
+    
+    public int getDepth() {
+        return depth;
+    }
+    
+    public @NonNull DecodeLimits getLimits() {
+        return limits;
+    }
+    
+    public long getRemaining() {
+        return capacity - (getTotalReadBytes() - start);
+    }
+    
+    /**
+     * Applies the limits afresh from the current position, for reading another message from the same input.
+     */
+    public void resetLimits() {
+        start = getTotalReadBytes();
+        depth = initialDepth;
+        elements.set(0);
+    }
+    
+    @Override
+    public MessageBufferInput reset(MessageBufferInput input) throws IOException {
+        MessageBufferInput previous = super.reset(input);
+        start = 0L;
+        depth = initialDepth;
+        elements.set(0);
+        return previous;
+    }
+    
+    @Override
+    public MessageFormat getNextFormat() throws IOException {
+        if (getRemaining() <= 0) {
+            throw new MessageSizeException(String.format("Input exceeds %s bytes", capacity), getTotalReadBytes() - start);
+        }
+        
+        return super.getNextFormat();
+    }
+    
+    @Override
+    public int unpackArrayHeader() throws IOException {
+        int size = super.unpackArrayHeader();
+        checkElements(size, (size + 7L) / 8);
+        return size;
+    }
+    
+    @Override
+    public int unpackMapHeader() throws IOException {
+        int size = super.unpackMapHeader();
+        checkElements(size, size * 2L);
+        return size;
+    }
+    
+    @Override
+    public int unpackRawStringHeader() throws IOException {
+        int length = super.unpackRawStringHeader();
+        if (length > limits.getMaxStringLength()) {
+            throw new MessageSizeException(String.format("String length %s exceeds %s", length, limits.getMaxStringLength()), length);
+        }
+        
+        checkRemaining(length);
+        return length;
+    }
+    
+    @Override
+    public int unpackBinaryHeader() throws IOException {
+        int length = super.unpackBinaryHeader();
+        checkRemaining(length);
+        return length;
+    }
+    
+    @Override
+    public ExtensionTypeHeader unpackExtensionTypeHeader() throws IOException {
+        ExtensionTypeHeader header = super.unpackExtensionTypeHeader();
+        if (header.getLength() < 0) {
+            throw new MessageSizeException(String.format("Length %s is negative", header.getLength()), header.getLength());
+        }
+        
+        checkRemaining(header.getLength());
+        return header;
+    }
+    
+    /**
+     * Reads a payload into an array which grows as the bytes arrive, so a declared length beyond the end of the input
+     * fails once the input runs out rather than allocating the whole length up front.
+     */
+    @Override
+    public byte[] readPayload(int length) throws IOException {
+        if (length <= CHUNK_SIZE) {
+            return super.readPayload(length);
+        }
+        
+        byte[] bytes = new byte[CHUNK_SIZE];
+        int position = 0;
+        while (position < length) {
+            if (position == bytes.length) {
+                bytes = Arrays.copyOf(bytes, (int) Math.min(length, bytes.length * 2L));
+            }
+            
+            super.readPayload(bytes, position, bytes.length - position);
+            position = bytes.length;
+        }
+        
+        return bytes;
+    }
+    
+    /**
+     * Reads a payload into direct memory which grows as the bytes arrive, see {@link #readPayload(int)}.
+     */
+    public @NonNull ByteBuffer readDirectPayload(int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(Math.min(length, CHUNK_SIZE));
+        while (true) {
+            readPayload(buffer);
+            if (buffer.capacity() == length) {
+                return buffer;
+            }
+            
+            buffer.flip();
+            buffer = ByteBuffer.allocateDirect((int) Math.min(length, buffer.capacity() * 2L)).put(buffer);
+        }
+    }
+    
+    private void checkElements(int size, long minimumBytes) {
+        if (size > limits.getMaxArrayLength()) {
+            throw new MessageSizeException(String.format("Length %s exceeds %s", size, limits.getMaxArrayLength()), size);
+        }
+        
+        checkRemaining(minimumBytes);
+        if (limits.getMaxElements() != Long.MAX_VALUE && elements.addAndGet(size) > limits.getMaxElements()) {
+            throw new MessageSizeException(String.format("Elements exceed %s", limits.getMaxElements()), elements.get());
+        }
+    }
+    
+    private void checkRemaining(long length) {
+        if (length > getRemaining()) {
+            throw new MessageSizeException(String.format("Length %s exceeds the %s bytes remaining", length, getRemaining()), length);
+        }
+    }
+}
\ No newline at end of file
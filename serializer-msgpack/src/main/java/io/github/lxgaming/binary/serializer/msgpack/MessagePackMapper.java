@@ -0,0 +1,710 @@
+/*
+ * Copyright 2021 Alex Thomson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.lxgaming.binary.serializer.msgpack;
+
+import io.github.lxgaming.binary.annotation.BinaryField;
+import io.github.lxgaming.binary.tag.ByteArrayTag;
+import io.github.lxgaming.binary.tag.DoubleArrayTag;
+import io.github.lxgaming.binary.tag.FloatArrayTag;
+import io.github.lxgaming.binary.tag.IntArrayTag;
+import io.github.lxgaming.binary.tag.LongArrayTag;
+import io.github.lxgaming.binary.tag.ShortArrayTag;
+import io.github.lxgaming.binary.tag.Tag;
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.msgpack.core.ExtensionTypeHeader;
+import org.msgpack.core.MessageBufferPacker;
+import org.msgpack.core.MessagePacker;
+import org.msgpack.core.MessageTypeException;
+import org.msgpack.core.MessageUnpacker;
+import org.msgpack.core.buffer.OutputStreamBufferOutput;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads and writes objects directly in the wire format of a {@link MessagePackSerializer}, without building a tag tree.
+ * <p>
+ * An object is written exactly as a {@link io.github.lxgaming.binary.tag.CompoundTag} holding its fields would be, so
+ * either side may use tags instead. Classes bind their {@link BinaryField} fields, including inherited ones, and need a
+ * no-argument constructor. Records bind every component through their canonical constructor. Null fields are omitted
+ * and missing keys keep their default value.
+ * <p>
+ * Fields may be primitives or their wrappers, strings, enums, primitive arrays, tags, other mapped objects, or a
+ * {@link List} or {@link Map} with string keys of any of these. Method handles for each class are created once and
+ * cached.
+ */
+public class MessagePackMapper {
+    
+    private final MessagePackSerializer serializer;
+    private final ClassValue<ObjectCodec> codecs;
+    
+    public MessagePackMapper(@NonNull MessagePackSerializer serializer) {
+        this.serializer = serializer;
+        this.codecs = new ClassValue<ObjectCodec>() {
+            @Override
+            protected ObjectCodec computeValue(Class<?> type) {
+                return new ObjectCodec(type);
+            }
+        };
+    }
+    
+    public <T> @NonNull T read(@NonNull InputStream input, @NonNull Class<T> type) throws IOException {
+        try (MessageUnpacker unpacker = serializer.newUnpacker(input)) {
+            return read(unpacker, type);
+        }
+    }
+    
+    public void write(@NonNull OutputStream output, @NonNull Object value) throws IOException {
+        try (MessagePacker packer = new MessagePackerImpl(new OutputStreamBufferOutput(output), serializer.getPackerConfig())) {
+            write(packer, value);
+        }
+    }
+    
+    public <T> @NonNull T read(@NonNull MessageUnpacker unpacker, @NonNull Class<T> type) throws IOException {
+        return type.cast(codecs.get(type).read(unpacker));
+    }
+    
+    public void write(@NonNull MessagePacker packer, @NonNull Object value) throws IOException {
+        codecs.get(value.getClass()).write(packer, value);
+    }
+    
+    public @NonNull MessagePackSerializer getSerializer() {
+        return serializer;
+    }
+    
+    protected @NonNull Codec createCodec(@NonNull Type type) {
+        Class<?> rawType = rawType(type);
+        if (rawType == boolean.class || rawType == Boolean.class) {
+            return new PrimitiveCodec(Kind.BOOLEAN);
+        } else if (rawType == byte.class || rawType == Byte.class) {
+            return new PrimitiveCodec(Kind.BYTE);
+        } else if (rawType == short.class || rawType == Short.class) {
+            return new PrimitiveCodec(Kind.SHORT);
+        } else if (rawType == int.class || rawType == Integer.class) {
+            return new PrimitiveCodec(Kind.INT);
+        } else if (rawType == long.class || rawType == Long.class) {
+            return new PrimitiveCodec(Kind.LONG);
+        } else if (rawType == float.class || rawType == Float.class) {
+            return new PrimitiveCodec(Kind.FLOAT);
+        } else if (rawType == double.class || rawType == Double.class) {
+            return new PrimitiveCodec(Kind.DOUBLE);
+        } else if (rawType == String.class) {
+            return new StringCodec();
+        } else if (rawType.isEnum()) {
+            return new EnumCodec(rawType);
+        } else if (rawType == byte[].class) {
+            return new TagCodec<>(ByteArrayTag.class, value -> new ByteArrayTag((byte[]) value), ByteArrayTag::getValue);
+        } else if (rawType == short[].class) {
+            return new TagCodec<>(ShortArrayTag.class, value -> new ShortArrayTag((short[]) value), ShortArrayTag::getValue);
+        } else if (rawType == int[].class) {
+            return new TagCodec<>(IntArrayTag.class, value -> new IntArrayTag((int[]) value), IntArrayTag::getValue);
+        } else if (rawType == long[].class) {
+            return new TagCodec<>(LongArrayTag.class, value -> new LongArrayTag((long[]) value), LongArrayTag::getValue);
+        } else if (rawType == float[].class) {
+            return new TagCodec<>(FloatArrayTag.class, value -> new FloatArrayTag((float[]) value), FloatArrayTag::getValue);
+        } else if (rawType == double[].class) {
+            return new TagCodec<>(DoubleArrayTag.class, value -> new DoubleArrayTag((double[]) value), DoubleArrayTag::getValue);
+        } else if (Tag.class.isAssignableFrom(rawType)) {
+            return new TagCodec<>(rawType.asSubclass(Tag.class), value -> (Tag) value, value -> value);
+        } else if (rawType == List.class) {
+            return new ListCodec(createCodec(typeArgument(type, 0)));
+        } else if (rawType == Map.class) {
+            if (typeArgument(type, 0) != String.class) {
+                throw new UnsupportedOperationException(String.format("%s is not supported", type.getTypeName()));
+            }
+            
+            return new MapCodec(createCodec(typeArgument(type, 1)));
+        } else if (rawType.isPrimitive() || rawType.isArray() || rawType.isInterface() || Modifier.isAbstract(rawType.getModifiers())) {
+            throw new UnsupportedOperationException(String.format("%s is not supported", type.getTypeName()));
+        } else {
+            // Resolved on use so classes may refer to themselves
+            return new Codec() {
+                @Override
+                public void write(@NonNull MessagePacker packer, @NonNull Object value) throws IOException {
+                    codecs.get(rawType).write(packer, value);
+                }
+                
+                @Override
+                public @NonNull Object read(@NonNull MessageUnpacker unpacker) throws IOException {
+                    return codecs.get(rawType).read(unpacker);
+                }
+            };
+        }
+    }
+    
+    private static Class<?> rawType(Type type) {
+        if (type instanceof Class) {
+            return (Class<?>) type;
+        } else if (type instanceof ParameterizedType) {
+            return (Class<?>) ((ParameterizedType) type).getRawType();
+        } else {
+            throw new UnsupportedOperationException(String.format("%s is not supported", type.getTypeName()));
+        }
+    }
+    
+    private static Type typeArgument(Type type, int index) {
+        if (type instanceof ParameterizedType) {
+            return ((ParameterizedType) type).getActualTypeArguments()[index];
+        }
+        
+        throw new UnsupportedOperationException(String.format("Raw %s is not supported", type.getTypeName()));
+    }
+    
+    private static IOException propagate(Throwable throwable) {
+        if (throwable instanceof IOException) {
+            return (IOException) throwable;
+        } else if (throwable instanceof RuntimeException) {
+            throw (RuntimeException) throwable;
+        } else if (throwable instanceof Error) {
+            throw (Error) throwable;
+        } else {
+            throw new IllegalStateException(throwable);
+        }
+    }
+    
+    protected interface Codec {
+        
+        void write(@NonNull MessagePacker packer, @NonNull Object value) throws IOException;
+        
+        @NonNull Object read(@NonNull MessageUnpacker unpacker) throws IOException;
+    }
+    
+    @FunctionalInterface
+    private interface Converter<T, R> {
+        
+        R convert(T value);
+    }
+    
+    private enum Kind {
+        
+        BOOLEAN(boolean.class, false),
+        BYTE(byte.class, (byte) 0),
+        SHORT(short.class, (short) 0),
+        INT(int.class, 0),
+        LONG(long.class, 0L),
+        FLOAT(float.class, 0F),
+        DOUBLE(double.class, 0D),
+        REFERENCE(Object.class, null);
+        
+        private final Class<?> type;
+        private final Object defaultValue;
+        
+        Kind(Class<?> type, Object defaultValue) {
+            this.type = type;
+            this.defaultValue = defaultValue;
+        }
+        
+        private static Kind of(Class<?> type) {
+            for (Kind kind : values()) {
+                if (kind.type == type) {
+                    return kind;
+                }
+            }
+            
+            return REFERENCE;
+        }
+    }
+    
+    private static final class PrimitiveCodec implements Codec {
+        
+        private final Kind kind;
+        
+        private PrimitiveCodec(Kind kind) {
+            this.kind = kind;
+        }
+        
+        @Override
+        public void write(@NonNull MessagePacker packer, @NonNull Object value) throws IOException {
+            switch (kind) {
+                case BOOLEAN:
+                    packer.packBoolean((Boolean) value);
+                    break;
+                case BYTE:
+                    packer.packByte((Byte) value);
+                    break;
+                case SHORT:
+                    packer.packShort((Short) value);
+                    break;
+                case INT:
+                    packer.packInt((Integer) value);
+                    break;
+                case LONG:
+                    packer.packLong((Long) value);
+                    break;
+                case FLOAT:
+                    packer.packFloat((Float) value);
+                    break;
+                case DOUBLE:
+                    packer.packDouble((Double) value);
+                    break;
+                default:
+                    throw new UnsupportedOperationException(String.format("%s is not supported", kind));
+            }
+        }
+        
+        @Override
+        public @NonNull Object read(@NonNull MessageUnpacker unpacker) throws IOException {
+            switch (kind) {
+                case BOOLEAN:
+                    return unpacker.unpackBoolean();
+                case BYTE:
+                    return unpacker.unpackByte();
+                case SHORT:
+                    return unpacker.unpackShort();
+                case INT:
+                    return unpacker.unpackInt();
+                case LONG:
+                    return unpacker.unpackLong();
+                case FLOAT:
+                    return unpacker.unpackFloat();
+                case DOUBLE:
+                    return unpacker.unpackDouble();
+                default:
+                    throw new UnsupportedOperationException(String.format("%s is not supported", kind));
+            }
+        }
+    }
+    
+    private static final class StringCodec implements Codec {
+        
+        @Override
+        public void write(@NonNull MessagePacker packer, @NonNull Object value) throws IOException {
+            packer.packString((String) value);
+        }
+        
+        @Override
+        public @NonNull Object read(@NonNull MessageUnpacker unpacker) throws IOException {
+            return unpacker.unpackString();
+        }
+    }
+    
+    private static final class EnumCodec implements Codec {
+        
+        private final Map<String, Object> constants;
+        
+        private EnumCodec(Class<?> type) {
+            this.constants = new HashMap<>();
+            for (Object constant : type.getEnumConstants()) {
+                constants.put(((Enum<?>) constant).name(), constant);
+            }
+        }
+        
+        @Override
+        public void write(@NonNull MessagePacker packer, @NonNull Object value) throws IOException {
+            packer.packString(((Enum<?>) value).name());
+        }
+        
+        @Override
+        public @NonNull Object read(@NonNull MessageUnpacker unpacker) throws IOException {
+            String name = unpacker.unpackString();
+            Object constant = constants.get(name);
+            if (constant == null) {
+                throw new MessageTypeException(String.format("%s is not a known constant", name));
+            }
+            
+            return constant;
+        }
+    }
+    
+    private final class TagCodec<T extends Tag> implements Codec {
+        
+        private final Class<T> type;
+        private final Converter<Object, Tag> toTag;
+        private final Converter<T, Object> fromTag;
+        
+        private TagCodec(Class<T> type, Converter<Object, Tag> toTag, Converter<T, Object> fromTag) {
+            this.type = type;
+            this.toTag = toTag;
+            this.fromTag = fromTag;
+        }
+        
+        @Override
+        public void write(@NonNull MessagePacker packer, @NonNull Object value) throws IOException {
+            serializer.write(packer, toTag.convert(value));
+        }
+        
+        @Override
+        public @NonNull Object read(@NonNull MessageUnpacker unpacker) throws IOException {
+            Tag tag = serializer.read(unpacker);
+            if (!type.isInstance(tag)) {
+                throw new MessageTypeException(String.format("Expected %s but found %s", type.getSimpleName(), tag.getClass().getSimpleName()));
+            }
+            
+            return fromTag.convert(type.cast(tag));
+        }
+    }
+    
+    private final class ListCodec implements Codec {
+        
+        private final Codec elementCodec;
+        
+        private ListCodec(Codec elementCodec) {
+            this.elementCodec = elementCodec;
+        }
+        
+        @Override
+        public void write(@NonNull MessagePacker packer, @NonNull Object value) throws IOException {
+            List<?> list = (List<?>) value;
+            MessageBufferPacker listPacker = new MessageBufferPackerImpl(serializer.getPackerConfig());
+            listPacker.packArrayHeader(list.size());
+            for (Object element : list) {
+                if (element == null) {
+                    throw new NullPointerException("List elements cannot be null");
+                }
+                
+                elementCodec.write(listPacker, element);
+            }
+            
+            serializer.writeExtension(packer, MessagePackSerializer.LIST_ID, listPacker.toByteArray());
+        }
+        
+        @Override
+        public @NonNull Object read(@NonNull MessageUnpacker unpacker) throws IOException {
+            ExtensionTypeHeader header = unpacker.unpackExtensionTypeHeader();
+            if (header.getType() != MessagePackSerializer.LIST_ID) {
+                throw new MessageTypeException(String.format("Expected list but found extension %s", header.getType()));
+            }
+            
+            byte[] bytes = unpacker.readPayload(header.getLength());
+            MessageUnpacker listUnpacker = serializer.newExtensionUnpacker(bytes, unpacker);
+            int size = listUnpacker.unpackArrayHeader();
+            List<Object> list = new ArrayList<>(size);
+            for (int index = 0; index < size; index++) {
+                list.add(elementCodec.read(listUnpacker));
+            }
+            
+            return list;
+        }
+    }
+    
+    private static final class MapCodec implements Codec {
+        
+        private final Codec valueCodec;
+        
+        private MapCodec(Codec valueCodec) {
+            this.valueCodec = valueCodec;
+        }
+        
+        @Override
+        public void write(@NonNull MessagePacker packer, @NonNull Object value) throws IOException {
+            Map<?, ?> map = (Map<?, ?>) value;
+            packer.packMapHeader(map.size());
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                if (entry.getKey() == null || entry.getValue() == null) {
+                    throw new NullPointerException("Map keys and values cannot be null");
+                }
+                
+                packer.packString((String) entry.getKey());
+                valueCodec.write(packer, entry.getValue());
+            }
+        }
+        
+        @Override
+        public @NonNull Object read(@NonNull MessageUnpacker unpacker) throws IOException {
+            int size = unpacker.unpackMapHeader();
+            MessagePackSerializer.enter(unpacker);
+            Map<String, Object> map = new LinkedHashMap<>();
+            try {
+                for (int index = 0; index < size; index++) {
+                    String key = unpacker.unpackString();
+                    map.put(key, valueCodec.read(unpacker));
+                }
+            } finally {
+                MessagePackSerializer.exit(unpacker);
+            }
+            
+            return map;
+        }
+    }
+    
+    /**
+     * Binds the fields of a class, or the components of a record, to the entries of a map.
+     */
+    private final class ObjectCodec implements Codec {
+        
+        private final Property[] properties;
+        private final Map<String, Property> propertyMap;
+        private final @Nullable MethodHandle constructor;
+        private final @Nullable MethodHandle canonicalConstructor;
+        
+        private ObjectCodec(Class<?> type) {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            List<Property> properties = new ArrayList<>();
+            try {
+                List<Class<?>> componentTypes = recordComponentTypes(type);
+                if (componentTypes != null) {
+                    Object[] components = (Object[]) Class.class.getMethod("getRecordComponents").invoke(type);
+                    for (Object component : components) {
+                        Method accessor = (Method) component.getClass().getMethod("getAccessor").invoke(component);
+                        String name = (String) component.getClass().getMethod("getName").invoke(component);
+                        Field field = type.getDeclaredField(name);
+                        accessor.setAccessible(true);
+                        properties.add(new Property(name(field), field.getType(), createCodec(field.getGenericType()), lookup.unreflect(accessor), null));
+                    }
+                    
+                    Constructor<?> constructor = type.getDeclaredConstructor(componentTypes.toArray(new Class<?>[0]));
+                    constructor.setAccessible(true);
+                    this.constructor = null;
+                    this.canonicalConstructor = lookup.unreflectConstructor(constructor)
+                            .asType(MethodType.genericMethodType(componentTypes.size()))
+                            .asSpreader(Object[].class, componentTypes.size());
+                } else {
+                    List<Class<?>> hierarchy = new ArrayList<>();
+                    for (Class<?> current = type; current != null && current != Object.class; current = current.getSuperclass()) {
+                        hierarchy.add(0, current);
+                    }
+                    
+                    for (Class<?> current : hierarchy) {
+                        for (Field field : current.getDeclaredFields()) {
+                            if (!field.isAnnotationPresent(BinaryField.class) || Modifier.isStatic(field.getModifiers())) {
+                                continue;
+                            }
+                            
+                            if (Modifier.isFinal(field.getModifiers())) {
+                                throw new UnsupportedOperationException(String.format("Final field %s.%s is not supported", current.getName(), field.getName()));
+                            }
+                            
+                            field.setAccessible(true);
+                            properties.add(new Property(name(field), field.getType(), createCodec(field.getGenericType()), lookup.unreflectGetter(field), lookup.unreflectSetter(field)));
+                        }
+                    }
+                    
+                    Constructor<?> constructor = type.getDeclaredConstructor();
+                    constructor.setAccessible(true);
+                    this.constructor = lookup.unreflectConstructor(constructor).asType(MethodType.methodType(Object.class));
+                    this.canonicalConstructor = null;
+                }
+            } catch (ReflectiveOperationException ex) {
+                throw new IllegalArgumentException(String.format("%s cannot be mapped", type.getName()), ex);
+            }
+            
+            if (properties.isEmpty()) {
+                throw new IllegalArgumentException(String.format("%s has no binary fields", type.getName()));
+            }
+            
+            this.properties = properties.toArray(new Property[0]);
+            this.propertyMap = new HashMap<>();
+            for (int index = 0; index < this.properties.length; index++) {
+                this.properties[index].index = index;
+                if (propertyMap.put(this.properties[index].name, this.properties[index]) != null) {
+                    throw new IllegalArgumentException(String.format("%s has duplicate key %s", type.getName(), this.properties[index].name));
+                }
+            }
+        }
+        
+        @Override
+        public void write(@NonNull MessagePacker packer, @NonNull Object value) throws IOException {
+            int size = 0;
+            for (Property property : properties) {
+                if (property.isPresent(value)) {
+                    size++;
+                }
+            }
+            
+            packer.packMapHeader(size);
+            for (Property property : properties) {
+                property.write(packer, value);
+            }
+        }
+        
+        @Override
+        public @NonNull Object read(@NonNull MessageUnpacker unpacker) throws IOException {
+            int size = unpacker.unpackMapHeader();
+            MessagePackSerializer.enter(unpacker);
+            Object value;
+            try {
+                if (constructor != null) {
+                    value = constructor.invokeExact();
+                    for (int index = 0; index < size; index++) {
+                        Property property = propertyMap.get(unpacker.unpackString());
+                        if (property != null) {
+                            property.read(unpacker, value);
+                        } else {
+                            unpacker.skipValue();
+                        }
+                    }
+                } else {
+                    Object[] arguments = new Object[properties.length];
+                    for (Property property : properties) {
+                        arguments[property.index] = property.kind.defaultValue;
+                    }
+                    
+                    for (int index = 0; index < size; index++) {
+                        Property property = propertyMap.get(unpacker.unpackString());
+                        if (property != null) {
+                            arguments[property.index] = property.codec.read(unpacker);
+                        } else {
+                            unpacker.skipValue();
+                        }
+                    }
+                    
+                    value = canonicalConstructor.invokeExact(arguments);
+                }
+            } catch (Throwable throwable) {
+                throw propagate(throwable);
+            } finally {
+                MessagePackSerializer.exit(unpacker);
+            }
+            
+            return value;
+        }
+        
+        private String name(Field field) {
+            BinaryField annotation = field.getAnnotation(BinaryField.class);
+            return annotation != null && !annotation.value().isEmpty() ? annotation.value() : field.getName();
+        }
+        
+        private @Nullable List<Class<?>> recordComponentTypes(Class<?> type) throws ReflectiveOperationException {
+            Class<?> superclass = type.getSuperclass();
+            if (superclass == null || !superclass.getName().equals("java.lang.Record")) {
+                return null;
+            }
+            
+            List<Class<?>> types = new ArrayList<>();
+            for (Object component : (Object[]) Class.class.getMethod("getRecordComponents").invoke(type)) {
+                types.add((Class<?>) component.getClass().getMethod("getType").invoke(component));
+            }
+            
+            return types;
+        }
+    }
+    
+    /**
+     * A single field, primitives are read and written through exactly typed handles so they are never boxed.
+     */
+    private static final class Property {
+        
+        private final String name;
+        private final byte[] key;
+        private final Kind kind;
+        private final Codec codec;
+        private final MethodHandle getter;
+        private final @Nullable MethodHandle setter;
+        private int index;
+        
+        private Property(String name, Class<?> type, Codec codec, MethodHandle getter, @Nullable MethodHandle setter) {
+            this.name = name;
+            this.key = name.getBytes(StandardCharsets.UTF_8);
+            this.kind = Kind.of(type);
+            this.codec = codec;
+            this.getter = getter.asType(MethodType.methodType(kind.type, Object.class));
+            this.setter = setter != null ? setter.asType(MethodType.methodType(void.class, Object.class, kind.type)) : null;
+        }
+        
+        private boolean isPresent(Object instance) throws IOException {
+            if (kind != Kind.REFERENCE) {
+                return true;
+            }
+            
+            try {
+                return (Object) getter.invokeExact(instance) != null;
+            } catch (Throwable throwable) {
+                throw propagate(throwable);
+            }
+        }
+        
+        private void write(MessagePacker packer, Object instance) throws IOException {
+            try {
+                switch (kind) {
+                    case BOOLEAN:
+                        writeKey(packer).packBoolean((boolean) getter.invokeExact(instance));
+                        break;
+                    case BYTE:
+                        writeKey(packer).packByte((byte) getter.invokeExact(instance));
+                        break;
+                    case SHORT:
+                        writeKey(packer).packShort((short) getter.invokeExact(instance));
+                        break;
+                    case INT:
+                        writeKey(packer).packInt((int) getter.invokeExact(instance));
+                        break;
+                    case LONG:
+                        writeKey(packer).packLong((long) getter.invokeExact(instance));
+                        break;
+                    case FLOAT:
+                        writeKey(packer).packFloat((float) getter.invokeExact(instance));
+                        break;
+                    case DOUBLE:
+                        writeKey(packer).packDouble((double) getter.invokeExact(instance));
+                        break;
+                    default:
+                        Object value = (Object) getter.invokeExact(instance);
+                        if (value != null) {
+                            writeKey(packer);
+                            codec.write(packer, value);
+                        }
+                }
+            } catch (Throwable throwable) {
+                throw propagate(throwable);
+            }
+        }
+        
+        private MessagePacker writeKey(MessagePacker packer) throws IOException {
+            // Same bytes as packString for keys below the small string threshold, without encoding on every call
+            return packer.packRawStringHeader(key.length).writePayload(key);
+        }
+        
+        private void read(MessageUnpacker unpacker, Object instance) throws IOException {
+            try {
+                switch (kind) {
+                    case BOOLEAN:
+                        setter.invokeExact(instance, unpacker.unpackBoolean());
+                        break;
+                    case BYTE:
+                        setter.invokeExact(instance, unpacker.unpackByte());
+                        break;
+                    case SHORT:
+                        setter.invokeExact(instance, unpacker.unpackShort());
+                        break;
+                    case INT:
+                        setter.invokeExact(instance, unpacker.unpackInt());
+                        break;
+                    case LONG:
+                        setter.invokeExact(instance, unpacker.unpackLong());
+                        break;
+                    case FLOAT:
+                        setter.invokeExact(instance, unpacker.unpackFloat());
+                        break;
+                    case DOUBLE:
+                        setter.invokeExact(instance, unpacker.unpackDouble());
+                        break;
+                    default:
+                        setter.invokeExact(instance, codec.read(unpacker));
+                }
+            } catch (Throwable throwable) {
+                throw propagate(throwable);
+            }
+        }
+    }
+}
\ No newline at end of file
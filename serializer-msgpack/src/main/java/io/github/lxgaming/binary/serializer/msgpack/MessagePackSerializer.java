@@ -22,6 +22,13 @@ import io.github.lxgaming.binary.tag.ByteArrayTag;
 import io.github.lxgaming.binary.tag.ByteTag;
 import io.github.lxgaming.binary.tag.CollectionTag;
 import io.github.lxgaming.binary.tag.CompoundTag;
+import io.github.lxgaming.binary.tag.ConcurrentCompoundTag;
+import io.github.lxgaming.binary.tag.DirectArrayTag;
+import io.github.lxgaming.binary.tag.DirectByteArrayTag;
+import io.github.lxgaming.binary.tag.DirectDoubleArrayTag;
+import io.github.lxgaming.binary.tag.DirectFloatArrayTag;
+import io.github.lxgaming.binary.tag.DirectIntArrayTag;
+import io.github.lxgaming.binary.tag.DirectLongArrayTag;
 import io.github.lxgaming.binary.tag.DoubleArrayTag;
 import io.github.lxgaming.binary.tag.DoubleTag;
 import io.github.lxgaming.binary.tag.FloatArrayTag;
@@ -35,28 +42,57 @@ import io.github.lxgaming.binary.tag.ShortArrayTag;
 import io.github.lxgaming.binary.tag.ShortTag;
 import io.github.lxgaming.binary.tag.StringTag;
 import io.github.lxgaming.binary.tag.Tag;
+import io.github.lxgaming.binary.tag.TagPath;
 import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
 import org.msgpack.core.ExtensionTypeHeader;
 import org.msgpack.core.MessageBufferPacker;
 import org.msgpack.core.MessageFormat;
 import org.msgpack.core.MessagePack;
 import org.msgpack.core.MessagePacker;
+import org.msgpack.core.MessageTypeException;
 import org.msgpack.core.MessageUnpacker;
+import org.msgpack.core.buffer.InputStreamBufferInput;
+import org.msgpack.core.buffer.MessageBufferInput;
 import org.msgpack.core.buffer.OutputStreamBufferOutput;
 import org.msgpack.value.ValueType;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class MessagePackSerializer implements BinarySerializer {
     
     public static final byte ARRAY_ID = 0x00;
     public static final byte LIST_ID = 0x01;
+    public static final byte RAW_ARRAY_ID = 0x02;
+    public static final byte UPDATE_ID = 0x03;
+    
+    public static final byte XOR_FLOAT32 = 0x0A;
+    public static final byte XOR_FLOAT64 = 0x0B;
     
     protected final MessagePack.PackerConfig packerConfig;
     protected final MessagePack.UnpackerConfig unpackerConfig;
+    protected boolean floatCompression;
+    protected SerializerListener listener = SerializerListener.NONE;
+    protected DecodeLimits decodeLimits = DecodeLimits.DEFAULT;
+    private volatile Map<CollectionTag, AtomicReference<TagMemo>> memos = Collections.emptyMap();
+    
+    private static final ThreadLocal<KeyTables> KEY_TABLES = ThreadLocal.withInitial(KeyTables::new);
     
     public MessagePackSerializer() {
         this(MessagePack.DEFAULT_PACKER_CONFIG, MessagePack.DEFAULT_UNPACKER_CONFIG);
@@ -67,17 +103,104 @@ public class MessagePackSerializer implements BinarySerializer {
         this.unpackerConfig = unpackerConfig;
     }
     
+    public MessagePack.@NonNull PackerConfig getPackerConfig() {
+        return packerConfig;
+    }
+    
+    public MessagePack.@NonNull UnpackerConfig getUnpackerConfig() {
+        return unpackerConfig;
+    }
+    
+    public boolean isFloatCompression() {
+        return floatCompression;
+    }
+    
+    public void setFloatCompression(boolean floatCompression) {
+        this.floatCompression = floatCompression;
+    }
+    
+    public @NonNull SerializerListener getListener() {
+        return listener;
+    }
+    
+    public void setListener(@NonNull SerializerListener listener) {
+        this.listener = listener;
+    }
+    
+    public @NonNull DecodeLimits getDecodeLimits() {
+        return decodeLimits;
+    }
+    
+    public void setDecodeLimits(@NonNull DecodeLimits decodeLimits) {
+        this.decodeLimits = decodeLimits;
+    }
+    
+    /**
+     * Caches the encoded bytes of the tag on its next write and writes them in place of encoding the tag again until the
+     * tag changes.
+     * <p>
+     * Changes made through the compounds and lists in the subtree, and tags replaced within it, are detected by a walk of
+     * the subtree which compares the identity of each tag rather than its contents, so it costs the same however large
+     * the arrays are. Scalar tags updated in place through {@code setValue} and arrays whose contents are changed in
+     * place are not detected and should be replaced instead.
+     */
+    public synchronized void memoize(@NonNull CollectionTag tag) {
+        Map<CollectionTag, AtomicReference<TagMemo>> memos = new IdentityHashMap<>(this.memos);
+        memos.putIfAbsent(tag, new AtomicReference<>());
+        this.memos = memos;
+    }
+    
+    public synchronized void forget(@NonNull CollectionTag tag) {
+        Map<CollectionTag, AtomicReference<TagMemo>> memos = new IdentityHashMap<>(this.memos);
+        memos.remove(tag);
+        this.memos = memos.isEmpty() ? Collections.emptyMap() : memos;
+    }
+    
+    public boolean isMemoized(@NonNull Tag tag) {
+        Map<CollectionTag, AtomicReference<TagMemo>> memos = this.memos;
+        return !memos.isEmpty() && memos.containsKey(tag);
+    }
+    
+    /**
+     * Creates an unpacker which enforces the {@link DecodeLimits} of this serializer.
+     */
+    public @NonNull MessageUnpacker newUnpacker(@NonNull InputStream input) {
+        return newUnpacker(new InputStreamBufferInput(input, unpackerConfig.getBufferSize()));
+    }
+    
+    /**
+     * Creates an unpacker which enforces the {@link DecodeLimits} of this serializer.
+     */
+    public @NonNull MessageUnpacker newUnpacker(@NonNull MessageBufferInput input) {
+        return new LimitedMessageUnpacker(input, unpackerConfig, decodeLimits);
+    }
+    
     @Override
     public @NonNull Tag read(@NonNull InputStream input) throws IOException {
-        try (MessageUnpacker unpacker = unpackerConfig.newUnpacker(input)) {
-            return read(unpacker);
+        try (MessageUnpacker unpacker = newUnpacker(input)) {
+            if (listener == SerializerListener.NONE) {
+                return read(unpacker);
+            }
+            
+            long start = System.nanoTime();
+            Tag tag = read(unpacker);
+            listener.onRead(tag, unpacker.getTotalReadBytes(), System.nanoTime() - start);
+            return tag;
         }
     }
     
     @Override
     public void write(@NonNull OutputStream output, @NonNull Tag tag) throws IOException {
         try (MessagePacker packer = new MessagePackerImpl(new OutputStreamBufferOutput(output), packerConfig)) {
+            if (listener == SerializerListener.NONE) {
+                write(packer, tag);
+                return;
+            }
+            
+            long start = System.nanoTime();
             write(packer, tag);
+            packer.flush();
+            listener.onWrite(tag, packer.getTotalWrittenBytes(), System.nanoTime() - start);
         }
     }
     
@@ -101,9 +224,19 @@ public class MessagePackSerializer implements BinarySerializer {
         } else if (type.isStringType()) {
             return new StringTag(unpacker.unpackString());
         } else if (type.isArrayType()) {
-            return readArray(unpacker);
+            enter(unpacker);
+            try {
+                return readArray(unpacker);
+            } finally {
+                exit(unpacker);
+            }
         } else if (type.isMapType()) {
-            return readCompound(unpacker);
+            enter(unpacker);
+            try {
+                return readCompound(unpacker);
+            } finally {
+                exit(unpacker);
+            }
         } else if (type.isExtensionType()) {
             return readExtension(unpacker);
         } else {
@@ -135,50 +268,522 @@ public class MessagePackSerializer implements BinarySerializer {
         }
     }
     
+    /**
+     * Reads a compound into the target, which ends up equal to the compound that was read.
+     * <p>
+     * Tags already held by the target are updated in place when the incoming tag has the same type: scalar values are
+     * set, arrays of the same size are decoded into their existing backing array, compounds are updated recursively and
+     * lists are updated element by element. Keys missing from the input are removed. When the target or a nested
+     * compound or list is tracked, changed scalars and arrays are replaced through {@code put} and {@code set} instead so
+     * the change is recorded, and unchanged scalars are left alone. The same applies while any tag is
+     * {@link #memoize(CollectionTag) memoized} by this serializer, as a memo cannot see values set in place and the target
+     * may be within a memoized tree.
+     */
+    public void read(@NonNull InputStream input, @NonNull CompoundTag target) throws IOException {
+        try (MessageUnpacker unpacker = newUnpacker(input)) {
+            read(unpacker, target);
+        }
+    }
+    
+    public void read(@NonNull MessageUnpacker unpacker, @NonNull CompoundTag target) throws IOException {
+        MessageFormat format = unpacker.getNextFormat();
+        if (!format.getValueType().isMapType()) {
+            throw new MessageTypeException(String.format("Expected compound but found %s", format));
+        }
+        
+        readInto(unpacker, target, false);
+    }
+    
+    /**
+     * Reads a tag, reusing the existing tag where possible.
+     *
+     * @param replace whether a changed scalar or array must be replaced rather than updated in place
+     * @return the existing tag if it was reused, otherwise a new tag
+     */
+    protected @NonNull Tag readInto(@NonNull MessageUnpacker unpacker, @Nullable Tag existing, boolean replace) throws IOException {
+        MessageFormat format = unpacker.getNextFormat();
+        ValueType type = format.getValueType();
+        if (existing instanceof CompoundTag && type.isMapType()) {
+            enter(unpacker);
+            try {
+                readCompoundInto(unpacker, (CompoundTag) existing);
+            } finally {
+                exit(unpacker);
+            }
+            
+            return existing;
+        } else if (type.isExtensionType() && existing instanceof CollectionTag && !(existing instanceof CompoundTag)) {
+            ExtensionTypeHeader header = unpacker.unpackExtensionTypeHeader();
+            if (header.getType() == LIST_ID && existing instanceof ListTag) {
+                return readListInto(unpacker, header, (ListTag) existing);
+            } else if (header.getType() == ARRAY_ID) {
+                listener.onExtensionRead(header.getType(), header.getLength());
+                long start = unpacker.getTotalReadBytes();
+                enter(unpacker);
+                CollectionTag tag;
+                try {
+                    tag = readArray(unpacker, replace ? null : existing);
+                } finally {
+                    exit(unpacker);
+                }
+                
+                checkPayload(unpacker, header, start);
+                return replace && tag.equals(existing) ? existing : tag;
+            }
+            
+            return readExtension(unpacker, header);
+        } else if (existing instanceof BooleanTag && format == MessageFormat.BOOLEAN) {
+            BooleanTag tag = (BooleanTag) existing;
+            boolean value = unpacker.unpackBoolean();
+            if (tag.getValue() == value) {
+                return tag;
+            } else if (replace) {
+                return new BooleanTag(value);
+            }
+            
+            tag.setValue(value);
+            return tag;
+        } else if (existing instanceof ByteTag && (format == MessageFormat.POSFIXINT || format == MessageFormat.UINT8 || format == MessageFormat.INT8 || format == MessageFormat.NEGFIXINT)) {
+            ByteTag tag = (ByteTag) existing;
+            byte value = unpacker.unpackByte();
+            if (tag.getValue() == value) {
+                return tag;
+            } else if (replace) {
+                return new ByteTag(value);
+            }
+            
+            tag.setValue(value);
+            return tag;
+        } else if (existing instanceof ShortTag && (format == MessageFormat.UINT16 || format == MessageFormat.INT16)) {
+            ShortTag tag = (ShortTag) existing;
+            short value = unpacker.unpackShort();
+            if (tag.getValue() == value) {
+                return tag;
+            } else if (replace) {
+                return new ShortTag(value);
+            }
+            
+            tag.setValue(value);
+            return tag;
+        } else if (existing instanceof IntTag && (format == MessageFormat.UINT32 || format == MessageFormat.INT32)) {
+            IntTag tag = (IntTag) existing;
+            int value = unpacker.unpackInt();
+            if (tag.getValue() == value) {
+                return tag;
+            } else if (replace) {
+                return new IntTag(value);
+            }
+            
+            tag.setValue(value);
+            return tag;
+        } else if (existing instanceof LongTag && (format == MessageFormat.UINT64 || format == MessageFormat.INT64)) {
+            LongTag tag = (LongTag) existing;
+            long value = unpacker.unpackLong();
+            if (tag.getValue() == value) {
+                return tag;
+            } else if (replace) {
+                return new LongTag(value);
+            }
+            
+            tag.setValue(value);
+            return tag;
+        } else if (existing instanceof FloatTag && format == MessageFormat.FLOAT32) {
+            FloatTag tag = (FloatTag) existing;
+            float value = unpacker.unpackFloat();
+            if (Float.floatToIntBits(tag.getValue()) == Float.floatToIntBits(value)) {
+                return tag;
+            } else if (replace) {
+                return new FloatTag(value);
+            }
+            
+            tag.setValue(value);
+            return tag;
+        } else if (existing instanceof DoubleTag && format == MessageFormat.FLOAT64) {
+            DoubleTag tag = (DoubleTag) existing;
+            double value = unpacker.unpackDouble();
+            if (Double.doubleToLongBits(tag.getValue()) == Double.doubleToLongBits(value)) {
+                return tag;
+            } else if (replace) {
+                return new DoubleTag(value);
+            }
+            
+            tag.setValue(value);
+            return tag;
+        } else if (existing instanceof StringTag && type.isStringType()) {
+            StringTag tag = (StringTag) existing;
+            String value = unpacker.unpackString();
+            if (tag.getValue().equals(value)) {
+                return tag;
+            } else if (replace) {
+                return new StringTag(value);
+            }
+            
+            tag.setValue(value);
+            return tag;
+        } else {
+            return read(unpacker);
+        }
+    }
+    
+    private void readCompoundInto(MessageUnpacker unpacker, CompoundTag compound) throws IOException {
+        int size = unpacker.unpackMapHeader();
+        boolean replace = compound.isTracking() || !memos.isEmpty();
+        KeyTable keys = compound.isEmpty() ? null : KEY_TABLES.get().acquire(size);
+        try {
+            int distinct = 0;
+            for (int index = 0; index < size; index++) {
+                String key = unpacker.unpackString();
+                Tag existing = compound.get(key);
+                Tag tag = readInto(unpacker, existing, replace);
+                if (tag != existing) {
+                    compound.put(key, tag);
+                }
+                
+                if (keys != null && keys.add(key)) {
+                    distinct++;
+                }
+            }
+            
+            // Compare with the keys seen rather than the header, which counts duplicate keys
+            if (keys != null && compound.size() != distinct) {
+                for (String key : compound.keySet().toArray(new String[0])) {
+                    if (!keys.contains(key)) {
+                        compound.remove(key);
+                    }
+                }
+            }
+        } finally {
+            if (keys != null) {
+                keys.release();
+            }
+        }
+    }
+    
+    /**
+     * Reads a {@link #LIST_ID} payload straight from the unpacker into the list, replacing the list only if the type of
+     * its elements changes.
+     */
+    private Tag readListInto(MessageUnpacker unpacker, ExtensionTypeHeader header, ListTag list) throws IOException {
+        listener.onExtensionRead(header.getType(), header.getLength());
+        long start = unpacker.getTotalReadBytes();
+        enter(unpacker);
+        ListTag result = list;
+        try {
+            int size = unpacker.unpackArrayHeader();
+            boolean replace = list.isTracking() || !memos.isEmpty();
+            for (int index = 0; index < size; index++) {
+                Tag existing = result == list && index < list.size() ? list.get(index) : null;
+                Tag tag = readInto(unpacker, existing, replace);
+                if (result == list && list.getType() != Tag.class && list.getType() != tag.getClass()) {
+                    result = new ListTag();
+                    for (int previous = 0; previous < index; previous++) {
+                        result.add(list.get(previous));
+                    }
+                }
+                
+                if (result != list) {
+                    result.add(tag);
+                } else if (index >= list.size()) {
+                    list.add(tag);
+                } else if (tag != existing) {
+                    list.set(index, tag);
+                }
+            }
+            
+            while (result == list && list.size() > size) {
+                list.remove(list.size() - 1);
+            }
+        } finally {
+            exit(unpacker);
+        }
+        
+        checkPayload(unpacker, header, start);
+        return result;
+    }
+    
+    private static void checkPayload(MessageUnpacker unpacker, ExtensionTypeHeader header, long start) {
+        long length = unpacker.getTotalReadBytes() - start;
+        if (length != header.getLength()) {
+            throw new MessageTypeException(String.format("Extension %s has length %s but its contents are %s bytes", header.getType(), header.getLength(), length));
+        }
+    }
+    
+    /**
+     * Streams the tags concatenated in the buffer, such as those written by a {@link TagOutputSession}.
+     * <p>
+     * The stream splits between tags for parallel decoding. The first split skips over the remaining tags to find where
+     * each starts, which is much cheaper than decoding them.
+     */
+    public @NonNull Stream<Tag> stream(@NonNull ByteBuffer buffer) {
+        return StreamSupport.stream(TagSpliterator.sequence(this, TagSpliterator.Source.of(buffer), buffer.remaining()), false);
+    }
+    
+    /**
+     * Streams the tags concatenated in the file, which is read with positional reads so files over 2 GiB are supported.
+     * The stream must be closed to close the file.
+     *
+     * @see #stream(ByteBuffer)
+     */
+    public @NonNull Stream<Tag> stream(@NonNull Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        TagSpliterator spliterator = TagSpliterator.sequence(this, TagSpliterator.Source.of(channel, unpackerConfig.getBufferSize()), channel.size());
+        return StreamSupport.stream(spliterator, false).onClose(() -> close(channel));
+    }
+    
+    /**
+     * Streams the elements of the list at the start of the buffer without decoding the list as a whole.
+     * <p>
+     * The stream splits between elements for parallel decoding.
+     *
+     * @see #stream(ByteBuffer)
+     */
+    public @NonNull Stream<Tag> streamList(@NonNull ByteBuffer buffer) throws IOException {
+        return StreamSupport.stream(TagSpliterator.list(this, TagSpliterator.Source.of(buffer), buffer.remaining()), false);
+    }
+    
+    /**
+     * Streams the elements of the list at the start of the file. The stream must be closed to close the file.
+     *
+     * @see #streamList(ByteBuffer)
+     */
+    public @NonNull Stream<Tag> streamList(@NonNull Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            TagSpliterator spliterator = TagSpliterator.list(this, TagSpliterator.Source.of(channel, unpackerConfig.getBufferSize()), channel.size());
+            return StreamSupport.stream(spliterator, false).onClose(() -> close(channel));
+        } catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+    
+    private static void close(FileChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+    
+    /**
+     * Reads only the tags on the paths, skipping every other compound entry without decoding it. Compounds leading to the
+     * paths are kept so each path resolves against the result as it would against the whole tag. Lists cannot be
+     * partially decoded, a path through a list index reads the whole list.
+     */
+    public @NonNull Tag readProjection(@NonNull InputStream input, @NonNull TagPath @NonNull ... paths) throws IOException {
+        try (MessageUnpacker unpacker = newUnpacker(input)) {
+            return readProjection(unpacker, paths);
+        }
+    }
+    
+    public @NonNull Tag readProjection(@NonNull MessageUnpacker unpacker, @NonNull TagPath @NonNull ... paths) throws IOException {
+        Projection projection = new Projection();
+        for (TagPath path : paths) {
+            Projection node = projection;
+            for (int segment = 0; segment < path.size() && !node.complete; segment++) {
+                if (path.isIndex(segment)) {
+                    node.complete = true;
+                } else {
+                    node = node.children.computeIfAbsent(path.getKey(segment), key -> new Projection());
+                }
+            }
+            
+            node.complete = true;
+        }
+        
+        return readProjection(unpacker, projection);
+    }
+    
+    private Tag readProjection(MessageUnpacker unpacker, Projection projection) throws IOException {
+        if (projection.complete || !unpacker.getNextFormat().getValueType().isMapType()) {
+            return read(unpacker);
+        }
+        
+        enter(unpacker);
+        CompoundTag compound = new CompoundTag();
+        try {
+            int size = unpacker.unpackMapHeader();
+            for (int index = 0; index < size; index++) {
+                String key = unpacker.unpackString();
+                Projection child = projection.children.get(key);
+                if (child != null) {
+                    compound.put(key, readProjection(unpacker, child));
+                } else {
+                    unpacker.skipValue();
+                }
+            }
+        } finally {
+            exit(unpacker);
+        }
+        
+        return compound;
+    }
+    
+    /**
+     * Writes the keys of a tracked compound which are dirty as an update record, see {@link CompoundTag#track()}.
+     * <p>
+     * The record is a {@link #UPDATE_ID} extension holding a map of each dirty key to its tag, to nil if the key was
+     * removed, or to a nested update record if the key holds a compound which was updated in place. Lists and every
+     * other tag are written whole. The compound is not marked clean.
+     * <p>
+     * Only updates made through a compound or list are seen, a scalar tag changed in place through its
+     * {@code setValue} is not written and must be replaced with {@link CompoundTag#put(String, Tag)} instead.
+     */
+    public void writeUpdate(@NonNull OutputStream output, @NonNull CompoundTag compound) throws IOException {
+        try (MessagePacker packer = new MessagePackerImpl(new OutputStreamBufferOutput(output), packerConfig)) {
+            writeUpdate(packer, compound);
+        }
+    }
+    
+    public void writeUpdate(@NonNull MessagePacker packer, @NonNull CompoundTag compound) throws IOException {
+        long start = listener != SerializerListener.NONE ? System.nanoTime() : 0L;
+        Set<String> keys = compound.getDirtyKeys();
+        Set<String> changedKeys = compound.getChangedKeys();
+        MessageBufferPacker updatePacker = new MessageBufferPackerImpl(packerConfig);
+        updatePacker.packMapHeader(keys.size());
+        for (String key : keys) {
+            updatePacker.packString(key);
+            Tag tag = compound.get(key);
+            if (tag == null) {
+                updatePacker.packNil();
+            } else if (tag instanceof CompoundTag && !changedKeys.contains(key)) {
+                writeUpdate(updatePacker, (CompoundTag) tag);
+            } else {
+                write(updatePacker, tag);
+            }
+        }
+        
+        writeExtension(packer, UPDATE_ID, updatePacker.toByteArray(), start);
+    }
+    
+    /**
+     * Applies an update record written by {@link #writeUpdate(OutputStream, CompoundTag)} to the compound.
+     */
+    public void readUpdate(@NonNull InputStream input, @NonNull CompoundTag compound) throws IOException {
+        try (MessageUnpacker unpacker = newUnpacker(input)) {
+            readUpdate(unpacker, compound);
+        }
+    }
+    
+    public void readUpdate(@NonNull MessageUnpacker unpacker, @NonNull CompoundTag compound) throws IOException {
+        readUpdate(unpacker, unpacker.unpackExtensionTypeHeader(), compound);
+    }
+    
+    protected void readUpdate(@NonNull MessageUnpacker unpacker, @NonNull ExtensionTypeHeader header, @NonNull CompoundTag compound) throws IOException {
+        if (header.getType() != UPDATE_ID) {
+            throw new MessageTypeException(String.format("Expected update record but found extension %s", header.getType()));
+        }
+        
+        listener.onExtensionRead(header.getType(), header.getLength());
+        MessageUnpacker updateUnpacker = newExtensionUnpacker(unpacker.readPayload(header.getLength()), unpacker);
+        int size = updateUnpacker.unpackMapHeader();
+        for (int index = 0; index < size; index++) {
+            String key = updateUnpacker.unpackString();
+            MessageFormat format = updateUnpacker.getNextFormat();
+            if (format == MessageFormat.NIL) {
+                updateUnpacker.unpackNil();
+                compound.remove(key);
+            } else if (format.getValueType().isExtensionType()) {
+                ExtensionTypeHeader valueHeader = updateUnpacker.unpackExtensionTypeHeader();
+                if (valueHeader.getType() != UPDATE_ID) {
+                    compound.put(key, readExtension(updateUnpacker, valueHeader));
+                    continue;
+                }
+                
+                Tag tag = compound.get(key);
+                if (!(tag instanceof CompoundTag)) {
+                    throw new MessageTypeException(String.format("Cannot update %s as it is not a compound", key));
+                }
+                
+                readUpdate(updateUnpacker, valueHeader, (CompoundTag) tag);
+            } else {
+                compound.put(key, read(updateUnpacker));
+            }
+        }
+    }
+    
+    /**
+     * Computes the exact number of bytes {@link #write(OutputStream, Tag)} produces for the tag without encoding it.
+     */
+    public long encodedSize(@NonNull Tag tag) {
+        if (tag instanceof BooleanTag) {
+            return 1;
+        } else if (tag instanceof ByteTag) {
+            return byteSize(((ByteTag) tag).getValue());
+        } else if (tag instanceof ShortTag) {
+            return 3;
+        } else if (tag instanceof IntTag || tag instanceof FloatTag) {
+            return 5;
+        } else if (tag instanceof LongTag || tag instanceof DoubleTag) {
+            return 9;
+        } else if (tag instanceof StringTag) {
+            return stringSize(((StringTag) tag).getValue());
+        } else if (tag instanceof CollectionTag) {
+            return collectionSize((CollectionTag) tag);
+        } else {
+            throw new UnsupportedOperationException(String.format("%s is not supported", tag.getClass().getName()));
+        }
+    }
+    
     protected CollectionTag readArray(@NonNull MessageUnpacker unpacker) throws IOException {
+        return readArray(unpacker, null);
+    }
+    
+    /**
+     * Reads an array, decoding into the existing tag instead of allocating one if it is the same type and size.
+     */
+    protected CollectionTag readArray(@NonNull MessageUnpacker unpacker, @Nullable Tag existing) throws IOException {
         byte code = unpacker.unpackByte();
         int size = unpacker.unpackArrayHeader();
         if (code == MessagePack.Code.INT8) {
-            ByteArrayTag tag = new ByteArrayTag(new byte[size]);
+            ByteArrayTag tag = existing instanceof ByteArrayTag && ((ByteArrayTag) existing).size() == size ? (ByteArrayTag) existing : new ByteArrayTag(new byte[size]);
             for (int index = 0; index < size; index++) {
                 tag.set(index, unpacker.unpackByte());
             }
             
             return tag;
         } else if (code == MessagePack.Code.INT16) {
-            ShortArrayTag tag = new ShortArrayTag(new short[size]);
+            ShortArrayTag tag = existing instanceof ShortArrayTag && ((ShortArrayTag) existing).size() == size ? (ShortArrayTag) existing : new ShortArrayTag(new short[size]);
             for (int index = 0; index < size; index++) {
                 tag.set(index, unpacker.unpackShort());
             }
             
             return tag;
         } else if (code == MessagePack.Code.INT32) {
-            IntArrayTag tag = new IntArrayTag(new int[size]);
+            IntArrayTag tag = existing instanceof IntArrayTag && ((IntArrayTag) existing).size() == size ? (IntArrayTag) existing : new IntArrayTag(new int[size]);
             for (int index = 0; index < size; index++) {
                 tag.set(index, unpacker.unpackInt());
             }
             
             return tag;
         } else if (code == MessagePack.Code.INT64) {
-            LongArrayTag tag = new LongArrayTag(new long[size]);
+            LongArrayTag tag = existing instanceof LongArrayTag && ((LongArrayTag) existing).size() == size ? (LongArrayTag) existing : new LongArrayTag(new long[size]);
             for (int index = 0; index < size; index++) {
                 tag.set(index, unpacker.unpackLong());
             }
             
             return tag;
         } else if (code == MessagePack.Code.FLOAT32) {
-            FloatArrayTag tag = new FloatArrayTag(new float[size]);
+            FloatArrayTag tag = existing instanceof FloatArrayTag && ((FloatArrayTag) existing).size() == size ? (FloatArrayTag) existing : new FloatArrayTag(new float[size]);
             for (int index = 0; index < size; index++) {
                 tag.set(index, unpacker.unpackFloat());
             }
             
             return tag;
         } else if (code == MessagePack.Code.FLOAT64) {
-            DoubleArrayTag tag = new DoubleArrayTag(new double[size]);
+            DoubleArrayTag tag = existing instanceof DoubleArrayTag && ((DoubleArrayTag) existing).size() == size ? (DoubleArrayTag) existing : new DoubleArrayTag(new double[size]);
             for (int index = 0; index < size; index++) {
                 tag.set(index, unpacker.unpackDouble());
             }
             
+            return tag;
+        } else if (code == XOR_FLOAT32) {
+            FloatArrayTag tag = existing instanceof FloatArrayTag && ((FloatArrayTag) existing).size() == size ? (FloatArrayTag) existing : new FloatArrayTag(new float[size]);
+            XorCompressionUtils.decode(unpacker.readPayload(unpacker.unpackBinaryHeader()), tag.getValue());
+            return tag;
+        } else if (code == XOR_FLOAT64) {
+            DoubleArrayTag tag = existing instanceof DoubleArrayTag && ((DoubleArrayTag) existing).size() == size ? (DoubleArrayTag) existing : new DoubleArrayTag(new double[size]);
+            XorCompressionUtils.decode(unpacker.readPayload(unpacker.unpackBinaryHeader()), tag.getValue());
             return tag;
         } else {
             throw new UnsupportedOperationException(String.format("%s is not supported", code));
@@ -186,6 +791,29 @@ public class MessagePackSerializer implements BinarySerializer {
     }
     
     protected void writeCollection(@NonNull MessagePacker packer, @NonNull CollectionTag collection) throws IOException {
+        Map<CollectionTag, AtomicReference<TagMemo>> memos = this.memos;
+        AtomicReference<TagMemo> reference = memos.isEmpty() ? null : memos.get(collection);
+        if (reference == null) {
+            encodeCollection(packer, collection);
+            return;
+        }
+        
+        TagMemo memo = reference.get();
+        byte[] bytes = memo != null ? memo.getBytes(collection) : null;
+        if (bytes == null) {
+            memo = TagMemo.capture(collection);
+            MessageBufferPacker memoPacker = new MessageBufferPackerImpl(packerConfig);
+            encodeCollection(memoPacker, collection);
+            bytes = memoPacker.toByteArray();
+            memo.setBytes(bytes);
+            reference.set(memo);
+        }
+        
+        packer.addPayload(bytes);
+    }
+    
+    protected void encodeCollection(@NonNull MessagePacker packer, @NonNull CollectionTag collection) throws IOException {
+        long start = listener != SerializerListener.NONE ? System.nanoTime() : 0L;
         if (collection instanceof ByteArrayTag) {
             MessageBufferPacker arrayPacker = packerConfig.newBufferPacker();
             arrayPacker.packByte(MessagePack.Code.INT8);
@@ -194,7 +822,7 @@ public class MessagePackSerializer implements BinarySerializer {
                 arrayPacker.packByte(value);
             }
             
-            writeExtension(packer, ARRAY_ID, arrayPacker.toByteArray());
+            writeExtension(packer, ARRAY_ID, arrayPacker.toByteArray(), start);
         } else if (collection instanceof ShortArrayTag) {
             MessageBufferPacker arrayPacker = packerConfig.newBufferPacker();
             arrayPacker.packByte(MessagePack.Code.INT16);
@@ -203,7 +831,7 @@ public class MessagePackSerializer implements BinarySerializer {
                 arrayPacker.packShort(value);
             }
             
-            writeExtension(packer, ARRAY_ID, arrayPacker.toByteArray());
+            writeExtension(packer, ARRAY_ID, arrayPacker.toByteArray(), start);
         } else if (collection instanceof IntArrayTag) {
             MessageBufferPacker arrayPacker = packerConfig.newBufferPacker();
             arrayPacker.packByte(MessagePack.Code.INT32);
@@ -212,7 +840,7 @@ public class MessagePackSerializer implements BinarySerializer {
                 arrayPacker.packInt(value);
             }
             
-            writeExtension(packer, ARRAY_ID, arrayPacker.toByteArray());
+            writeExtension(packer, ARRAY_ID, arrayPacker.toByteArray(), start);
         } else if (collection instanceof LongArrayTag) {
             MessageBufferPacker arrayPacker = packerConfig.newBufferPacker();
             arrayPacker.packByte(MessagePack.Code.INT64);
@@ -221,36 +849,229 @@ public class MessagePackSerializer implements BinarySerializer {
                 arrayPacker.packLong(value);
             }
             
-            writeExtension(packer, ARRAY_ID, arrayPacker.toByteArray());
+            writeExtension(packer, ARRAY_ID, arrayPacker.toByteArray(), start);
         } else if (collection instanceof FloatArrayTag) {
+            float[] values = ((FloatArrayTag) collection).getValue();
+            byte[] bytes = floatCompression ? XorCompressionUtils.encode(values) : null;
             MessageBufferPacker arrayPacker = packerConfig.newBufferPacker();
-            arrayPacker.packByte(MessagePack.Code.FLOAT32);
-            arrayPacker.packArrayHeader(collection.size());
-            for (float value : ((FloatArrayTag) collection).getValue()) {
-                arrayPacker.packFloat(value);
+            if (bytes != null && bytes.length + binaryHeaderSize(bytes.length) < values.length * 5L) {
+                arrayPacker.packByte(XOR_FLOAT32);
+                arrayPacker.packArrayHeader(values.length);
+                arrayPacker.packBinaryHeader(bytes.length);
+                arrayPacker.writePayload(bytes);
+            } else {
+                arrayPacker.packByte(MessagePack.Code.FLOAT32);
+                arrayPacker.packArrayHeader(values.length);
+                MessagePackerUtils.packFloats(arrayPacker, values);
             }
             
-            writeExtension(packer, ARRAY_ID, arrayPacker.toByteArray());
+            writeExtension(packer, ARRAY_ID, arrayPacker.toByteArray(), start);
         } else if (collection instanceof DoubleArrayTag) {
+            double[] values = ((DoubleArrayTag) collection).getValue();
+            byte[] bytes = floatCompression ? XorCompressionUtils.encode(values) : null;
             MessageBufferPacker arrayPacker = packerConfig.newBufferPacker();
-            arrayPacker.packByte(MessagePack.Code.FLOAT64);
-            arrayPacker.packArrayHeader(collection.size());
-            for (double value : ((DoubleArrayTag) collection).getValue()) {
-                arrayPacker.packDouble(value);
+            if (bytes != null && bytes.length + binaryHeaderSize(bytes.length) < values.length * 9L) {
+                arrayPacker.packByte(XOR_FLOAT64);
+                arrayPacker.packArrayHeader(values.length);
+                arrayPacker.packBinaryHeader(bytes.length);
+                arrayPacker.writePayload(bytes);
+            } else {
+                arrayPacker.packByte(MessagePack.Code.FLOAT64);
+                arrayPacker.packArrayHeader(values.length);
+                MessagePackerUtils.packDoubles(arrayPacker, values);
             }
             
-            writeExtension(packer, ARRAY_ID, arrayPacker.toByteArray());
+            writeExtension(packer, ARRAY_ID, arrayPacker.toByteArray(), start);
+        } else if (collection instanceof DirectArrayTag) {
+            writeDirectArray(packer, (DirectArrayTag) collection);
+        } else if (collection instanceof ConcurrentCompoundTag) {
+            writeCompound(packer, ((ConcurrentCompoundTag) collection).snapshot());
         } else if (collection instanceof CompoundTag) {
             writeCompound(packer, (CompoundTag) collection);
         } else if (collection instanceof ListTag) {
             MessageBufferPacker listPacker = new MessageBufferPackerImpl(packerConfig);
             writeList(listPacker, (ListTag) collection);
-            writeExtension(packer, LIST_ID, listPacker.toByteArray());
+            writeExtension(packer, LIST_ID, listPacker.toByteArray(), start);
+        } else {
+            throw new UnsupportedOperationException(String.format("%s is not supported", collection.getClass().getName()));
+        }
+    }
+    
+    protected long collectionSize(@NonNull CollectionTag collection) {
+        if (collection instanceof ByteArrayTag) {
+            byte[] values = ((ByteArrayTag) collection).getValue();
+            long size = 2 + containerHeaderSize(values.length);
+            for (byte value : values) {
+                size += byteSize(value);
+            }
+            
+            return extensionSize(size);
+        } else if (collection instanceof ShortArrayTag) {
+            short[] values = ((ShortArrayTag) collection).getValue();
+            long size = 2 + containerHeaderSize(values.length);
+            for (short value : values) {
+                size += integerSize(value);
+            }
+            
+            return extensionSize(size);
+        } else if (collection instanceof IntArrayTag) {
+            int[] values = ((IntArrayTag) collection).getValue();
+            long size = 2 + containerHeaderSize(values.length);
+            for (int value : values) {
+                size += integerSize(value);
+            }
+            
+            return extensionSize(size);
+        } else if (collection instanceof LongArrayTag) {
+            long[] values = ((LongArrayTag) collection).getValue();
+            long size = 2 + containerHeaderSize(values.length);
+            for (long value : values) {
+                size += integerSize(value);
+            }
+            
+            return extensionSize(size);
+        } else if (collection instanceof FloatArrayTag) {
+            float[] values = ((FloatArrayTag) collection).getValue();
+            int length = floatCompression ? XorCompressionUtils.encodedLength(values) : Integer.MAX_VALUE;
+            if ((long) length + binaryHeaderSize(length) < values.length * 5L) {
+                return extensionSize(1 + containerHeaderSize(values.length) + binaryHeaderSize(length) + length);
+            }
+            
+            return extensionSize(2 + containerHeaderSize(values.length) + values.length * 5L);
+        } else if (collection instanceof DoubleArrayTag) {
+            double[] values = ((DoubleArrayTag) collection).getValue();
+            int length = floatCompression ? XorCompressionUtils.encodedLength(values) : Integer.MAX_VALUE;
+            if ((long) length + binaryHeaderSize(length) < values.length * 9L) {
+                return extensionSize(1 + containerHeaderSize(values.length) + binaryHeaderSize(length) + length);
+            }
+            
+            return extensionSize(2 + containerHeaderSize(values.length) + values.length * 9L);
+        } else if (collection instanceof DirectArrayTag) {
+            return extensionSize(1L + (long) collection.size() * ((DirectArrayTag) collection).getWidth());
+        } else if (collection instanceof CompoundTag) {
+            CompoundTag compound = (CompoundTag) collection;
+            long size = containerHeaderSize(compound.size());
+            for (Map.Entry<String, Tag> entry : compound.entries()) {
+                size += stringSize(entry.getKey()) + encodedSize(entry.getValue());
+            }
+            
+            return size;
+        } else if (collection instanceof ListTag) {
+            ListTag list = (ListTag) collection;
+            long size = containerHeaderSize(list.size());
+            for (Tag tag : list) {
+                size += encodedSize(tag);
+            }
+            
+            return extensionSize(size);
         } else {
             throw new UnsupportedOperationException(String.format("%s is not supported", collection.getClass().getName()));
         }
     }
     
+    protected long stringSize(@NonNull String value) {
+        int length = value.length();
+        if (length == 0) {
+            return 1;
+        }
+        
+        // Mirrors MessagePacker#packString, which reserves a fixed header for medium strings encoded in place
+        long size = utf8Length(value);
+        if (length >= packerConfig.getSmallStringOptimizationThreshold()) {
+            if (length < (1 << 8)) {
+                return (packerConfig.isStr8FormatSupport() && size < (1 << 8) ? 2 : 3) + size;
+            } else if (length < (1 << 16)) {
+                return (size < (1 << 16) ? 3 : 5) + size;
+            }
+        }
+        
+        if (size < (1 << 5)) {
+            return 1 + size;
+        } else if (packerConfig.isStr8FormatSupport() && size < (1 << 8)) {
+            return 2 + size;
+        } else if (size < (1 << 16)) {
+            return 3 + size;
+        } else {
+            return 5 + size;
+        }
+    }
+    
+    private static long utf8Length(String value) {
+        long size = 0;
+        for (int index = 0; index < value.length(); index++) {
+            char character = value.charAt(index);
+            if (character < 0x80) {
+                size += 1;
+            } else if (character < 0x800) {
+                size += 2;
+            } else if (Character.isHighSurrogate(character) && index + 1 < value.length() && Character.isLowSurrogate(value.charAt(index + 1))) {
+                size += 4;
+                index++;
+            } else if (Character.isSurrogate(character)) {
+                // Unpaired surrogates are replaced with '?'
+                size += 1;
+            } else {
+                size += 3;
+            }
+        }
+        
+        return size;
+    }
+    
+    private static int byteSize(byte value) {
+        return value < -(1 << 5) ? 2 : 1;
+    }
+    
+    private static int integerSize(long value) {
+        if (value < -(1L << 5)) {
+            if (value < -(1L << 15)) {
+                return value < -(1L << 31) ? 9 : 5;
+            } else {
+                return value < -(1L << 7) ? 3 : 2;
+            }
+        } else if (value < (1L << 7)) {
+            return 1;
+        } else if (value < (1L << 8)) {
+            return 2;
+        } else if (value < (1L << 16)) {
+            return 3;
+        } else {
+            return value < (1L << 32) ? 5 : 9;
+        }
+    }
+    
+    private static int containerHeaderSize(int size) {
+        if (size < (1 << 4)) {
+            return 1;
+        } else if (size < (1 << 16)) {
+            return 3;
+        } else {
+            return 5;
+        }
+    }
+    
+    private static int binaryHeaderSize(int length) {
+        if (length < (1 << 8)) {
+            return 2;
+        } else if (length < (1 << 16)) {
+            return 3;
+        } else {
+            return 5;
+        }
+    }
+    
+    private static long extensionSize(long length) {
+        if (length == 1 || length == 2 || length == 4 || length == 8 || length == 16) {
+            return 2 + length;
+        } else if (length < (1 << 8)) {
+            return 3 + length;
+        } else if (length < (1 << 16)) {
+            return 4 + length;
+        } else {
+            return 6 + length;
+        }
+    }
+    
     protected CompoundTag readCompound(@NonNull MessageUnpacker unpacker) throws IOException {
         int size = unpacker.unpackMapHeader();
         CompoundTag compound = new CompoundTag();
@@ -265,25 +1086,160 @@ public class MessagePackSerializer implements BinarySerializer {
     
     protected void writeCompound(@NonNull MessagePacker packer, @NonNull CompoundTag compound) throws IOException {
         packer.packMapHeader(compound.size());
-        for (Map.Entry<String, Tag> entry : compound.entrySet()) {
+        for (Map.Entry<String, Tag> entry : compound.entries()) {
             packer.packString(entry.getKey());
             write(packer, entry.getValue());
         }
     }
     
     protected CollectionTag readExtension(@NonNull MessageUnpacker unpacker) throws IOException {
-        ExtensionTypeHeader header = unpacker.unpackExtensionTypeHeader();
+        return readExtension(unpacker, unpacker.unpackExtensionTypeHeader());
+    }
+    
+    /**
+     * Reads an extension whose header has already been unpacked.
+     */
+    protected CollectionTag readExtension(@NonNull MessageUnpacker unpacker, @NonNull ExtensionTypeHeader header) throws IOException {
+        listener.onExtensionRead(header.getType(), header.getLength());
+        if (header.getType() == RAW_ARRAY_ID) {
+            return readDirectArray(unpacker, header.getLength());
+        }
+        
         byte[] bytes = unpacker.readPayload(header.getLength());
-        MessageUnpacker extensionPacker = unpackerConfig.newUnpacker(bytes);
-        if (header.getType() == ARRAY_ID) {
-            return readArray(extensionPacker);
-        } else if (header.getType() == LIST_ID) {
-            return readList(extensionPacker);
+        return readExtension(header.getType(), bytes, newExtensionUnpacker(bytes, unpacker));
+    }
+    
+    /**
+     * Reads an extension payload.
+     *
+     * @param extensionUnpacker an unpacker over the payload from {@link #newExtensionUnpacker(byte[], MessageUnpacker)}
+     */
+    protected CollectionTag readExtension(byte extensionType, byte @NonNull [] bytes, @NonNull MessageUnpacker extensionUnpacker) throws IOException {
+        if (extensionType == ARRAY_ID) {
+            return readArray(extensionUnpacker);
+        } else if (extensionType == LIST_ID) {
+            return readList(extensionUnpacker);
+        } else if (extensionType == RAW_ARRAY_ID && bytes.length != 0) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length - 1);
+            buffer.put(bytes, 1, bytes.length - 1).clear();
+            return createDirectArray(bytes[0], buffer);
+        } else {
+            throw new UnsupportedOperationException(String.format("%s is not supported", extensionType));
+        }
+    }
+    
+    /**
+     * Reads a {@link #RAW_ARRAY_ID} payload straight into direct memory.
+     */
+    protected @NonNull DirectArrayTag readDirectArray(@NonNull MessageUnpacker unpacker, int length) throws IOException {
+        if (length <= 0) {
+            throw new MessageTypeException(String.format("Raw array length %s is missing its element type", length));
+        }
+        
+        byte code = unpacker.readPayload(1)[0];
+        ByteBuffer buffer;
+        if (unpacker instanceof LimitedMessageUnpacker) {
+            buffer = ((LimitedMessageUnpacker) unpacker).readDirectPayload(length - 1);
+        } else {
+            buffer = ByteBuffer.allocateDirect(length - 1);
+            unpacker.readPayload(buffer);
+        }
+        
+        buffer.clear();
+        return createDirectArray(code, buffer);
+    }
+    
+    protected @NonNull DirectArrayTag createDirectArray(byte code, @NonNull ByteBuffer buffer) {
+        if (code == MessagePack.Code.INT8) {
+            return new DirectByteArrayTag(buffer);
+        } else if (code == MessagePack.Code.INT32) {
+            return new DirectIntArrayTag(buffer);
+        } else if (code == MessagePack.Code.INT64) {
+            return new DirectLongArrayTag(buffer);
+        } else if (code == MessagePack.Code.FLOAT32) {
+            return new DirectFloatArrayTag(buffer);
+        } else if (code == MessagePack.Code.FLOAT64) {
+            return new DirectDoubleArrayTag(buffer);
         } else {
-            throw new UnsupportedOperationException(String.format("%s is not supported", header.getType()));
+            throw new UnsupportedOperationException(String.format("%s is not supported", code));
+        }
+    }
+    
+    /**
+     * Writes a {@link #RAW_ARRAY_ID} extension holding the element type followed by the buffer contents, copied in chunks
+     * so the array is never staged on the heap.
+     */
+    protected void writeDirectArray(@NonNull MessagePacker packer, @NonNull DirectArrayTag tag) throws IOException {
+        byte code;
+        if (tag instanceof DirectByteArrayTag) {
+            code = MessagePack.Code.INT8;
+        } else if (tag instanceof DirectIntArrayTag) {
+            code = MessagePack.Code.INT32;
+        } else if (tag instanceof DirectLongArrayTag) {
+            code = MessagePack.Code.INT64;
+        } else if (tag instanceof DirectFloatArrayTag) {
+            code = MessagePack.Code.FLOAT32;
+        } else if (tag instanceof DirectDoubleArrayTag) {
+            code = MessagePack.Code.FLOAT64;
+        } else {
+            throw new UnsupportedOperationException(String.format("%s is not supported", tag.getClass().getName()));
+        }
+        
+        ByteBuffer buffer = tag.getBuffer();
+        if (buffer.remaining() == Integer.MAX_VALUE) {
+            throw new UnsupportedOperationException(String.format("%s bytes is too large", buffer.remaining()));
+        }
+        
+        packer.packExtensionTypeHeader(RAW_ARRAY_ID, 1 + buffer.remaining());
+        packer.writePayload(new byte[]{code});
+        byte[] chunk = new byte[Math.min(buffer.remaining(), 8192)];
+        while (buffer.hasRemaining()) {
+            int length = Math.min(chunk.length, buffer.remaining());
+            buffer.get(chunk, 0, length);
+            packer.writePayload(chunk, 0, length);
         }
     }
     
+    /**
+     * Creates an unpacker over an extension payload one level deeper than the unpacker it was read from.
+     */
+    protected @NonNull MessageUnpacker newExtensionUnpacker(byte @NonNull [] bytes, @NonNull MessageUnpacker unpacker) {
+        MessageUnpacker extensionUnpacker = newUnpacker(bytes, 0, bytes.length, unpacker);
+        enter(extensionUnpacker);
+        return extensionUnpacker;
+    }
+    
+    /**
+     * Creates an unpacker over part of a payload read by the unpacker, which continues its limits and depth.
+     */
+    protected @NonNull MessageUnpacker newUnpacker(byte @NonNull [] bytes, int offset, int length, @NonNull MessageUnpacker unpacker) {
+        if (unpacker instanceof LimitedMessageUnpacker) {
+            return ((LimitedMessageUnpacker) unpacker).newUnpacker(bytes, offset, length);
+        }
+        
+        return unpackerConfig.newUnpacker(bytes, offset, length);
+    }
+    
+    protected static void enter(@NonNull MessageUnpacker unpacker) {
+        if (unpacker instanceof LimitedMessageUnpacker) {
+            ((LimitedMessageUnpacker) unpacker).enter();
+        }
+    }
+    
+    protected static void exit(@NonNull MessageUnpacker unpacker) {
+        if (unpacker instanceof LimitedMessageUnpacker) {
+            ((LimitedMessageUnpacker) unpacker).exit();
+        }
+    }
+    
+    protected void writeExtension(@NonNull MessagePacker packer, byte extensionType, byte[] bytes, long start) throws IOException {
+        if (listener != SerializerListener.NONE) {
+            listener.onExtensionWrite(extensionType, bytes.length, System.nanoTime() - start);
+        }
+        
+        writeExtension(packer, extensionType, bytes);
+    }
+    
     protected void writeExtension(@NonNull MessagePacker packer, byte extensionType, byte[] bytes) throws IOException {
         packer.packExtensionTypeHeader(extensionType, bytes.length);
         packer.addPayload(bytes);
@@ -306,4 +1262,94 @@ public class MessagePackSerializer implements BinarySerializer {
             write(packer, tag);
         }
     }
+    
+    /**
+     * The keys leading to projected paths, a complete node reads the whole value.
+     */
+    private static class Projection {
+        
+        private final Map<String, Projection> children = new HashMap<>();
+        private boolean complete;
+    }
+    
+    /**
+     * The tables used by each level of compounds being read into on a thread, kept between reads so finding the keys
+     * missing from the input allocates nothing once the tables have grown.
+     */
+    private static final class KeyTables {
+        
+        private KeyTable[] tables = new KeyTable[16];
+        private int depth;
+        
+        private KeyTable acquire(int size) {
+            if (depth == tables.length) {
+                tables = Arrays.copyOf(tables, depth * 2);
+            }
+            
+            KeyTable table = tables[depth];
+            if (table == null) {
+                table = new KeyTable(this);
+                tables[depth] = table;
+            }
+            
+            depth++;
+            table.reset(size);
+            return table;
+        }
+    }
+    
+    /**
+     * An open addressed set of the keys read into a compound, using only as much of its array as the map header needs.
+     */
+    private static final class KeyTable {
+        
+        private final KeyTables tables;
+        private String[] keys = new String[16];
+        private int mask;
+        
+        private KeyTable(KeyTables tables) {
+            this.tables = tables;
+        }
+        
+        private void reset(int size) {
+            int capacity = Integer.highestOneBit(Math.min(Math.max(size, 4), 1 << 29) * 2 - 1) << 1;
+            if (capacity > keys.length) {
+                keys = new String[capacity];
+            }
+            
+            mask = capacity - 1;
+        }
+        
+        /**
+         * @return whether the key was not already in the table
+         */
+        private boolean add(String key) {
+            int index = index(key);
+            if (keys[index] != null) {
+                return false;
+            }
+            
+            keys[index] = key;
+            return true;
+        }
+        
+        private boolean contains(String key) {
+            return keys[index(key)] != null;
+        }
+        
+        private void release() {
+            Arrays.fill(keys, 0, mask + 1, null);
+            tables.depth--;
+        }
+        
+        private int index(String key) {
+            int hash = key.hashCode() * 0x9E3779B9;
+            int index = (hash ^ (hash >>> 16)) & mask;
+            while (keys[index] != null && !keys[index].equals(key)) {
+                index = (index + 1) & mask;
+            }
+            
+            return index;
+        }
+    }
 }
\ No newline at end of file
@@ -24,38 +24,34 @@ import java.lang.invoke.MethodHandle;
 import java.lang.invoke.MethodHandles;
 import java.lang.reflect.Method;
 
+/**
+ * Packs integers at their full width, unlike {@link MessagePacker} which packs them in the fewest bytes.
+ * <p>
+ * This is the Java 8 implementation, the multi-release jar replaces it on Java 17 and later with one that does not need
+ * {@link Method#setAccessible(boolean)} and converts whole arrays through {@code VarHandle} views.
+ */
 public class MessagePackerUtils {
     
-    private static MethodHandle writeByteAndShort;
-    private static MethodHandle writeByteAndInt;
-    private static MethodHandle writeByteAndLong;
+    private static final MethodHandle WRITE_BYTE_AND_SHORT = findWriter("writeByteAndShort", short.class);
+    private static final MethodHandle WRITE_BYTE_AND_INT = findWriter("writeByteAndInt", int.class);
+    private static final MethodHandle WRITE_BYTE_AND_LONG = findWriter("writeByteAndLong", long.class);
     
-    static {
-        MethodHandles.Lookup lookup = MethodHandles.lookup();
-        
+    private static MethodHandle findWriter(String name, Class<?> type) {
         try {
-            Method writeByteAndShortMethod = MessagePacker.class.getDeclaredMethod("writeByteAndShort", byte.class, short.class);
-            writeByteAndShortMethod.setAccessible(true);
-            writeByteAndShort = lookup.unreflect(writeByteAndShortMethod);
-            
-            Method writeByteAndIntMethod = MessagePacker.class.getDeclaredMethod("writeByteAndInt", byte.class, int.class);
-            writeByteAndIntMethod.setAccessible(true);
-            writeByteAndInt = lookup.unreflect(writeByteAndIntMethod);
-            
-            Method writeByteAndLongMethod = MessagePacker.class.getDeclaredMethod("writeByteAndLong", byte.class, long.class);
-            writeByteAndLongMethod.setAccessible(true);
-            writeByteAndLong = lookup.unreflect(writeByteAndLongMethod);
-        } catch (Throwable throwable) {
-            throwable.printStackTrace();
+            Method method = MessagePacker.class.getDeclaredMethod(name, byte.class, type);
+            method.setAccessible(true);
+            return MethodHandles.lookup().unreflect(method);
+        } catch (ReflectiveOperationException | RuntimeException ex) {
+            throw new ExceptionInInitializerError(ex);
         }
     }
     
     public static MessagePacker packShort(MessagePacker packer, short value) throws IOException {
         try {
             if (value < 0) {
-                MessagePackerUtils.writeByteAndShort.invoke(packer, MessagePack.Code.INT16, value);
+                WRITE_BYTE_AND_SHORT.invoke(packer, MessagePack.Code.INT16, value);
             } else {
-                MessagePackerUtils.writeByteAndShort.invoke(packer, MessagePack.Code.UINT16, value);
+                WRITE_BYTE_AND_SHORT.invoke(packer, MessagePack.Code.UINT16, value);
             }
             
             return packer;
@@ -69,9 +65,9 @@ public class MessagePackerUtils {
     public static MessagePacker packInt(MessagePacker packer, int value) throws IOException {
         try {
             if (value < 0) {
-                MessagePackerUtils.writeByteAndInt.invoke(packer, MessagePack.Code.INT32, value);
+                WRITE_BYTE_AND_INT.invoke(packer, MessagePack.Code.INT32, value);
             } else {
-                MessagePackerUtils.writeByteAndInt.invoke(packer, MessagePack.Code.UINT32, value);
+                WRITE_BYTE_AND_INT.invoke(packer, MessagePack.Code.UINT32, value);
             }
             
             return packer;
@@ -85,9 +81,9 @@ public class MessagePackerUtils {
     public static MessagePacker packLong(MessagePacker packer, long value) throws IOException {
         try {
             if (value < 0) {
-                MessagePackerUtils.writeByteAndLong.invoke(packer, MessagePack.Code.INT64, value);
+                WRITE_BYTE_AND_LONG.invoke(packer, MessagePack.Code.INT64, value);
             } else {
-                MessagePackerUtils.writeByteAndLong.invoke(packer, MessagePack.Code.UINT64, value);
+                WRITE_BYTE_AND_LONG.invoke(packer, MessagePack.Code.UINT64, value);
             }
             
             return packer;
@@ -97,4 +93,22 @@ public class MessagePackerUtils {
             throw new RuntimeException(throwable);
         }
     }
+    
+    /**
+     * Packs each value as a {@link MessagePack.Code#FLOAT32}, as {@link MessagePacker#packFloat(float)} would.
+     */
+    public static void packFloats(MessagePacker packer, float[] values) throws IOException {
+        for (float value : values) {
+            packer.packFloat(value);
+        }
+    }
+    
+    /**
+     * Packs each value as a {@link MessagePack.Code#FLOAT64}, as {@link MessagePacker#packDouble(double)} would.
+     */
+    public static void packDoubles(MessagePacker packer, double[] values) throws IOException {
+        for (double value : values) {
+            packer.packDouble(value);
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,189 @@
+/*
+ * Copyright 2021 Alex Thomson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.lxgaming.binary.serializer.msgpack;
+
+import io.github.lxgaming.binary.tag.CompoundTag;
+import io.github.lxgaming.binary.tag.ListTag;
+import io.github.lxgaming.binary.tag.Tag;
+import org.checkerframework.checker.nullness.qual.NonNull;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Aggregates {@link SerializerListener} callbacks into latency and size histograms.
+ * <p>
+ * Tag counts and depth are gathered by walking each root tag after it has been read or written, which costs an extra
+ * pass over the tree. This can be turned off for the lowest overhead.
+ */
+public class MetricsListener implements SerializerListener {
+    
+    private final boolean walkTags;
+    private final Histogram readLatency;
+    private final Histogram writeLatency;
+    private final Histogram readSize;
+    private final Histogram writeSize;
+    private final Histogram extensionSize;
+    private final LongAdder bufferingNanos;
+    private final Map<Class<? extends Tag>, LongAdder> tagCounts;
+    private final AtomicInteger maxDepth;
+    
+    public MetricsListener() {
+        this(true);
+    }
+    
+    public MetricsListener(boolean walkTags) {
+        this.walkTags = walkTags;
+        this.readLatency = new Histogram();
+        this.writeLatency = new Histogram();
+        this.readSize = new Histogram();
+        this.writeSize = new Histogram();
+        this.extensionSize = new Histogram();
+        this.bufferingNanos = new LongAdder();
+        this.tagCounts = new ConcurrentHashMap<>();
+        this.maxDepth = new AtomicInteger();
+    }
+    
+    @Override
+    public void onRead(@NonNull Tag tag, long bytes, long nanos) {
+        readLatency.record(nanos);
+        readSize.record(bytes);
+        walk(tag);
+    }
+    
+    @Override
+    public void onWrite(@NonNull Tag tag, long bytes, long nanos) {
+        writeLatency.record(nanos);
+        writeSize.record(bytes);
+        walk(tag);
+    }
+    
+    @Override
+    public void onExtensionRead(byte extensionType, int length) {
+        extensionSize.record(length);
+    }
+    
+    @Override
+    public void onExtensionWrite(byte extensionType, int length, long nanos) {
+        extensionSize.record(length);
+        bufferingNanos.add(nanos);
+    }
+    
+    protected void walk(@NonNull Tag tag) {
+        if (!walkTags) {
+            return;
+        }
+        
+        Map<Class<? extends Tag>, long[]> counts = new IdentityHashMap<>();
+        Deque<Tag> tags = new ArrayDeque<>();
+        Deque<Integer> depths = new ArrayDeque<>();
+        tags.push(tag);
+        depths.push(1);
+        int depth = 0;
+        while (!tags.isEmpty()) {
+            Tag current = tags.pop();
+            int currentDepth = depths.pop();
+            depth = Math.max(depth, currentDepth);
+            counts.computeIfAbsent(current.getClass(), key -> new long[1])[0]++;
+            if (current instanceof CompoundTag) {
+                for (Tag child : ((CompoundTag) current).values()) {
+                    tags.push(child);
+                    depths.push(currentDepth + 1);
+                }
+            } else if (current instanceof ListTag) {
+                for (Tag child : (ListTag) current) {
+                    tags.push(child);
+                    depths.push(currentDepth + 1);
+                }
+            }
+        }
+        
+        for (Map.Entry<Class<? extends Tag>, long[]> entry : counts.entrySet()) {
+            tagCounts.computeIfAbsent(entry.getKey(), key -> new LongAdder()).add(entry.getValue()[0]);
+        }
+        
+        if (depth > maxDepth.get()) {
+            maxDepth.accumulateAndGet(depth, Math::max);
+        }
+    }
+    
+    public @NonNull Histogram getReadLatency() {
+        return readLatency;
+    }
+    
+    public @NonNull Histogram getWriteLatency() {
+        return writeLatency;
+    }
+    
+    public @NonNull Histogram getReadSize() {
+        return readSize;
+    }
+    
+    public @NonNull Histogram getWriteSize() {
+        return writeSize;
+    }
+    
+    public @NonNull Histogram getExtensionSize() {
+        return extensionSize;
+    }
+    
+    public long getBufferingNanos() {
+        return bufferingNanos.sum();
+    }
+    
+    public long getTagCount(@NonNull Class<? extends Tag> type) {
+        LongAdder count = tagCounts.get(type);
+        return count != null ? count.sum() : 0;
+    }
+    
+    public @NonNull Map<Class<? extends Tag>, Long> getTagCounts() {
+        Map<Class<? extends Tag>, Long> counts = new HashMap<>();
+        for (Map.Entry<Class<? extends Tag>, LongAdder> entry : tagCounts.entrySet()) {
+            counts.put(entry.getKey(), entry.getValue().sum());
+        }
+        
+        return Collections.unmodifiableMap(counts);
+    }
+    
+    public int getMaxDepth() {
+        return maxDepth.get();
+    }
+    
+    public void reset() {
+        readLatency.reset();
+        writeLatency.reset();
+        readSize.reset();
+        writeSize.reset();
+        extensionSize.reset();
+        bufferingNanos.reset();
+        tagCounts.clear();
+        maxDepth.set(0);
+    }
+    
+    @Override
+    public String toString() {
+        return String.format("read={%s}, write={%s}, extensionSize={%s}, bufferingNanos=%s, maxDepth=%s, tagCounts=%s",
+                readLatency, writeLatency, extensionSize, getBufferingNanos(), getMaxDepth(), getTagCounts());
+    }
+}
\ No newline at end of file
@@ -0,0 +1,503 @@
+/*
+ * Copyright 2021 Alex Thomson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.lxgaming.binary.serializer.msgpack;
+
+import io.github.lxgaming.binary.tag.BooleanTag;
+import io.github.lxgaming.binary.tag.ByteArrayTag;
+import io.github.lxgaming.binary.tag.ByteTag;
+import io.github.lxgaming.binary.tag.CollectionTag;
+import io.github.lxgaming.binary.tag.CompoundTag;
+import io.github.lxgaming.binary.tag.DirectArrayTag;
+import io.github.lxgaming.binary.tag.DoubleArrayTag;
+import io.github.lxgaming.binary.tag.DoubleTag;
+import io.github.lxgaming.binary.tag.FloatArrayTag;
+import io.github.lxgaming.binary.tag.FloatTag;
+import io.github.lxgaming.binary.tag.IntArrayTag;
+import io.github.lxgaming.binary.tag.IntTag;
+import io.github.lxgaming.binary.tag.ListTag;
+import io.github.lxgaming.binary.tag.LongArrayTag;
+import io.github.lxgaming.binary.tag.LongTag;
+import io.github.lxgaming.binary.tag.ShortArrayTag;
+import io.github.lxgaming.binary.tag.ShortTag;
+import io.github.lxgaming.binary.tag.StringTag;
+import io.github.lxgaming.binary.tag.Tag;
+import org.checkerframework.checker.index.qual.NonNegative;
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.msgpack.core.ExtensionTypeHeader;
+import org.msgpack.core.MessageBufferPacker;
+import org.msgpack.core.MessagePack;
+import org.msgpack.core.MessagePacker;
+import org.msgpack.core.MessageTypeException;
+import org.msgpack.core.MessageUnpacker;
+import org.msgpack.value.ValueType;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * A {@link MessagePackSerializer} which encodes and decodes large trees concurrently on a {@link ForkJoinPool}.
+ * <p>
+ * When writing, large {@link CompoundTag} and {@link ListTag} bodies are split into chunks that are encoded into
+ * separate buffers and joined back in order, producing exactly the bytes of the sequential writer.
+ * <p>
+ * When reading, the length prefix of {@link #LIST_ID} and {@link #ARRAY_ID} extensions is used to hand large payloads
+ * to other workers: compound values are decoded while the rest of the compound is being read, large list payloads are
+ * scanned for element boundaries and decoded in chunks, and fixed width float and double arrays are decoded in ranges.
+ * <p>
+ * The threshold is the encoded size in bytes (estimated when writing) below which work stays on the current thread.
+ */
+public class ParallelMessagePackSerializer extends MessagePackSerializer {
+    
+    public static final int DEFAULT_THRESHOLD = 1 << 16;
+    
+    protected final ForkJoinPool pool;
+    protected final int threshold;
+    
+    public ParallelMessagePackSerializer() {
+        this(ForkJoinPool.commonPool(), DEFAULT_THRESHOLD);
+    }
+    
+    public ParallelMessagePackSerializer(@NonNull ForkJoinPool pool, @NonNegative int threshold) {
+        this(MessagePack.DEFAULT_PACKER_CONFIG, MessagePack.DEFAULT_UNPACKER_CONFIG, pool, threshold);
+    }
+    
+    public ParallelMessagePackSerializer(MessagePack.@NonNull PackerConfig packerConfig, MessagePack.@NonNull UnpackerConfig unpackerConfig, @NonNull ForkJoinPool pool, @NonNegative int threshold) {
+        super(packerConfig, unpackerConfig);
+        if (threshold < 0) {
+            throw new IllegalArgumentException(String.format("%s is negative", threshold));
+        }
+        
+        this.pool = pool;
+        this.threshold = threshold;
+    }
+    
+    public @NonNull ForkJoinPool getPool() {
+        return pool;
+    }
+    
+    public int getThreshold() {
+        return threshold;
+    }
+    
+    @Override
+    protected CompoundTag readCompound(@NonNull MessageUnpacker unpacker) throws IOException {
+        int size = unpacker.unpackMapHeader();
+        CompoundTag compound = new CompoundTag();
+        Map<String, ExtensionTask> tasks = null;
+        for (int index = 0; index < size; index++) {
+            String key = unpacker.unpackString();
+            if (unpacker.getNextFormat().getValueType() != ValueType.EXTENSION) {
+                compound.put(key, read(unpacker));
+                continue;
+            }
+            
+            ExtensionTypeHeader header = unpacker.unpackExtensionTypeHeader();
+            listener.onExtensionRead(header.getType(), header.getLength());
+            if (header.getType() == RAW_ARRAY_ID) {
+                compound.put(key, readDirectArray(unpacker, header.getLength()));
+                continue;
+            }
+            
+            byte[] bytes = unpacker.readPayload(header.getLength());
+            MessageUnpacker extensionUnpacker = newExtensionUnpacker(bytes, unpacker);
+            if (bytes.length < threshold) {
+                compound.put(key, readExtension(header.getType(), bytes, extensionUnpacker));
+                continue;
+            }
+            
+            if (tasks == null) {
+                tasks = new LinkedHashMap<>();
+            }
+            
+            tasks.put(key, fork(new ExtensionTask(header.getType(), bytes, extensionUnpacker)));
+        }
+        
+        if (tasks != null) {
+            for (Map.Entry<String, ExtensionTask> entry : tasks.entrySet()) {
+                compound.put(entry.getKey(), join(entry.getValue()));
+            }
+        }
+        
+        return compound;
+    }
+    
+    @Override
+    protected CollectionTag readExtension(byte extensionType, byte @NonNull [] bytes, @NonNull MessageUnpacker extensionUnpacker) throws IOException {
+        if (bytes.length >= threshold) {
+            if (extensionType == ARRAY_ID) {
+                CollectionTag tag = readArrayParallel(bytes, extensionUnpacker);
+                if (tag != null) {
+                    return tag;
+                }
+            } else if (extensionType == LIST_ID) {
+                return readListParallel(bytes, extensionUnpacker);
+            }
+        }
+        
+        return super.readExtension(extensionType, bytes, extensionUnpacker);
+    }
+    
+    /**
+     * Decodes a fixed width float or double array across the pool, or returns {@code null} without reading from the
+     * extension unpacker if the array is not one.
+     *
+     * @param extensionUnpacker the unpacker over the payload, the header is read through it so its limits apply
+     */
+    protected @Nullable CollectionTag readArrayParallel(byte @NonNull [] bytes, @NonNull MessageUnpacker extensionUnpacker) throws IOException {
+        MessageUnpacker unpacker = unpackerConfig.newUnpacker(bytes);
+        byte code = unpacker.unpackByte();
+        int stride;
+        if (code == MessagePack.Code.FLOAT32) {
+            stride = 5;
+        } else if (code == MessagePack.Code.FLOAT64) {
+            stride = 9;
+        } else {
+            return null;
+        }
+        
+        int size = unpacker.unpackArrayHeader();
+        int offset = (int) unpacker.getTotalReadBytes();
+        if ((long) size * stride != bytes.length - offset) {
+            return null;
+        }
+        
+        extensionUnpacker.unpackByte();
+        extensionUnpacker.unpackArrayHeader();
+        if (code == MessagePack.Code.FLOAT32) {
+            float[] value = new float[size];
+            join(fork(new ArrayTask(bytes, offset, stride, value, 0, size)));
+            return new FloatArrayTag(value);
+        } else {
+            double[] value = new double[size];
+            join(fork(new ArrayTask(bytes, offset, stride, value, 0, size)));
+            return new DoubleArrayTag(value);
+        }
+    }
+    
+    protected @NonNull ListTag readListParallel(byte @NonNull [] bytes, @NonNull MessageUnpacker unpacker) throws IOException {
+        int size = unpacker.unpackArrayHeader();
+        List<ElementTask> tasks = new ArrayList<>();
+        int start = (int) unpacker.getTotalReadBytes();
+        int count = 0;
+        for (int index = 0; index < size; index++) {
+            unpacker.skipValue();
+            count++;
+            int position = (int) unpacker.getTotalReadBytes();
+            if (position - start >= threshold || index == size - 1) {
+                tasks.add(fork(new ElementTask(newUnpacker(bytes, start, position - start, unpacker), count)));
+                start = position;
+                count = 0;
+            }
+        }
+        
+        ListTag list = new ListTag();
+        for (ElementTask task : tasks) {
+            for (Tag tag : join(task)) {
+                list.add(tag);
+            }
+        }
+        
+        return list;
+    }
+    
+    @Override
+    protected void writeCompound(@NonNull MessagePacker packer, @NonNull CompoundTag compound) throws IOException {
+        if (estimateSize(compound, threshold) < threshold) {
+            super.writeCompound(packer, compound);
+            return;
+        }
+        
+        List<Map.Entry<String, Tag>> entries = new ArrayList<>(compound.size());
+        for (Map.Entry<String, Tag> entry : compound.entries()) {
+            entries.add(entry);
+        }
+        
+        packer.packMapHeader(entries.size());
+        writeChunks(packer, entries.size(), index -> {
+            Map.Entry<String, Tag> entry = entries.get(index);
+            return entry.getKey().length() + 5 + estimateSize(entry.getValue(), threshold);
+        }, (chunkPacker, index) -> {
+            Map.Entry<String, Tag> entry = entries.get(index);
+            chunkPacker.packString(entry.getKey());
+            write(chunkPacker, entry.getValue());
+        });
+    }
+    
+    @Override
+    protected void writeList(@NonNull MessagePacker packer, @NonNull ListTag list) throws IOException {
+        if (estimateSize(list, threshold) < threshold) {
+            super.writeList(packer, list);
+            return;
+        }
+        
+        List<Tag> tags = new ArrayList<>(list.size());
+        for (Tag tag : list) {
+            tags.add(tag);
+        }
+        
+        packer.packArrayHeader(tags.size());
+        writeChunks(packer, tags.size(), index -> estimateSize(tags.get(index), threshold), (chunkPacker, index) -> {
+            write(chunkPacker, tags.get(index));
+        });
+    }
+    
+    protected void writeChunks(@NonNull MessagePacker packer, int size, @NonNull Estimator estimator, @NonNull ElementWriter writer) throws IOException {
+        List<EncodeTask> tasks = new ArrayList<>();
+        int start = 0;
+        long weight = 0;
+        for (int index = 0; index < size; index++) {
+            weight += estimator.estimate(index);
+            if (weight >= threshold) {
+                tasks.add(fork(new EncodeTask(writer, start, index + 1)));
+                start = index + 1;
+                weight = 0;
+            }
+        }
+        
+        byte[] remainder = start < size ? encode(writer, start, size) : null;
+        for (EncodeTask task : tasks) {
+            packer.writePayload(join(task));
+        }
+        
+        if (remainder != null) {
+            packer.writePayload(remainder);
+        }
+    }
+    
+    protected byte[] encode(@NonNull ElementWriter writer, int start, int end) throws IOException {
+        MessageBufferPacker packer = new MessageBufferPackerImpl(packerConfig);
+        for (int index = start; index < end; index++) {
+            writer.write(packer, index);
+        }
+        
+        return packer.toByteArray();
+    }
+    
+    protected <T extends ForkJoinTask<?>> @NonNull T fork(@NonNull T task) {
+        if (ForkJoinTask.getPool() == pool) {
+            task.fork();
+        } else {
+            pool.execute(task);
+        }
+        
+        return task;
+    }
+    
+    protected <T> T join(@NonNull ForkJoinTask<T> task) throws IOException {
+        try {
+            return task.join();
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+    }
+    
+    /**
+     * Estimates the encoded size of the tag in bytes, giving up once the limit has been reached.
+     */
+    protected long estimateSize(@NonNull Tag tag, long limit) {
+        if (tag instanceof BooleanTag) {
+            return 1;
+        } else if (tag instanceof ByteTag) {
+            return 2;
+        } else if (tag instanceof ShortTag) {
+            return 3;
+        } else if (tag instanceof IntTag || tag instanceof FloatTag) {
+            return 5;
+        } else if (tag instanceof LongTag || tag instanceof DoubleTag) {
+            return 9;
+        } else if (tag instanceof StringTag) {
+            return ((StringTag) tag).getValue().length() + 5;
+        } else if (tag instanceof ByteArrayTag) {
+            return ((ByteArrayTag) tag).size() * 2L + 8;
+        } else if (tag instanceof ShortArrayTag) {
+            return ((ShortArrayTag) tag).size() * 3L + 8;
+        } else if (tag instanceof IntArrayTag || tag instanceof FloatArrayTag) {
+            return ((CollectionTag) tag).size() * 5L + 8;
+        } else if (tag instanceof LongArrayTag || tag instanceof DoubleArrayTag) {
+            return ((CollectionTag) tag).size() * 9L + 8;
+        } else if (tag instanceof DirectArrayTag) {
+            return (long) ((CollectionTag) tag).size() * ((DirectArrayTag) tag).getWidth() + 8;
+        } else if (tag instanceof CompoundTag) {
+            long size = 5;
+            for (Map.Entry<String, Tag> entry : ((CompoundTag) tag).entries()) {
+                size += entry.getKey().length() + 5 + estimateSize(entry.getValue(), limit - size);
+                if (size >= limit) {
+                    break;
+                }
+            }
+            
+            return size;
+        } else if (tag instanceof ListTag) {
+            long size = 10;
+            for (Tag value : (ListTag) tag) {
+                size += estimateSize(value, limit - size);
+                if (size >= limit) {
+                    break;
+                }
+            }
+            
+            return size;
+        } else {
+            return 0;
+        }
+    }
+    
+    @FunctionalInterface
+    protected interface Estimator {
+        
+        long estimate(int index);
+    }
+    
+    @FunctionalInterface
+    protected interface ElementWriter {
+        
+        void write(@NonNull MessagePacker packer, int index) throws IOException;
+    }
+    
+    protected class ExtensionTask extends RecursiveTask<CollectionTag> {
+        
+        private static final long serialVersionUID = 1L;
+        
+        private final byte extensionType;
+        private final byte[] bytes;
+        private final MessageUnpacker unpacker;
+        
+        protected ExtensionTask(byte extensionType, byte @NonNull [] bytes, @NonNull MessageUnpacker unpacker) {
+            this.extensionType = extensionType;
+            this.bytes = bytes;
+            this.unpacker = unpacker;
+        }
+        
+        @Override
+        protected CollectionTag compute() {
+            try {
+                return readExtension(extensionType, bytes, unpacker);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+    }
+    
+    protected class ElementTask extends RecursiveTask<List<Tag>> {
+        
+        private static final long serialVersionUID = 1L;
+        
+        private final MessageUnpacker unpacker;
+        private final int count;
+        
+        protected ElementTask(@NonNull MessageUnpacker unpacker, int count) {
+            this.unpacker = unpacker;
+            this.count = count;
+        }
+        
+        @Override
+        protected List<Tag> compute() {
+            try {
+                List<Tag> tags = new ArrayList<>(count);
+                for (int index = 0; index < count; index++) {
+                    tags.add(read(unpacker));
+                }
+                
+                return tags;
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+    }
+    
+    protected class ArrayTask extends RecursiveAction {
+        
+        private static final long serialVersionUID = 1L;
+        
+        private final byte[] bytes;
+        private final int offset;
+        private final int stride;
+        private final Object value;
+        private final int start;
+        private final int end;
+        
+        protected ArrayTask(byte @NonNull [] bytes, int offset, int stride, @NonNull Object value, int start, int end) {
+            this.bytes = bytes;
+            this.offset = offset;
+            this.stride = stride;
+            this.value = value;
+            this.start = start;
+            this.end = end;
+        }
+        
+        @Override
+        protected void compute() {
+            if (end - start > 1 && (long) (end - start) * stride > threshold) {
+                int middle = (start + end) >>> 1;
+                invokeAll(new ArrayTask(bytes, offset, stride, value, start, middle), new ArrayTask(bytes, offset, stride, value, middle, end));
+                return;
+            }
+            
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            for (int index = start; index < end; index++) {
+                int position = offset + index * stride;
+                if (value instanceof float[]) {
+                    checkCode(buffer.get(position), MessagePack.Code.FLOAT32);
+                    ((float[]) value)[index] = buffer.getFloat(position + 1);
+                } else {
+                    checkCode(buffer.get(position), MessagePack.Code.FLOAT64);
+                    ((double[]) value)[index] = buffer.getDouble(position + 1);
+                }
+            }
+        }
+        
+        private void checkCode(byte actual, byte expected) {
+            if (actual != expected) {
+                throw new MessageTypeException(String.format("Expected %s but got %s", expected, actual));
+            }
+        }
+    }
+    
+    protected class EncodeTask extends RecursiveTask<byte[]> {
+        
+        private static final long serialVersionUID = 1L;
+        
+        private final ElementWriter writer;
+        private final int start;
+        private final int end;
+        
+        protected EncodeTask(@NonNull ElementWriter writer, int start, int end) {
+            this.writer = writer;
+            this.start = start;
+            this.end = end;
+        }
+        
+        @Override
+        protected byte[] compute() {
+            try {
+                return encode(writer, start, end);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2021 Alex Thomson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.lxgaming.binary.serializer.msgpack;
+
+import io.github.lxgaming.binary.tag.Tag;
+import org.checkerframework.checker.nullness.qual.NonNull;
+
+/**
+ * Receives timings and sizes from a {@link MessagePackSerializer}, implementations must be thread-safe as a serializer
+ * is shared between threads.
+ * <p>
+ * Callbacks are invoked on the serializing thread and should return quickly. The serializer skips all timing while
+ * {@link #NONE} is installed.
+ */
+public interface SerializerListener {
+    
+    SerializerListener NONE = new SerializerListener() {
+    };
+    
+    /**
+     * Called once a tag has been read from a stream.
+     *
+     * @param tag   the root tag
+     * @param bytes the number of bytes consumed
+     * @param nanos the time taken
+     */
+    default void onRead(@NonNull Tag tag, long bytes, long nanos) {
+    }
+    
+    /**
+     * Called once a tag has been written to a stream.
+     *
+     * @param tag   the root tag
+     * @param bytes the number of bytes produced
+     * @param nanos the time taken
+     */
+    default void onWrite(@NonNull Tag tag, long bytes, long nanos) {
+    }
+    
+    /**
+     * Called for each extension read, before its payload is decoded.
+     *
+     * @param extensionType the extension type
+     * @param length        the payload length
+     */
+    default void onExtensionRead(byte extensionType, int length) {
+    }
+    
+    /**
+     * Called for each extension written.
+     *
+     * @param extensionType the extension type
+     * @param length        the payload length
+     * @param nanos         the time spent buffering the payload, including any nested extensions
+     */
+    default void onExtensionWrite(byte extensionType, int length, long nanos) {
+    }
+}
\ No newline at end of file
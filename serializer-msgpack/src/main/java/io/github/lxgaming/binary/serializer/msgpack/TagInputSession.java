@@ -0,0 +1,135 @@
+/*
+ * Copyright 2021 Alex Thomson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.lxgaming.binary.serializer.msgpack;
+
+import io.github.lxgaming.binary.tag.Tag;
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.msgpack.core.MessageUnpacker;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads many tags from one {@link InputStream} through a single unpacker and buffer.
+ * <p>
+ * The {@link DecodeLimits} of the serializer apply to each tag rather than to the whole stream. {@link #close()} does
+ * not close the stream, although bytes read ahead into the buffer are lost.
+ */
+public class TagInputSession implements Iterable<Tag>, Closeable {
+    
+    private final MessagePackSerializer serializer;
+    private final MessageUnpacker unpacker;
+    private long count;
+    private boolean closed;
+    
+    public TagInputSession(@NonNull MessagePackSerializer serializer, @NonNull InputStream input) {
+        this.serializer = serializer;
+        this.unpacker = serializer.newUnpacker(input);
+    }
+    
+    /**
+     * Reads the next tag.
+     *
+     * @return the tag, or {@code null} at the end of the stream
+     */
+    public @Nullable Tag read() throws IOException {
+        if (closed) {
+            throw new IOException("Session is closed");
+        }
+        
+        if (!unpacker.hasNext()) {
+            return null;
+        }
+        
+        if (unpacker instanceof LimitedMessageUnpacker) {
+            ((LimitedMessageUnpacker) unpacker).resetLimits();
+        }
+        
+        SerializerListener listener = serializer.getListener();
+        Tag tag;
+        if (listener == SerializerListener.NONE) {
+            tag = serializer.read(unpacker);
+        } else {
+            long start = System.nanoTime();
+            long bytes = unpacker.getTotalReadBytes();
+            tag = serializer.read(unpacker);
+            listener.onRead(tag, unpacker.getTotalReadBytes() - bytes, System.nanoTime() - start);
+        }
+        
+        count++;
+        return tag;
+    }
+    
+    /**
+     * Iterates over the remaining tags, an {@link IOException} is rethrown as an {@link UncheckedIOException}.
+     */
+    @Override
+    public @NonNull Iterator<Tag> iterator() {
+        return new Iterator<Tag>() {
+            
+            private Tag next;
+            
+            @Override
+            public boolean hasNext() {
+                if (next == null) {
+                    try {
+                        next = read();
+                    } catch (IOException ex) {
+                        throw new UncheckedIOException(ex);
+                    }
+                }
+                
+                return next != null;
+            }
+            
+            @Override
+            public Tag next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                
+                Tag tag = next;
+                next = null;
+                return tag;
+            }
+        };
+    }
+    
+    @Override
+    public void close() {
+        closed = true;
+    }
+    
+    /**
+     * Counts the tags read by this session.
+     */
+    public long getCount() {
+        return count;
+    }
+    
+    /**
+     * Counts the bytes read by this session, not including bytes read ahead into the buffer.
+     */
+    public long getTotalReadBytes() {
+        return unpacker.getTotalReadBytes();
+    }
+}
\ No newline at end of file
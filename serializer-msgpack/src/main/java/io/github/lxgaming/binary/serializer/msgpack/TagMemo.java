@@ -0,0 +1,152 @@
+/*
+ * Copyright 2021 Alex Thomson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.lxgaming.binary.serializer.msgpack;
+
+import io.github.lxgaming.binary.tag.CollectionTag;
+import io.github.lxgaming.binary.tag.CompoundTag;
+import io.github.lxgaming.binary.tag.ListTag;
+import io.github.lxgaming.binary.tag.Tag;
+import io.github.lxgaming.binary.tag.TagVisitor;
+import io.github.lxgaming.binary.util.TagUtils;
+
+import java.util.Arrays;
+
+/**
+ * The encoded bytes of a memoized subtree and the state of the subtree they were encoded from.
+ * <p>
+ * The state is every compound, list and array in the subtree, in walk order, and the modification count of each compound
+ * and list, so any update made through those tags, or replacement of a tag, invalidates the bytes. Arrays are compared
+ * by identity only, their contents are neither copied nor compared.
+ */
+final class TagMemo {
+    
+    private final Tag[] tags;
+    private final int[] modCounts;
+    private byte[] bytes;
+    
+    private TagMemo(Tag[] tags, int[] modCounts) {
+        this.tags = tags;
+        this.modCounts = modCounts;
+    }
+    
+    /**
+     * Records the current state of the subtree, which should be captured before it is encoded.
+     */
+    static TagMemo capture(CollectionTag tag) {
+        Capture capture = new Capture();
+        TagUtils.walk(tag, capture);
+        return new TagMemo(Arrays.copyOf(capture.tags, capture.size), Arrays.copyOf(capture.modCounts, capture.size));
+    }
+    
+    /**
+     * @return the encoded bytes if the subtree has not changed since it was captured, otherwise {@code null}
+     */
+    byte[] getBytes(CollectionTag tag) {
+        byte[] bytes = this.bytes;
+        if (bytes == null) {
+            return null;
+        }
+        
+        Validate validate = new Validate();
+        TagUtils.walk(tag, validate);
+        return validate.valid && validate.index == tags.length ? bytes : null;
+    }
+    
+    void setBytes(byte[] bytes) {
+        this.bytes = bytes;
+    }
+    
+    private static int modCount(Tag tag) {
+        if (tag instanceof CompoundTag) {
+            return ((CompoundTag) tag).getModCount();
+        } else if (tag instanceof ListTag) {
+            return ((ListTag) tag).getModCount();
+        } else {
+            return 0;
+        }
+    }
+    
+    private static class Capture implements TagVisitor {
+        
+        private Tag[] tags = new Tag[16];
+        private int[] modCounts = new int[16];
+        private int size;
+        
+        @Override
+        public boolean enterCompound(CompoundTag compound) {
+            add(compound, compound.getModCount());
+            return true;
+        }
+        
+        @Override
+        public boolean enterList(ListTag list) {
+            add(list, list.getModCount());
+            return true;
+        }
+        
+        @Override
+        public void visit(Tag tag) {
+            if (tag instanceof CollectionTag) {
+                add(tag, 0);
+            }
+        }
+        
+        private void add(Tag tag, int modCount) {
+            if (size == tags.length) {
+                tags = Arrays.copyOf(tags, size * 2);
+                modCounts = Arrays.copyOf(modCounts, size * 2);
+            }
+            
+            tags[size] = tag;
+            modCounts[size] = modCount;
+            size++;
+        }
+    }
+    
+    private class Validate implements TagVisitor {
+        
+        private boolean valid = true;
+        private int index;
+        
+        @Override
+        public boolean enterCompound(CompoundTag compound) {
+            return check(compound);
+        }
+        
+        @Override
+        public boolean enterList(ListTag list) {
+            return check(list);
+        }
+        
+        @Override
+        public void visit(Tag tag) {
+            if (tag instanceof CollectionTag) {
+                check(tag);
+            }
+        }
+        
+        private boolean check(Tag tag) {
+            if (!valid || index == tags.length || tags[index] != tag) {
+                valid = false;
+                return false;
+            }
+            
+            valid = modCounts[index++] == modCount(tag);
+            return valid;
+        }
+    }
+}
\ No newline at end of file
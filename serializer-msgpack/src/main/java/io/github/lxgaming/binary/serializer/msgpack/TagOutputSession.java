@@ -0,0 +1,114 @@
+/*
+ * Copyright 2021 Alex Thomson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.lxgaming.binary.serializer.msgpack;
+
+import io.github.lxgaming.binary.tag.Tag;
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.msgpack.core.MessagePacker;
+import org.msgpack.core.buffer.OutputStreamBufferOutput;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes many tags to one {@link OutputStream} through a single packer and buffer.
+ * <p>
+ * Tags are buffered and the stream is flushed once every {@code batchSize} tags, or by {@link #flush()}. A batch size of
+ * {@code 1} flushes after every tag, a batch size of {@code 0} only flushes explicitly or when the buffer fills.
+ * {@link #close()} flushes any buffered tags but does not close the stream.
+ */
+public class TagOutputSession implements Flushable, Closeable {
+    
+    private final MessagePackSerializer serializer;
+    private final MessagePacker packer;
+    private final int batchSize;
+    private int pending;
+    private long count;
+    private boolean closed;
+    
+    public TagOutputSession(@NonNull MessagePackSerializer serializer, @NonNull OutputStream output) {
+        this(serializer, output, 1);
+    }
+    
+    public TagOutputSession(@NonNull MessagePackSerializer serializer, @NonNull OutputStream output, int batchSize) {
+        if (batchSize < 0) {
+            throw new IllegalArgumentException(String.format("Batch size %s is negative", batchSize));
+        }
+        
+        this.serializer = serializer;
+        this.packer = new MessagePackerImpl(new OutputStreamBufferOutput(output), serializer.getPackerConfig());
+        this.batchSize = batchSize;
+    }
+    
+    public void write(@NonNull Tag tag) throws IOException {
+        if (closed) {
+            throw new IOException("Session is closed");
+        }
+        
+        SerializerListener listener = serializer.getListener();
+        if (listener == SerializerListener.NONE) {
+            serializer.write(packer, tag);
+        } else {
+            long start = System.nanoTime();
+            long bytes = packer.getTotalWrittenBytes();
+            serializer.write(packer, tag);
+            listener.onWrite(tag, packer.getTotalWrittenBytes() - bytes, System.nanoTime() - start);
+        }
+        
+        count++;
+        if (batchSize != 0 && ++pending >= batchSize) {
+            flush();
+        }
+    }
+    
+    /**
+     * Writes the buffered tags and flushes the stream.
+     */
+    @Override
+    public void flush() throws IOException {
+        pending = 0;
+        packer.flush();
+    }
+    
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            flush();
+        }
+    }
+    
+    public int getBatchSize() {
+        return batchSize;
+    }
+    
+    /**
+     * Counts the tags written by this session.
+     */
+    public long getCount() {
+        return count;
+    }
+    
+    /**
+     * Counts the bytes written by this session, including bytes which are still buffered.
+     */
+    public long getTotalWrittenBytes() {
+        return packer.getTotalWrittenBytes();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,263 @@
+/*
+ * Copyright 2021 Alex Thomson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.lxgaming.binary.serializer.msgpack;
+
+import io.github.lxgaming.binary.tag.Tag;
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.msgpack.core.ExtensionTypeHeader;
+import org.msgpack.core.MessageTypeException;
+import org.msgpack.core.MessageUnpacker;
+import org.msgpack.core.buffer.ByteBufferInput;
+import org.msgpack.core.buffer.MessageBuffer;
+import org.msgpack.core.buffer.MessageBufferInput;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * Decodes the tags within a range of an input, either a sequence of concatenated tags or the elements of a
+ * {@link MessagePackSerializer#LIST_ID} payload.
+ * <p>
+ * Tags are read sequentially until the first split, which skips over the rest of the range with
+ * {@link MessageUnpacker#skipValue()} to find where each tag starts. Skipping does not allocate tags and passes over
+ * extension payloads, such as arrays and nested lists, without reading them, so it is much cheaper than decoding. Once
+ * the starts are known the range splits evenly by count and each half decodes on its own unpacker.
+ */
+class TagSpliterator implements Spliterator<Tag> {
+    
+    private static final int MINIMUM_SPLIT = 2;
+    
+    private final MessagePackSerializer serializer;
+    private final Source source;
+    private long position;
+    private final long end;
+    private long remaining;
+    private long[] offsets;
+    private int index;
+    private int fence;
+    private MessageUnpacker unpacker;
+    private long unpackerStart;
+    
+    /**
+     * @param remaining the number of tags in the range, or {@code -1} if unknown
+     */
+    private TagSpliterator(MessagePackSerializer serializer, Source source, long position, long end, long remaining) {
+        this.serializer = serializer;
+        this.source = source;
+        this.position = position;
+        this.end = end;
+        this.remaining = remaining;
+    }
+    
+    private TagSpliterator(MessagePackSerializer serializer, Source source, long[] offsets, int index, int fence) {
+        this(serializer, source, offsets[index], offsets[fence], fence - index);
+        this.offsets = offsets;
+        this.index = index;
+        this.fence = fence;
+    }
+    
+    static @NonNull TagSpliterator sequence(@NonNull MessagePackSerializer serializer, @NonNull Source source, long length) {
+        return new TagSpliterator(serializer, source, 0L, length, -1L);
+    }
+    
+    /**
+     * Reads the header of a {@link MessagePackSerializer#LIST_ID} extension at the start of the source.
+     */
+    static @NonNull TagSpliterator list(@NonNull MessagePackSerializer serializer, @NonNull Source source, long length) throws IOException {
+        try (MessageUnpacker unpacker = serializer.newUnpacker(source.open(0L, length))) {
+            if (!unpacker.getNextFormat().getValueType().isExtensionType()) {
+                throw new MessageTypeException(String.format("Expected list but found %s", unpacker.getNextFormat()));
+            }
+            
+            ExtensionTypeHeader header = unpacker.unpackExtensionTypeHeader();
+            if (header.getType() != MessagePackSerializer.LIST_ID) {
+                throw new MessageTypeException(String.format("Expected list but found extension %s", header.getType()));
+            }
+            
+            long end = unpacker.getTotalReadBytes() + header.getLength();
+            int size = unpacker.unpackArrayHeader();
+            return new TagSpliterator(serializer, source, unpacker.getTotalReadBytes(), end, size);
+        }
+    }
+    
+    @Override
+    public boolean tryAdvance(Consumer<? super Tag> action) {
+        if (offsets != null ? index >= fence : remaining == 0L || position >= end) {
+            return false;
+        }
+        
+        try {
+            if (unpacker == null) {
+                unpacker = serializer.newUnpacker(source.open(position, end));
+                unpackerStart = position;
+            }
+            
+            if (unpacker instanceof LimitedMessageUnpacker) {
+                ((LimitedMessageUnpacker) unpacker).resetLimits();
+            }
+            
+            SerializerListener listener = serializer.getListener();
+            Tag tag;
+            if (listener == SerializerListener.NONE) {
+                tag = serializer.read(unpacker);
+            } else {
+                long start = System.nanoTime();
+                long bytes = unpacker.getTotalReadBytes();
+                tag = serializer.read(unpacker);
+                listener.onRead(tag, unpacker.getTotalReadBytes() - bytes, System.nanoTime() - start);
+            }
+            
+            position = unpackerStart + unpacker.getTotalReadBytes();
+            if (offsets != null) {
+                index++;
+            }
+            
+            if (remaining > 0L) {
+                remaining--;
+            }
+            
+            action.accept(tag);
+            return true;
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+    
+    @Override
+    public Spliterator<Tag> trySplit() {
+        if (offsets == null) {
+            if (remaining >= 0L && remaining < MINIMUM_SPLIT || position >= end) {
+                return null;
+            }
+            
+            index();
+        }
+        
+        int middle = index + (fence - index) / 2;
+        if (fence - index < MINIMUM_SPLIT) {
+            return null;
+        }
+        
+        TagSpliterator prefix = new TagSpliterator(serializer, source, offsets, index, middle);
+        index = middle;
+        position = offsets[middle];
+        remaining = fence - middle;
+        unpacker = null;
+        return prefix;
+    }
+    
+    /**
+     * Finds where each of the remaining tags starts by skipping over them.
+     */
+    private void index() {
+        // The count comes from an unchecked list header, so the offsets grow as tags are found rather than up front
+        long[] offsets = new long[remaining >= 0L ? (int) Math.min(remaining + 1, 1024) : 64];
+        int count = 0;
+        try (MessageUnpacker unpacker = serializer.newUnpacker(source.open(position, end))) {
+            while (remaining >= 0L ? count < remaining : position + unpacker.getTotalReadBytes() < end) {
+                if (count + 1 >= offsets.length) {
+                    offsets = Arrays.copyOf(offsets, offsets.length * 2);
+                }
+                
+                if (unpacker instanceof LimitedMessageUnpacker) {
+                    ((LimitedMessageUnpacker) unpacker).resetLimits();
+                }
+                
+                offsets[count++] = position + unpacker.getTotalReadBytes();
+                unpacker.skipValue();
+            }
+            
+            offsets[count] = position + unpacker.getTotalReadBytes();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        
+        this.offsets = offsets;
+        this.index = 0;
+        this.fence = count;
+        this.remaining = count;
+        this.unpacker = null;
+    }
+    
+    @Override
+    public long estimateSize() {
+        return remaining >= 0L ? remaining : end - position;
+    }
+    
+    @Override
+    public int characteristics() {
+        int characteristics = ORDERED | NONNULL | IMMUTABLE;
+        return remaining >= 0L ? characteristics | SIZED | SUBSIZED : characteristics;
+    }
+    
+    /**
+     * Opens inputs over byte ranges of the same data, which may be read concurrently.
+     */
+    interface Source {
+        
+        @NonNull MessageBufferInput open(long from, long to) throws IOException;
+        
+        static @NonNull Source of(@NonNull ByteBuffer buffer) {
+            ByteBuffer base = buffer.slice();
+            return (from, to) -> {
+                ByteBuffer slice = base.duplicate();
+                slice.limit((int) to).position((int) from);
+                return new ByteBufferInput(slice.slice());
+            };
+        }
+        
+        /**
+         * Reads the channel with positional reads, so ranges are independent of the position of the channel.
+         */
+        static @NonNull Source of(@NonNull FileChannel channel, int bufferSize) {
+            return (from, to) -> new MessageBufferInput() {
+                
+                private long position = from;
+                
+                @Override
+                public MessageBuffer next() throws IOException {
+                    if (position >= to) {
+                        return null;
+                    }
+                    
+                    ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(bufferSize, to - position));
+                    while (buffer.hasRemaining()) {
+                        if (channel.read(buffer, position + buffer.position()) < 0) {
+                            break;
+                        }
+                    }
+                    
+                    if (buffer.position() == 0) {
+                        return null;
+                    }
+                    
+                    position += buffer.position();
+                    return MessageBuffer.wrap(buffer.array(), 0, buffer.position());
+                }
+                
+                @Override
+                public void close() {
+                }
+            };
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,340 @@
+/*
+ * Copyright 2021 Alex Thomson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.lxgaming.binary.serializer.msgpack;
+
+import org.checkerframework.checker.nullness.qual.NonNull;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Gorilla style XOR compression for floating point series.
+ * <p>
+ * The first value is stored verbatim, every following value is stored as the XOR against its predecessor:
+ * <ul>
+ *     <li>{@code 0} - identical to the previous value</li>
+ *     <li>{@code 10} - meaningful bits fit inside the previous leading / trailing zero window</li>
+ *     <li>{@code 11} - new window, followed by the leading zero count, the meaningful bit count minus one and the bits</li>
+ * </ul>
+ * Values are compared by their raw bits so decoding is bit-exact, including NaN payloads and signed zeros.
+ * {@link FloatDecoder} and {@link DoubleDecoder} decode one value at a time so a series can be consumed lazily.
+ */
+public class XorCompressionUtils {
+    
+    public static byte @NonNull [] encode(float @NonNull [] values) {
+        BitOutput output = new BitOutput(values.length);
+        encode(values, output);
+        return output.toByteArray();
+    }
+    
+    public static byte @NonNull [] encode(double @NonNull [] values) {
+        BitOutput output = new BitOutput(values.length);
+        encode(values, output);
+        return output.toByteArray();
+    }
+    
+    /**
+     * Computes the length of {@link #encode(float[])} without producing the bytes.
+     */
+    public static int encodedLength(float @NonNull [] values) {
+        BitCounter counter = new BitCounter();
+        encode(values, counter);
+        return counter.length();
+    }
+    
+    /**
+     * Computes the length of {@link #encode(double[])} without producing the bytes.
+     */
+    public static int encodedLength(double @NonNull [] values) {
+        BitCounter counter = new BitCounter();
+        encode(values, counter);
+        return counter.length();
+    }
+    
+    private static void encode(float[] values, BitSink output) {
+        int previous = 0;
+        int previousLeading = -1;
+        int previousTrailing = 0;
+        for (int index = 0; index < values.length; index++) {
+            int bits = Float.floatToRawIntBits(values[index]);
+            if (index == 0) {
+                output.write(bits, Integer.SIZE);
+                previous = bits;
+                continue;
+            }
+            
+            int xor = bits ^ previous;
+            previous = bits;
+            if (xor == 0) {
+                output.write(0, 1);
+                continue;
+            }
+            
+            int leading = Integer.numberOfLeadingZeros(xor);
+            int trailing = Integer.numberOfTrailingZeros(xor);
+            if (previousLeading != -1 && leading >= previousLeading && trailing >= previousTrailing) {
+                output.write(0b10, 2);
+                output.write(xor >>> previousTrailing, Integer.SIZE - previousLeading - previousTrailing);
+            } else {
+                int length = Integer.SIZE - leading - trailing;
+                output.write(0b11, 2);
+                output.write(leading, 5);
+                output.write(length - 1, 5);
+                output.write(xor >>> trailing, length);
+                previousLeading = leading;
+                previousTrailing = trailing;
+            }
+        }
+    }
+    
+    private static void encode(double[] values, BitSink output) {
+        long previous = 0L;
+        int previousLeading = -1;
+        int previousTrailing = 0;
+        for (int index = 0; index < values.length; index++) {
+            long bits = Double.doubleToRawLongBits(values[index]);
+            if (index == 0) {
+                output.write(bits, Long.SIZE);
+                previous = bits;
+                continue;
+            }
+            
+            long xor = bits ^ previous;
+            previous = bits;
+            if (xor == 0L) {
+                output.write(0, 1);
+                continue;
+            }
+            
+            int leading = Long.numberOfLeadingZeros(xor);
+            int trailing = Long.numberOfTrailingZeros(xor);
+            if (previousLeading != -1 && leading >= previousLeading && trailing >= previousTrailing) {
+                output.write(0b10, 2);
+                output.write(xor >>> previousTrailing, Long.SIZE - previousLeading - previousTrailing);
+            } else {
+                int length = Long.SIZE - leading - trailing;
+                output.write(0b11, 2);
+                output.write(leading, 6);
+                output.write(length - 1, 6);
+                output.write(xor >>> trailing, length);
+                previousLeading = leading;
+                previousTrailing = trailing;
+            }
+        }
+    }
+    
+    public static void decode(byte @NonNull [] bytes, float @NonNull [] values) throws IOException {
+        FloatDecoder decoder = new FloatDecoder(bytes);
+        for (int index = 0; index < values.length; index++) {
+            values[index] = decoder.next();
+        }
+    }
+    
+    public static void decode(byte @NonNull [] bytes, double @NonNull [] values) throws IOException {
+        DoubleDecoder decoder = new DoubleDecoder(bytes);
+        for (int index = 0; index < values.length; index++) {
+            values[index] = decoder.next();
+        }
+    }
+    
+    public static class FloatDecoder {
+        
+        private final BitInput input;
+        private int previous;
+        private int leading = -1;
+        private int trailing;
+        
+        public FloatDecoder(byte @NonNull [] bytes) {
+            this.input = new BitInput(bytes);
+        }
+        
+        public float next() throws IOException {
+            if (!input.started) {
+                input.started = true;
+                previous = (int) input.read(Integer.SIZE);
+                return Float.intBitsToFloat(previous);
+            }
+            
+            if (input.read(1) == 0) {
+                return Float.intBitsToFloat(previous);
+            }
+            
+            if (input.read(1) == 1) {
+                leading = (int) input.read(5);
+                int length = (int) input.read(5) + 1;
+                trailing = Integer.SIZE - leading - length;
+            } else if (leading == -1) {
+                throw new IOException("Invalid XOR window");
+            }
+            
+            int xor = (int) input.read(Integer.SIZE - leading - trailing) << trailing;
+            previous ^= xor;
+            return Float.intBitsToFloat(previous);
+        }
+    }
+    
+    public static class DoubleDecoder {
+        
+        private final BitInput input;
+        private long previous;
+        private int leading = -1;
+        private int trailing;
+        
+        public DoubleDecoder(byte @NonNull [] bytes) {
+            this.input = new BitInput(bytes);
+        }
+        
+        public double next() throws IOException {
+            if (!input.started) {
+                input.started = true;
+                previous = input.read(Long.SIZE);
+                return Double.longBitsToDouble(previous);
+            }
+            
+            if (input.read(1) == 0) {
+                return Double.longBitsToDouble(previous);
+            }
+            
+            if (input.read(1) == 1) {
+                leading = (int) input.read(6);
+                int length = (int) input.read(6) + 1;
+                trailing = Long.SIZE - leading - length;
+            } else if (leading == -1) {
+                throw new IOException("Invalid XOR window");
+            }
+            
+            long xor = input.read(Long.SIZE - leading - trailing) << trailing;
+            previous ^= xor;
+            return Double.longBitsToDouble(previous);
+        }
+    }
+    
+    private interface BitSink {
+        
+        void write(long value, int count);
+    }
+    
+    private static class BitCounter implements BitSink {
+        
+        private long count;
+        
+        @Override
+        public void write(long value, int count) {
+            this.count += count;
+        }
+        
+        private int length() {
+            return (int) ((count + Byte.SIZE - 1) / Byte.SIZE);
+        }
+    }
+    
+    private static class BitOutput implements BitSink {
+        
+        private byte[] bytes;
+        private int length;
+        private long word;
+        private int used;
+        
+        private BitOutput(int size) {
+            this.bytes = new byte[Math.max(16, size)];
+        }
+        
+        @Override
+        public void write(long value, int count) {
+            while (count > 0) {
+                int free = Long.SIZE - used;
+                int bits = Math.min(free, count);
+                long chunk = (value >>> (count - bits)) & mask(bits);
+                word |= chunk << (free - bits);
+                used += bits;
+                count -= bits;
+                if (used == Long.SIZE) {
+                    flush(Long.BYTES);
+                }
+            }
+        }
+        
+        private void flush(int count) {
+            if (length + count > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(length + count, bytes.length << 1));
+            }
+            
+            for (int index = 0; index < count; index++) {
+                bytes[length++] = (byte) (word >>> (Long.SIZE - Byte.SIZE * (index + 1)));
+            }
+            
+            word = 0L;
+            used = 0;
+        }
+        
+        private byte[] toByteArray() {
+            if (used != 0) {
+                flush((used + Byte.SIZE - 1) / Byte.SIZE);
+            }
+            
+            return Arrays.copyOf(bytes, length);
+        }
+    }
+    
+    private static class BitInput {
+        
+        private final byte[] bytes;
+        private int position;
+        private long word;
+        private int available;
+        private boolean started;
+        
+        private BitInput(byte[] bytes) {
+            this.bytes = bytes;
+        }
+        
+        private long read(int count) throws IOException {
+            long result = 0L;
+            while (count > 0) {
+                if (available == 0) {
+                    fill();
+                }
+                
+                int bits = Math.min(available, count);
+                result = (bits == Long.SIZE ? 0L : result << bits) | (word >>> (Long.SIZE - bits));
+                word = bits == Long.SIZE ? 0L : word << bits;
+                available -= bits;
+                count -= bits;
+            }
+            
+            return result;
+        }
+        
+        private void fill() throws EOFException {
+            if (position >= bytes.length) {
+                throw new EOFException("Unexpected end of XOR payload");
+            }
+            
+            int count = Math.min(Long.BYTES, bytes.length - position);
+            for (int index = 0; index < count; index++) {
+                word |= (bytes[position++] & 0xFFL) << (Long.SIZE - Byte.SIZE * (index + 1));
+            }
+            
+            available = count * Byte.SIZE;
+        }
+    }
+    
+    private static long mask(int bits) {
+        return bits == Long.SIZE ? -1L : (1L << bits) - 1L;
+    }
+}
\ No newline at end of file
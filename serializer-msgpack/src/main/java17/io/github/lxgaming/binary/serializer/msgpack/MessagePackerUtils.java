@@ -0,0 +1,118 @@
+/*
+ * Copyright 2021 Alex Thomson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.lxgaming.binary.serializer.msgpack;
+
+import org.msgpack.core.MessagePack;
+import org.msgpack.core.MessagePacker;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+/**
+ * Packs integers at their full width, unlike {@link MessagePacker} which packs them in the fewest bytes.
+ * <p>
+ * This is the Java 17 implementation from the multi-release jar. The private writers of {@link MessagePacker} are found
+ * through {@link MethodHandles#privateLookupIn(Class, MethodHandles.Lookup)} and held in constants the JIT can inline,
+ * and arrays are converted to big endian in chunks through {@link VarHandle} views before being written as one payload.
+ */
+public class MessagePackerUtils {
+    
+    private static final int CHUNK_LENGTH = 1024;
+    private static final MethodHandle WRITE_BYTE_AND_SHORT = findWriter("writeByteAndShort", short.class);
+    private static final MethodHandle WRITE_BYTE_AND_INT = findWriter("writeByteAndInt", int.class);
+    private static final MethodHandle WRITE_BYTE_AND_LONG = findWriter("writeByteAndLong", long.class);
+    private static final VarHandle FLOAT_VIEW = MethodHandles.byteArrayViewVarHandle(float[].class, ByteOrder.BIG_ENDIAN);
+    private static final VarHandle DOUBLE_VIEW = MethodHandles.byteArrayViewVarHandle(double[].class, ByteOrder.BIG_ENDIAN);
+    
+    private static MethodHandle findWriter(String name, Class<?> type) {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(MessagePacker.class, MethodHandles.lookup());
+            return lookup.findVirtual(MessagePacker.class, name, MethodType.methodType(void.class, byte.class, type));
+        } catch (ReflectiveOperationException | RuntimeException ex) {
+            throw new ExceptionInInitializerError(ex);
+        }
+    }
+    
+    public static MessagePacker packShort(MessagePacker packer, short value) throws IOException {
+        try {
+            WRITE_BYTE_AND_SHORT.invokeExact(packer, value < 0 ? MessagePack.Code.INT16 : MessagePack.Code.UINT16, value);
+            return packer;
+        } catch (IOException | RuntimeException | Error ex) {
+            throw ex;
+        } catch (Throwable throwable) {
+            throw new RuntimeException(throwable);
+        }
+    }
+    
+    public static MessagePacker packInt(MessagePacker packer, int value) throws IOException {
+        try {
+            WRITE_BYTE_AND_INT.invokeExact(packer, value < 0 ? MessagePack.Code.INT32 : MessagePack.Code.UINT32, value);
+            return packer;
+        } catch (IOException | RuntimeException | Error ex) {
+            throw ex;
+        } catch (Throwable throwable) {
+            throw new RuntimeException(throwable);
+        }
+    }
+    
+    public static MessagePacker packLong(MessagePacker packer, long value) throws IOException {
+        try {
+            WRITE_BYTE_AND_LONG.invokeExact(packer, value < 0 ? MessagePack.Code.INT64 : MessagePack.Code.UINT64, value);
+            return packer;
+        } catch (IOException | RuntimeException | Error ex) {
+            throw ex;
+        } catch (Throwable throwable) {
+            throw new RuntimeException(throwable);
+        }
+    }
+    
+    /**
+     * Packs each value as a {@link MessagePack.Code#FLOAT32}, as {@link MessagePacker#packFloat(float)} would.
+     */
+    public static void packFloats(MessagePacker packer, float[] values) throws IOException {
+        byte[] bytes = new byte[Math.min(values.length, CHUNK_LENGTH) * 5];
+        for (int index = 0; index < values.length; ) {
+            int length = Math.min(values.length - index, CHUNK_LENGTH) * 5;
+            for (int offset = 0; offset < length; offset += 5) {
+                bytes[offset] = MessagePack.Code.FLOAT32;
+                FLOAT_VIEW.set(bytes, offset + 1, values[index++]);
+            }
+            
+            packer.writePayload(bytes, 0, length);
+        }
+    }
+    
+    /**
+     * Packs each value as a {@link MessagePack.Code#FLOAT64}, as {@link MessagePacker#packDouble(double)} would.
+     */
+    public static void packDoubles(MessagePacker packer, double[] values) throws IOException {
+        byte[] bytes = new byte[Math.min(values.length, CHUNK_LENGTH) * 9];
+        for (int index = 0; index < values.length; ) {
+            int length = Math.min(values.length - index, CHUNK_LENGTH) * 9;
+            for (int offset = 0; offset < length; offset += 9) {
+                bytes[offset] = MessagePack.Code.FLOAT64;
+                DOUBLE_VIEW.set(bytes, offset + 1, values[index++]);
+            }
+            
+            packer.writePayload(bytes, 0, length);
+        }
+    }
+}
\ No newline at end of file
@@ -16,10 +16,18 @@
 
 package io.github.lxgaming.binary.serializer.msgpack;
 
+import io.github.lxgaming.binary.AsyncBinarySerializer;
+import io.github.lxgaming.binary.annotation.BinaryField;
 import io.github.lxgaming.binary.tag.BooleanTag;
 import io.github.lxgaming.binary.tag.ByteArrayTag;
 import io.github.lxgaming.binary.tag.ByteTag;
 import io.github.lxgaming.binary.tag.CompoundTag;
+import io.github.lxgaming.binary.tag.ConcurrentCompoundTag;
+import io.github.lxgaming.binary.tag.DirectByteArrayTag;
+import io.github.lxgaming.binary.tag.DirectDoubleArrayTag;
+import io.github.lxgaming.binary.tag.DirectFloatArrayTag;
+import io.github.lxgaming.binary.tag.DirectIntArrayTag;
+import io.github.lxgaming.binary.tag.DirectLongArrayTag;
 import io.github.lxgaming.binary.tag.DoubleArrayTag;
 import io.github.lxgaming.binary.tag.DoubleTag;
 import io.github.lxgaming.binary.tag.FloatArrayTag;
@@ -29,19 +37,49 @@ import io.github.lxgaming.binary.tag.IntTag;
 import io.github.lxgaming.binary.tag.ListTag;
 import io.github.lxgaming.binary.tag.LongArrayTag;
 import io.github.lxgaming.binary.tag.LongTag;
+import io.github.lxgaming.binary.tag.PersistentCompoundTag;
 import io.github.lxgaming.binary.tag.ShortArrayTag;
 import io.github.lxgaming.binary.tag.ShortTag;
 import io.github.lxgaming.binary.tag.StringTag;
 import io.github.lxgaming.binary.tag.Tag;
+import io.github.lxgaming.binary.tag.TagPath;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufUtil;
 import io.netty.buffer.Unpooled;
+import org.checkerframework.checker.nullness.qual.NonNull;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.msgpack.core.MessageBufferPacker;
+import org.msgpack.core.MessageInsufficientBufferException;
+import org.msgpack.core.MessagePack;
+import org.msgpack.core.MessageSizeException;
+import org.msgpack.core.MessageTypeException;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class MessagePackTest {
     
@@ -114,6 +152,888 @@ public class MessagePackTest {
         Assertions.assertEquals(compound, tag);
     }
     
+    @Test
+    public void testFloatCompression() {
+        MessagePackSerializer serializer = new MessagePackSerializer();
+        serializer.setFloatCompression(true);
+        
+        float[] floats = new float[1024];
+        double[] doubles = new double[1024];
+        for (int index = 0; index < floats.length; index++) {
+            floats[index] = 64F + (index / 8) * 0.25F;
+            doubles[index] = 1024D + (index / 4) * 0.125D;
+        }
+        
+        floats[1] = Float.intBitsToFloat(0x7FC00001);
+        floats[2] = -0F;
+        floats[3] = Float.NEGATIVE_INFINITY;
+        doubles[1] = Double.longBitsToDouble(0x7FF8000000000001L);
+        doubles[2] = -0D;
+        doubles[3] = Double.MIN_VALUE;
+        
+        CompoundTag compound = new CompoundTag();
+        compound.putFloatArray("float_array", floats);
+        compound.putDoubleArray("double_array", doubles);
+        compound.putFloatArray("float_array_single", new float[]{Float.MAX_VALUE});
+        compound.putDoubleArray("double_array_empty", new double[0]);
+        
+        byte[] bytes = write(serializer, compound);
+        Assertions.assertTrue(bytes.length < write(this.serializer, compound).length);
+        
+        CompoundTag tag = (CompoundTag) read(serializer, bytes);
+        Assertions.assertEquals(compound, tag);
+        for (int index = 0; index < floats.length; index++) {
+            Assertions.assertEquals(Float.floatToRawIntBits(floats[index]), Float.floatToRawIntBits(tag.getFloatArray("float_array")[index]));
+            Assertions.assertEquals(Double.doubleToRawLongBits(doubles[index]), Double.doubleToRawLongBits(tag.getDoubleArray("double_array")[index]));
+        }
+        
+        // Alternating windows cost 43 bits and shared windows 33, giving a 319 byte payload that only beats the raw
+        // 320 bytes before its 3 byte binary header is counted.
+        float[] series = new float[64];
+        int bits = 0;
+        for (int index = 1; index < series.length; index++) {
+            bits ^= index > 44 ? 0x7FFFFFFE : index % 2 == 0 ? 0x7FFFFFFF : 0xFFFFFFFE;
+            series[index] = Float.intBitsToFloat(bits);
+        }
+        
+        Assertions.assertEquals(series.length * 5 - 1, XorCompressionUtils.encodedLength(series));
+        FloatArrayTag seriesTag = new FloatArrayTag(series);
+        Assertions.assertArrayEquals(write(this.serializer, seriesTag), write(serializer, seriesTag));
+        Assertions.assertEquals(write(serializer, seriesTag).length, serializer.encodedSize(seriesTag));
+    }
+    
+    @Test
+    public void testParallelSerializer() {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            ParallelMessagePackSerializer serializer = new ParallelMessagePackSerializer(pool, 256);
+            CompoundTag compound = createTree();
+            
+            byte[] bytes = write(serializer, compound);
+            Assertions.assertArrayEquals(write(this.serializer, compound), bytes);
+            Assertions.assertEquals(compound, read(serializer, bytes));
+            
+            CompoundTag arrays = new CompoundTag();
+            arrays.putFloatArray("float_array", new float[4096]);
+            arrays.putDoubleArray("double_array", new double[]{-1, 0, 1, Double.NaN});
+            arrays.putIntArray("int_array", new int[4096]);
+            Assertions.assertEquals(arrays, read(serializer, write(arrays)));
+            
+            // Thresholds below the width of one element must still stop splitting at single elements
+            for (int threshold : new int[]{0, 4, 8}) {
+                ParallelMessagePackSerializer smallSerializer = new ParallelMessagePackSerializer(pool, threshold);
+                Assertions.assertEquals(arrays, read(smallSerializer, write(arrays)));
+            }
+            
+            Assertions.assertThrows(IllegalArgumentException.class, () -> new ParallelMessagePackSerializer(pool, -1));
+        } finally {
+            pool.shutdown();
+        }
+    }
+    
+    @Test
+    public void testAsyncSerializer(@TempDir Path directory) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            AsyncBinarySerializer serializer = new AsyncBinarySerializer(this.serializer, executor);
+            CompoundTag compound = createTree();
+            Path path = directory.resolve("tree.bin");
+            serializer.writeAsync(path, compound).get();
+            Assertions.assertArrayEquals(write(compound), Files.readAllBytes(path));
+            Assertions.assertEquals(compound, serializer.readAsync(path).get());
+            
+            // A tag which fails to encode leaves the previous file in place
+            CompoundTag broken = new CompoundTag();
+            broken.put("tag", new Tag() {
+                
+                @Override
+                public @NonNull Tag copy() {
+                    return this;
+                }
+            });
+            Assertions.assertThrows(ExecutionException.class, () -> serializer.writeAsync(path, broken).get());
+            Assertions.assertArrayEquals(write(compound), Files.readAllBytes(path));
+            try (Stream<Path> files = Files.list(directory)) {
+                Assertions.assertEquals(Collections.singletonList(path), files.collect(Collectors.toList()));
+            }
+            
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            serializer.writeAsync(output, compound).get();
+            Assertions.assertEquals(compound, serializer.readAsync(new ByteArrayInputStream(output.toByteArray())).get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+    
+    @Test
+    public void testEncodedSize() {
+        MessagePackSerializer compressed = new MessagePackSerializer();
+        compressed.setFloatCompression(true);
+        
+        CompoundTag compound = createTree();
+        compound.putByteArray("byte_array", new byte[]{Byte.MIN_VALUE, -33, -32, 0, Byte.MAX_VALUE});
+        compound.putShortArray("short_array", new short[]{Short.MIN_VALUE, -129, -33, 0, 127, 255, Short.MAX_VALUE});
+        compound.putIntArray("int_array", new int[]{Integer.MIN_VALUE, -32769, -129, 0, 255, 65535, Integer.MAX_VALUE});
+        compound.putLongArray("long_array", new long[]{Long.MIN_VALUE, Integer.MIN_VALUE - 1L, -32769, 0, 65536, 1L << 32, Long.MAX_VALUE});
+        compound.putFloatArray("float_array", new float[]{1F, 1F, 1F, 1F, 2F});
+        compound.putDoubleArray("double_array", new double[]{Math.PI, Math.E});
+        compound.putByte("byte_min", Byte.MIN_VALUE);
+        for (int length : new int[]{0, 31, 32, 255, 256, 600, 70000}) {
+            StringBuilder stringBuilder = new StringBuilder(length);
+            for (int index = 0; index < length; index++) {
+                stringBuilder.append(index % 7 == 0 ? '\u00E9' : index % 11 == 0 ? '\u4E00' : 'a');
+            }
+            
+            compound.putString("string_" + length, stringBuilder.toString());
+            compound.putString("ascii_" + length, stringBuilder.toString().replaceAll("[^a]", "a"));
+        }
+        
+        compound.putString("surrogates", "\uD83D\uDE00\uD83D");
+        for (MessagePackSerializer serializer : new MessagePackSerializer[]{this.serializer, compressed}) {
+            Assertions.assertEquals(write(serializer, compound).length, serializer.encodedSize(compound));
+            for (Tag tag : compound.values()) {
+                Assertions.assertEquals(write(serializer, tag).length, serializer.encodedSize(tag));
+            }
+        }
+    }
+    
+    @Test
+    public void testMetricsListener() {
+        MessagePackSerializer serializer = new MessagePackSerializer();
+        MetricsListener listener = new MetricsListener();
+        serializer.setListener(listener);
+        
+        CompoundTag compound = createTree();
+        byte[] bytes = write(serializer, compound);
+        Assertions.assertEquals(compound, read(serializer, bytes));
+        
+        Assertions.assertEquals(1, listener.getWriteLatency().getCount());
+        Assertions.assertEquals(1, listener.getReadLatency().getCount());
+        Assertions.assertEquals(bytes.length, listener.getWriteSize().getSum());
+        Assertions.assertEquals(bytes.length, listener.getReadSize().getSum());
+        Assertions.assertEquals(2 * 512, listener.getTagCount(IntTag.class));
+        Assertions.assertEquals(2 * 16, listener.getTagCount(LongArrayTag.class));
+        Assertions.assertEquals(4, listener.getMaxDepth());
+        Assertions.assertTrue(listener.getExtensionSize().getCount() > 0);
+        Assertions.assertTrue(listener.getBufferingNanos() > 0);
+        
+        Histogram histogram = new Histogram();
+        for (int value = 1; value <= 1000; value++) {
+            histogram.record(value);
+        }
+        
+        Assertions.assertEquals(1000, histogram.getMax());
+        Assertions.assertEquals(1000, histogram.getPercentile(100D));
+        Assertions.assertEquals(500, histogram.getPercentile(50D), 500 * 0.0625D);
+        Assertions.assertEquals(990, histogram.getPercentile(99D), 990 * 0.0625D);
+    }
+    
+    @Test
+    public void testDecodeLimits() throws IOException {
+        ListTag list = new ListTag();
+        for (int index = 0; index < 600; index++) {
+            list = createList(list);
+        }
+        
+        byte[] bytes = write(list);
+        Assertions.assertThrows(MessageSizeException.class, () -> serializer.read(new ByteArrayInputStream(bytes)));
+        
+        MessagePackSerializer serializer = new MessagePackSerializer();
+        serializer.setDecodeLimits(DecodeLimits.DEFAULT.withMaxDepth(1024));
+        Assertions.assertEquals(list, read(serializer, bytes));
+        
+        // An array claiming more elements than its payload could hold
+        MessageBufferPacker payload = MessagePack.newDefaultBufferPacker();
+        payload.packByte(MessagePack.Code.INT64);
+        payload.packArrayHeader(Integer.MAX_VALUE);
+        Assertions.assertThrows(MessageSizeException.class, () -> serializer.read(new ByteArrayInputStream(createExtension(payload.toByteArray()))));
+        
+        // An extension claiming more bytes than the limit
+        byte[] extension = createExtension(new byte[1024]);
+        serializer.setDecodeLimits(DecodeLimits.DEFAULT.withMaxBytes(512));
+        Assertions.assertThrows(MessageSizeException.class, () -> serializer.read(new ByteArrayInputStream(extension)));
+        
+        // Extensions claiming close to 2 GiB in a few bytes fail once the input runs out instead of allocating
+        for (byte type : new byte[]{MessagePackSerializer.ARRAY_ID, MessagePackSerializer.RAW_ARRAY_ID}) {
+            byte[] truncated = {(byte) 0xC9, 0x7F, (byte) 0xFF, (byte) 0xFF, (byte) 0xF0, type, MessagePack.Code.INT8};
+            Assertions.assertThrows(MessageInsufficientBufferException.class, () -> read(truncated));
+        }
+        
+        // A raw array needs at least its element type
+        Assertions.assertThrows(MessageTypeException.class, () -> read(new byte[]{(byte) 0xC7, 0x00, MessagePackSerializer.RAW_ARRAY_ID}));
+        for (int length : new int[]{0, -1, Integer.MIN_VALUE}) {
+            Assertions.assertThrows(MessageTypeException.class, () -> serializer.readDirectArray(MessagePack.newDefaultUnpacker(new byte[]{MessagePack.Code.INT8}), length));
+        }
+        
+        // A failed read leaves the depth where it started
+        CompoundTag nested = new CompoundTag();
+        for (int index = 0; index < 600; index++) {
+            CompoundTag parent = new CompoundTag();
+            parent.putCompound("child", nested);
+            nested = parent;
+        }
+        
+        byte[] deep = write(nested);
+        for (MessagePackSerializer limited : new MessagePackSerializer[]{this.serializer, new IterativeMessagePackSerializer()}) {
+            try (LimitedMessageUnpacker unpacker = (LimitedMessageUnpacker) limited.newUnpacker(new ByteArrayInputStream(deep))) {
+                Assertions.assertThrows(MessageSizeException.class, () -> limited.read(unpacker));
+                Assertions.assertEquals(0, unpacker.getDepth());
+            }
+        }
+        
+        CompoundTag compound = createTree();
+        byte[] tree = write(compound);
+        serializer.setDecodeLimits(DecodeLimits.DEFAULT.withMaxElements(1024));
+        Assertions.assertThrows(MessageSizeException.class, () -> serializer.read(new ByteArrayInputStream(tree)));
+        serializer.setDecodeLimits(DecodeLimits.DEFAULT.withMaxStringLength(8));
+        Assertions.assertThrows(MessageSizeException.class, () -> serializer.read(new ByteArrayInputStream(tree)));
+        serializer.setDecodeLimits(DecodeLimits.DEFAULT.withMaxArrayLength(256));
+        Assertions.assertThrows(MessageSizeException.class, () -> serializer.read(new ByteArrayInputStream(tree)));
+        serializer.setDecodeLimits(DecodeLimits.DEFAULT.withMaxBytes(tree.length).withMaxArrayLength(1024).withMaxStringLength(16));
+        Assertions.assertEquals(compound, read(serializer, tree));
+        
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            ParallelMessagePackSerializer parallelSerializer = new ParallelMessagePackSerializer(pool, 256);
+            Assertions.assertEquals(compound, read(parallelSerializer, tree));
+            Assertions.assertThrows(MessageSizeException.class, () -> parallelSerializer.read(new ByteArrayInputStream(bytes)));
+            
+            // Arrays decoded across the pool are held to the same limits
+            CompoundTag floats = new CompoundTag();
+            floats.putFloatArray("values", new float[1024]);
+            parallelSerializer.setDecodeLimits(DecodeLimits.DEFAULT.withMaxArrayLength(512));
+            Assertions.assertThrows(MessageSizeException.class, () -> parallelSerializer.read(new ByteArrayInputStream(write(floats))));
+            parallelSerializer.setDecodeLimits(DecodeLimits.DEFAULT.withMaxElements(512));
+            Assertions.assertThrows(MessageSizeException.class, () -> parallelSerializer.read(new ByteArrayInputStream(write(floats))));
+            parallelSerializer.setDecodeLimits(DecodeLimits.DEFAULT);
+            Assertions.assertEquals(floats, read(parallelSerializer, write(floats)));
+        } finally {
+            pool.shutdown();
+        }
+    }
+    
+    @Test
+    public void testMapper() throws IOException {
+        MessagePackMapper mapper = new MessagePackMapper(serializer);
+        Entity entity = new Entity();
+        entity.id = 7;
+        entity.name = "Entity";
+        entity.position = new double[]{1, 2, 3};
+        entity.type = TimeUnit.SECONDS;
+        entity.health = 20F;
+        entity.tags = Arrays.asList("a", "b");
+        entity.attributes = Collections.singletonMap("speed", 0.5D);
+        entity.data = new CompoundTag();
+        entity.data.putString("custom", "value");
+        Entity passenger = new Entity();
+        passenger.id = 8;
+        entity.passengers = Collections.singletonList(passenger);
+        
+        CompoundTag compound = new CompoundTag();
+        compound.putInt("id", 7);
+        compound.putString("display_name", "Entity");
+        compound.putDoubleArray("position", new double[]{1, 2, 3});
+        compound.putString("type", "SECONDS");
+        compound.putFloat("health", 20F);
+        compound.putList("tags", createList(new StringTag("a"), new StringTag("b")));
+        CompoundTag attributes = new CompoundTag();
+        attributes.putDouble("speed", 0.5D);
+        compound.putCompound("attributes", attributes);
+        compound.put("data", entity.data.copy());
+        CompoundTag passengerCompound = new CompoundTag();
+        passengerCompound.putInt("id", 8);
+        passengerCompound.putFloat("health", 0F);
+        compound.putList("passengers", createList(passengerCompound));
+        
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        mapper.write(output, entity);
+        Assertions.assertEquals(compound, read(output.toByteArray()));
+        
+        Entity value = mapper.read(new ByteArrayInputStream(write(compound)), Entity.class);
+        Assertions.assertEquals(7, value.id);
+        Assertions.assertEquals("Entity", value.name);
+        Assertions.assertArrayEquals(entity.position, value.position);
+        Assertions.assertEquals(TimeUnit.SECONDS, value.type);
+        Assertions.assertEquals(20F, value.health);
+        Assertions.assertEquals(entity.tags, value.tags);
+        Assertions.assertEquals(entity.attributes, value.attributes);
+        Assertions.assertEquals(entity.data, value.data);
+        Assertions.assertEquals(1, value.passengers.size());
+        Assertions.assertEquals(8, value.passengers.get(0).id);
+        Assertions.assertNull(value.passengers.get(0).name);
+        Assertions.assertEquals(-1, value.ignored);
+    }
+    
+    @Test
+    public void testDirectArrays(@TempDir Path directory) throws IOException {
+        DirectLongArrayTag longs = new DirectLongArrayTag(1 << 16);
+        DirectDoubleArrayTag doubles = new DirectDoubleArrayTag(1024);
+        for (int index = 0; index < longs.size(); index++) {
+            longs.set(index, index * 0x0101010101L);
+        }
+        
+        for (int index = 0; index < doubles.size(); index++) {
+            doubles.set(index, Math.sin(index));
+        }
+        
+        Path path = directory.resolve("heightmap.bin");
+        CompoundTag compound = new CompoundTag();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            DirectIntArrayTag heightmap = new DirectIntArrayTag(channel.map(FileChannel.MapMode.READ_WRITE, 0, 256 * 4));
+            for (int index = 0; index < heightmap.size(); index++) {
+                heightmap.set(index, index - 128);
+            }
+            
+            compound.put("heightmap", heightmap);
+        }
+        
+        compound.put("longs", longs);
+        compound.put("doubles", doubles);
+        compound.put("bytes", new DirectByteArrayTag(ByteBuffer.wrap(new byte[]{-1, 0, 1})));
+        compound.put("floats", new DirectFloatArrayTag(0));
+        compound.putList("list", createList(longs.copy(), new DirectLongArrayTag(1)));
+        
+        byte[] bytes = write(compound);
+        Assertions.assertEquals(bytes.length, serializer.encodedSize(compound));
+        
+        CompoundTag tag = (CompoundTag) read(bytes);
+        Assertions.assertEquals(compound, tag);
+        Assertions.assertTrue(((DirectLongArrayTag) tag.get("longs")).getBuffer().isDirect());
+        Assertions.assertArrayEquals(longs.toArray(), ((DirectLongArrayTag) tag.get("longs")).toArray());
+        
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            ParallelMessagePackSerializer serializer = new ParallelMessagePackSerializer(pool, 256);
+            Assertions.assertArrayEquals(bytes, write(serializer, compound));
+            Assertions.assertEquals(compound, read(serializer, bytes));
+        } finally {
+            pool.shutdown();
+        }
+    }
+    
+    @Test
+    public void testIterativeSerializer() throws IOException {
+        IterativeMessagePackSerializer serializer = new IterativeMessagePackSerializer();
+        CompoundTag compound = createTree();
+        byte[] bytes = write(compound);
+        Assertions.assertArrayEquals(bytes, write(serializer, compound));
+        Assertions.assertEquals(compound, read(serializer, bytes));
+        
+        // Nested far deeper than the default decode limits allow
+        CompoundTag root = new CompoundTag();
+        CompoundTag parent = root;
+        for (int index = 0; index < 10000; index++) {
+            CompoundTag child = new CompoundTag();
+            child.putInt("depth", index);
+            parent.putList("list", createList(child));
+            parent = child;
+        }
+        
+        CompoundTag copy = root.copy();
+        Assertions.assertEquals(root, copy);
+        Assertions.assertEquals(root.hashCode(), copy.hashCode());
+        parent.putInt("depth", -1);
+        Assertions.assertNotEquals(root, copy);
+        
+        serializer.setDecodeLimits(DecodeLimits.DEFAULT.withMaxDepth(65536));
+        Assertions.assertEquals(root, read(serializer, write(serializer, root)));
+    }
+    
+    @Test
+    public void testConcurrentCompound() throws Exception {
+        ConcurrentCompoundTag compound = new ConcurrentCompoundTag();
+        compound.putCompound("tree", createTree());
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int thread = 0; thread < 4; thread++) {
+                int offset = thread;
+                futures.add(executor.submit(() -> {
+                    for (int index = 0; index < 10000; index++) {
+                        compound.incrementInt("count");
+                        compound.putIfAbsent("key_" + (index % 64 + offset), new IntTag(index));
+                    }
+                }));
+            }
+            
+            // Serialize while the workers are still updating, every snapshot must decode
+            while (!futures.stream().allMatch(Future::isDone)) {
+                CompoundTag tag = (CompoundTag) read(write(compound));
+                Assertions.assertEquals(compound.getCompound("tree"), tag.getCompound("tree"));
+            }
+            
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        
+        Assertions.assertEquals(40000, compound.getInt("count"));
+        Assertions.assertEquals(2 + 67, compound.size());
+        Assertions.assertEquals(compound.snapshot(), read(write(compound)));
+        Assertions.assertTrue(compound.copy() instanceof ConcurrentCompoundTag);
+    }
+    
+    @Test
+    public void testPersistentCompound() {
+        PersistentCompoundTag compound = new PersistentCompoundTag();
+        CompoundTag expected = new CompoundTag();
+        for (int index = 0; index < 10000; index++) {
+            compound.putInt("key_" + index, index);
+            expected.putInt("key_" + index, index);
+        }
+        
+        // "Aa" and "BB" share a hash code
+        compound.putString("Aa", "first");
+        compound.putString("BB", "second");
+        expected.putString("Aa", "first");
+        expected.putString("BB", "second");
+        compound.putCompound("tree", createTree());
+        expected.putCompound("tree", createTree());
+        Assertions.assertEquals(expected, compound);
+        Assertions.assertEquals(expected.hashCode(), compound.hashCode());
+        
+        PersistentCompoundTag snapshot = compound.snapshot();
+        for (int index = 0; index < 10000; index += 2) {
+            compound.remove("key_" + index);
+        }
+        
+        compound.remove("Aa");
+        compound.putString("BB", "updated");
+        Assertions.assertEquals(5000 + 2, compound.size());
+        Assertions.assertEquals("updated", compound.getString("BB"));
+        Assertions.assertFalse(compound.contains("Aa"));
+        Assertions.assertEquals(expected, snapshot);
+        Assertions.assertEquals(expected, read(write(snapshot)));
+        
+        PersistentCompoundTag version = snapshot.without("tree").with("key_0", new IntTag(-1));
+        Assertions.assertEquals(-1, version.getInt("key_0"));
+        Assertions.assertEquals(0, snapshot.getInt("key_0"));
+        Assertions.assertFalse(version.contains("tree"));
+        Assertions.assertEquals(expected, snapshot.copy());
+        
+        snapshot.entrySet().removeIf(entry -> !entry.getKey().equals("tree"));
+        Assertions.assertEquals(Collections.singleton("tree"), snapshot.keySet());
+        snapshot.clear();
+        Assertions.assertTrue(snapshot.isEmpty());
+    }
+    
+    @Test
+    public void testMemoize() {
+        MessagePackSerializer serializer = new MessagePackSerializer();
+        CompoundTag template = createTree();
+        for (MessagePackSerializer memoized : new MessagePackSerializer[]{serializer, new IterativeMessagePackSerializer()}) {
+            memoized.memoize(template);
+            CompoundTag message = new CompoundTag();
+            message.putCompound("template", template);
+            message.putInt("sequence", 1);
+            Assertions.assertArrayEquals(write(message), write(memoized, message));
+            Assertions.assertArrayEquals(write(message), write(memoized, message));
+            
+            // Updates through the subtree invalidate the cached bytes
+            ((CompoundTag) template.getList("entities").get(0)).putString("name", "updated");
+            Assertions.assertArrayEquals(write(message), write(memoized, message));
+            int[] heightmap = template.getCompound("chunk_0").getIntArray("heightmap").clone();
+            heightmap[0]++;
+            template.getCompound("chunk_0").putIntArray("heightmap", heightmap);
+            Assertions.assertArrayEquals(write(message), write(memoized, message));
+        }
+        
+        // Scalars and arrays updated in place are not tracked, which shows the cached bytes being reused
+        byte[] bytes = write(serializer, template);
+        ((IntTag) ((CompoundTag) template.getList("entities").get(1)).get("id")).setValue(-1);
+        Assertions.assertArrayEquals(bytes, write(serializer, template));
+        Assertions.assertFalse(Arrays.equals(bytes, write(template)));
+        serializer.forget(template);
+        serializer.memoize(template);
+        bytes = write(serializer, template);
+        template.getCompound("chunk_0").getIntArray("heightmap")[0]++;
+        Assertions.assertArrayEquals(bytes, write(serializer, template));
+        Assertions.assertFalse(Arrays.equals(bytes, write(template)));
+        
+        serializer.forget(template);
+        Assertions.assertFalse(serializer.isMemoized(template));
+        Assertions.assertArrayEquals(write(template), write(serializer, template));
+    }
+    
+    @Test
+    public void testUpdate() throws IOException {
+        CompoundTag compound = createTree();
+        compound.track();
+        compound.putString("name", "tracked");
+        Assertions.assertEquals(Collections.singleton("name"), compound.getDirtyKeys());
+        compound.markClean();
+        Assertions.assertFalse(compound.isDirty());
+        CompoundTag copy = compound.copy();
+        
+        CompoundTag chunk = compound.getCompound("chunk_3");
+        chunk.putInt("version", 2);
+        CompoundTag section = new CompoundTag();
+        section.putByteArray("palette", new byte[]{1, 2, 3});
+        chunk.getList("sections").set(1, section);
+        ListTag entities = compound.getList("entities");
+        ((CompoundTag) entities.get(7)).putString("name", "renamed");
+        compound.remove("name");
+        CompoundTag added = new CompoundTag();
+        added.putLong("created", 1L);
+        compound.putCompound("added", added);
+        added.putLong("updated", 2L);
+        
+        Assertions.assertEquals(new HashSet<>(Arrays.asList("chunk_3", "entities", "name", "added")), compound.getDirtyKeys());
+        Assertions.assertEquals(new HashSet<>(Arrays.asList("name", "added")), compound.getChangedKeys());
+        Assertions.assertEquals(new HashSet<>(Arrays.asList("version", "sections")), chunk.getDirtyKeys());
+        Assertions.assertEquals(7, entities.getDirtyIndices().nextSetBit(0));
+        Assertions.assertFalse(entities.isStructureChanged());
+        
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        serializer.writeUpdate(output, compound);
+        serializer.readUpdate(new ByteArrayInputStream(output.toByteArray()), copy);
+        Assertions.assertEquals(compound, copy);
+        
+        compound.markClean();
+        Assertions.assertFalse(compound.isDirty());
+        Assertions.assertFalse(chunk.isDirty());
+        Assertions.assertFalse(entities.isDirty());
+        chunk.putInt("version", 3);
+        output.reset();
+        serializer.writeUpdate(output, compound);
+        Assertions.assertTrue(output.size() < 32);
+        serializer.readUpdate(new ByteArrayInputStream(output.toByteArray()), copy);
+        Assertions.assertEquals(compound, copy);
+        
+        chunk.getList("sections").add(new CompoundTag());
+        Assertions.assertTrue(compound.isDirty());
+        Assertions.assertTrue(chunk.getList("sections").isStructureChanged());
+        
+        // Removing a missing key is not a change
+        compound.markClean();
+        int modCount = compound.getModCount();
+        compound.remove("missing");
+        Assertions.assertFalse(compound.isDirty());
+        Assertions.assertEquals(modCount, compound.getModCount());
+        
+        // Indices are brought up to date after tags are removed, a detached tag marks the structure instead
+        CompoundTag removed = (CompoundTag) entities.remove(0);
+        compound.markClean();
+        ((CompoundTag) entities.get(6)).putString("name", "shifted");
+        Assertions.assertEquals(6, entities.getDirtyIndices().nextSetBit(0));
+        Assertions.assertEquals(1, entities.getDirtyIndices().cardinality());
+        Assertions.assertFalse(entities.isStructureChanged());
+        removed.putString("name", "detached");
+        Assertions.assertTrue(entities.isStructureChanged());
+        
+        copy = compound.copy();
+        compound.markClean();
+        ((CompoundTag) entities.get(100)).putInt("id", -1);
+        output.reset();
+        serializer.writeUpdate(output, compound);
+        serializer.readUpdate(new ByteArrayInputStream(output.toByteArray()), copy);
+        Assertions.assertEquals(compound, copy);
+    }
+    
+    @Test
+    public void testUpdateViews() throws IOException {
+        CompoundTag compound = createTree();
+        compound.putString("a", "x");
+        compound.putString("b", "x");
+        compound.putString("c", "x");
+        compound.track();
+        CompoundTag copy = compound.copy();
+        
+        compound.keySet().remove("a");
+        compound.entrySet().removeIf(entry -> entry.getKey().equals("b"));
+        compound.entrySet().stream().filter(entry -> entry.getKey().equals("c")).forEach(entry -> entry.setValue(new StringTag("y")));
+        Iterator<Tag> iterator = compound.getList("entities").iterator();
+        iterator.next();
+        iterator.remove();
+        Assertions.assertEquals(new HashSet<>(Arrays.asList("a", "b", "c", "entities")), compound.getDirtyKeys());
+        Assertions.assertTrue(compound.getList("entities").isStructureChanged());
+        
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        serializer.writeUpdate(output, compound);
+        serializer.readUpdate(new ByteArrayInputStream(output.toByteArray()), copy);
+        Assertions.assertEquals(compound, copy);
+    }
+    
+    @Test
+    public void testTagPath() throws IOException {
+        CompoundTag compound = createTree();
+        TagPath id = TagPath.compile("entities[2].id");
+        TagPath heightmap = TagPath.compile("chunk_3.heightmap");
+        TagPath missing = TagPath.compile("chunk_3.sections[5].id");
+        Assertions.assertEquals(2, id.getInt(compound, -1));
+        Assertions.assertEquals(compound.getCompound("chunk_3").get("heightmap"), heightmap.get(compound));
+        Assertions.assertEquals(-1, missing.getInt(compound, -1));
+        Assertions.assertNull(TagPath.compile("entities.id").get(compound));
+        Assertions.assertEquals("entities[2].id", id.toString());
+        
+        id.setInt(compound, 7);
+        Assertions.assertEquals(7, ((CompoundTag) compound.getList("entities").get(2)).getInt("id"));
+        TagPath created = TagPath.compile("settings.network.port");
+        created.setInt(compound, 25565);
+        Assertions.assertEquals(25565, compound.getCompound("settings").getCompound("network").getInt("port"));
+        Assertions.assertTrue(created.remove(compound));
+        Assertions.assertFalse(created.contains(compound));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> missing.setInt(compound, 1));
+        
+        for (String path : new String[]{"", "a..b", ".a", "a[", "a[x]", "a[1]b", "a[]", "a[+0]", "a[-1]", "a[3000000000]", "a[4294967295]"}) {
+            Assertions.assertThrows(IllegalArgumentException.class, () -> TagPath.compile(path));
+        }
+        
+        Assertions.assertNull(TagPath.compile("entities[2147483647].id").get(compound));
+        
+        CompoundTag projection = (CompoundTag) serializer.readProjection(new ByteArrayInputStream(write(compound)), id, heightmap, created);
+        Assertions.assertEquals(new HashSet<>(Arrays.asList("entities", "chunk_3", "settings")), projection.keySet());
+        Assertions.assertEquals(Collections.singleton("heightmap"), projection.getCompound("chunk_3").keySet());
+        Assertions.assertTrue(projection.getCompound("settings").getCompound("network").isEmpty());
+        Assertions.assertEquals(compound.getList("entities"), projection.getList("entities"));
+        Assertions.assertEquals(heightmap.get(compound), heightmap.get(projection));
+    }
+    
+    @Test
+    public void testReadInto() throws IOException {
+        CompoundTag compound = createTree();
+        CompoundTag target = (CompoundTag) read(write(compound));
+        Tag entity = target.getList("entities").get(3);
+        Tag heightmap = target.getCompound("chunk_0").get("heightmap");
+        Tag sections = target.getCompound("chunk_0").get("sections");
+        
+        compound.getCompound("chunk_0").getIntArray("heightmap")[1] = 64;
+        ((CompoundTag) compound.getList("entities").get(3)).putString("name", "Renamed");
+        compound.getList("entities").remove(511);
+        compound.remove("chunk_15");
+        compound.putString("extra", "value");
+        serializer.read(new ByteArrayInputStream(write(compound)), target);
+        Assertions.assertEquals(compound, target);
+        Assertions.assertEquals(read(write(compound)), target);
+        Assertions.assertSame(entity, target.getList("entities").get(3));
+        Assertions.assertSame(heightmap, target.getCompound("chunk_0").get("heightmap"));
+        Assertions.assertSame(sections, target.getCompound("chunk_0").get("sections"));
+        Assertions.assertFalse(target.contains("chunk_15"));
+        
+        target.track();
+        compound.getCompound("chunk_1").getLongArray("blocks")[0] = 1L;
+        serializer.read(new ByteArrayInputStream(write(compound)), target);
+        Assertions.assertEquals(compound, target);
+        Assertions.assertEquals(Collections.singleton("chunk_1"), target.getDirtyKeys());
+        Assertions.assertEquals(Collections.singleton("blocks"), target.getCompound("chunk_1").getDirtyKeys());
+        Assertions.assertSame(entity, target.getList("entities").get(3));
+        
+        Assertions.assertThrows(MessageTypeException.class, () -> serializer.read(new ByteArrayInputStream(write(createList())), target));
+        
+        // Duplicate keys are counted by the header but not by the compound
+        MessageBufferPacker packer = MessagePack.newDefaultBufferPacker();
+        packer.packMapHeader(3).packString("a").packInt(1).packString("a").packInt(2).packString("b").packInt(3);
+        CompoundTag duplicates = new CompoundTag();
+        duplicates.putInt("a", 0);
+        duplicates.putInt("b", 0);
+        duplicates.putInt("c", 0);
+        serializer.read(new ByteArrayInputStream(packer.toByteArray()), duplicates);
+        Assertions.assertEquals(read(packer.toByteArray()), duplicates);
+        
+        // A read which fails part way through a nested compound leaves the next read unaffected
+        byte[] bytes = write(compound);
+        Assertions.assertThrows(MessageInsufficientBufferException.class, () -> serializer.read(new ByteArrayInputStream(Arrays.copyOf(bytes, bytes.length / 2)), target));
+        compound.remove("extra");
+        serializer.read(new ByteArrayInputStream(write(compound)), target);
+        Assertions.assertEquals(compound, target);
+    }
+    
+    @Test
+    public void testReadIntoMemoized() throws IOException {
+        CompoundTag state = new CompoundTag();
+        state.putInt("hp", 10);
+        state.putString("name", "Entity");
+        serializer.memoize(state);
+        write(state);
+        
+        CompoundTag update = new CompoundTag();
+        update.putInt("hp", 3);
+        update.putString("name", "Entity");
+        serializer.read(new ByteArrayInputStream(write(update)), state);
+        Assertions.assertEquals(update, state);
+        Assertions.assertEquals(update, read(write(state)));
+    }
+    
+    @Test
+    public void testMemoizeViews() {
+        MessagePackSerializer serializer = new MessagePackSerializer();
+        CompoundTag compound = new CompoundTag();
+        compound.putString("a", "x");
+        compound.putString("b", "x");
+        compound.putString("c", "x");
+        compound.putString("d", "x");
+        compound.putList("e", createList(new IntTag(1), new IntTag(2)));
+        serializer.memoize(compound);
+        write(serializer, compound);
+        
+        compound.keySet().remove("a");
+        Assertions.assertArrayEquals(write(compound), write(serializer, compound));
+        
+        compound.entrySet().stream().filter(entry -> entry.getKey().equals("b")).forEach(entry -> entry.setValue(new StringTag("y")));
+        Assertions.assertEquals("y", compound.getString("b"));
+        Assertions.assertArrayEquals(write(compound), write(serializer, compound));
+        
+        compound.entrySet().removeIf(entry -> entry.getKey().equals("b"));
+        Assertions.assertArrayEquals(write(compound), write(serializer, compound));
+        
+        compound.values().removeIf(tag -> tag instanceof StringTag);
+        Assertions.assertEquals(Collections.singleton("e"), compound.keySet());
+        Assertions.assertArrayEquals(write(compound), write(serializer, compound));
+        
+        Iterator<Tag> iterator = compound.getList("e").iterator();
+        iterator.next();
+        iterator.remove();
+        Assertions.assertEquals(1, compound.getList("e").size());
+        Assertions.assertArrayEquals(write(compound), write(serializer, compound));
+    }
+    
+    @Test
+    public void testSession() throws IOException {
+        MessagePackSerializer serializer = new MessagePackSerializer();
+        int[] flushes = new int[1];
+        boolean[] closed = new boolean[1];
+        ByteArrayOutputStream output = new ByteArrayOutputStream() {
+            
+            @Override
+            public void flush() {
+                flushes[0]++;
+            }
+            
+            @Override
+            public void close() {
+                closed[0] = true;
+            }
+        };
+        
+        List<Tag> tags = new ArrayList<>();
+        try (TagOutputSession session = new TagOutputSession(serializer, output, 16)) {
+            for (int index = 0; index < 100; index++) {
+                CompoundTag compound = new CompoundTag();
+                compound.putInt("index", index);
+                compound.putString("name", "Message " + index);
+                compound.putLongArray("values", new long[index]);
+                session.write(compound);
+                tags.add(compound);
+            }
+            
+            Assertions.assertEquals(6, flushes[0]);
+            Assertions.assertEquals(100, session.getCount());
+        }
+        
+        Assertions.assertEquals(7, flushes[0]);
+        Assertions.assertFalse(closed[0]);
+        
+        // Each tag is well under the limit, the whole stream is not
+        serializer.setDecodeLimits(DecodeLimits.DEFAULT.withMaxBytes(1024));
+        Assertions.assertTrue(output.size() > 1024);
+        List<Tag> read = new ArrayList<>();
+        try (TagInputSession session = new TagInputSession(serializer, new ByteArrayInputStream(output.toByteArray()))) {
+            for (Tag tag : session) {
+                read.add(tag);
+            }
+            
+            Assertions.assertEquals(100, session.getCount());
+            Assertions.assertEquals(output.size(), session.getTotalReadBytes());
+            Assertions.assertNull(session.read());
+        }
+        
+        Assertions.assertEquals(tags, read);
+    }
+    
+    @Test
+    public void testStream(@TempDir Path directory) throws IOException {
+        ListTag entities = createTree().getList("entities");
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (TagOutputSession session = new TagOutputSession(serializer, output, 0)) {
+            for (Tag entity : entities) {
+                session.write(entity);
+            }
+        }
+        
+        List<Tag> tags = new ArrayList<>();
+        entities.forEach(tags::add);
+        Assertions.assertEquals(tags, serializer.stream(ByteBuffer.wrap(output.toByteArray())).collect(Collectors.toList()));
+        Assertions.assertEquals(tags, serializer.stream(ByteBuffer.wrap(output.toByteArray())).parallel().collect(Collectors.toList()));
+        
+        Spliterator<Tag> spliterator = serializer.stream(ByteBuffer.wrap(output.toByteArray())).spliterator();
+        Assertions.assertTrue(spliterator.tryAdvance(tag -> Assertions.assertEquals(tags.get(0), tag)));
+        Spliterator<Tag> prefix = spliterator.trySplit();
+        Assertions.assertNotNull(prefix);
+        Assertions.assertEquals(511, prefix.estimateSize() + spliterator.estimateSize());
+        Assertions.assertTrue(spliterator.hasCharacteristics(Spliterator.SIZED));
+        
+        Path path = directory.resolve("entities.bin");
+        Files.write(path, output.toByteArray());
+        try (Stream<Tag> stream = serializer.stream(path)) {
+            Assertions.assertEquals(tags, stream.parallel().collect(Collectors.toList()));
+        }
+        
+        Files.write(path, write(entities));
+        try (Stream<Tag> stream = serializer.streamList(path)) {
+            Assertions.assertEquals(tags, stream.parallel().collect(Collectors.toList()));
+        }
+        
+        Assertions.assertEquals(512, serializer.streamList(ByteBuffer.wrap(write(entities))).spliterator().getExactSizeIfKnown());
+        Assertions.assertThrows(MessageTypeException.class, () -> serializer.streamList(ByteBuffer.wrap(write(createTree()))));
+    }
+    
+    private CompoundTag createTree() {
+        CompoundTag compound = new CompoundTag();
+        ListTag entities = new ListTag();
+        for (int index = 0; index < 512; index++) {
+            CompoundTag entity = new CompoundTag();
+            entity.putInt("id", index);
+            entity.putString("name", "Entity " + index);
+            entity.putDoubleArray("position", new double[]{index, index * 0.5D, -index});
+            entities.add(entity);
+        }
+        
+        compound.putList("entities", entities);
+        for (int index = 0; index < 16; index++) {
+            CompoundTag chunk = new CompoundTag();
+            chunk.putLongArray("blocks", new long[1024]);
+            chunk.putIntArray("heightmap", new int[256]);
+            chunk.putList("sections", createList(new CompoundTag(), new CompoundTag()));
+            compound.putCompound("chunk_" + index, chunk);
+        }
+        
+        return compound;
+    }
+    
+    public static class Entity {
+        
+        @BinaryField
+        private int id;
+        
+        @BinaryField("display_name")
+        private String name;
+        
+        @BinaryField
+        private double[] position;
+        
+        @BinaryField
+        private TimeUnit type;
+        
+        @BinaryField
+        private float health;
+        
+        @BinaryField
+        private List<String> tags;
+        
+        @BinaryField
+        private Map<String, Double> attributes;
+        
+        @BinaryField
+        private CompoundTag data;
+        
+        @BinaryField
+        private List<Entity> passengers;
+        
+        private int ignored = -1;
+    }
+    
     private ListTag createList(Tag... tags) {
         ListTag list = new ListTag();
         for (Tag tag : tags) {
@@ -123,12 +1043,23 @@ public class MessagePackTest {
         return list;
     }
     
+    private byte[] createExtension(byte[] payload) throws IOException {
+        MessageBufferPacker packer = MessagePack.newDefaultBufferPacker();
+        packer.packExtensionTypeHeader(MessagePackSerializer.ARRAY_ID, payload.length);
+        packer.writePayload(payload);
+        return packer.toByteArray();
+    }
+    
     private void prettyHexDump(byte[] bytes) {
         ByteBuf buffer = Unpooled.wrappedBuffer(bytes);
         System.out.println(ByteBufUtil.prettyHexDump(buffer));
     }
     
     private Tag read(byte[] bytes) {
+        return read(serializer, bytes);
+    }
+    
+    private Tag read(MessagePackSerializer serializer, byte[] bytes) {
         try (ByteArrayInputStream input = new ByteArrayInputStream(bytes)) {
             return serializer.read(input);
         } catch (IOException ex) {
@@ -137,6 +1068,10 @@ public class MessagePackTest {
     }
     
     private byte[] write(Tag tag) {
+        return write(serializer, tag);
+    }
+    
+    private byte[] write(MessagePackSerializer serializer, Tag tag) {
         try (ByteArrayOutputStream output = new ByteArrayOutputStream()) {
             serializer.write(output, tag);
             return output.toByteArray();
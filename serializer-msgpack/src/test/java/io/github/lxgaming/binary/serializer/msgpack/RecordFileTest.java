@@ -0,0 +1,117 @@
+/*
+ * Copyright 2021 Alex Thomson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.lxgaming.binary.serializer.msgpack;
+
+import io.github.lxgaming.binary.record.RecordFile;
+import io.github.lxgaming.binary.record.RecordReader;
+import io.github.lxgaming.binary.record.RecordWriter;
+import io.github.lxgaming.binary.tag.CompoundTag;
+import io.github.lxgaming.binary.tag.Tag;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+public class RecordFileTest {
+    
+    private final MessagePackSerializer serializer = new MessagePackSerializer();
+    
+    @TempDir
+    Path directory;
+    
+    @Test
+    public void testRecordFile() throws IOException {
+        Path path = directory.resolve("records.bin");
+        try (RecordWriter writer = new RecordWriter(path, serializer)) {
+            for (int index = 0; index < 500; index++) {
+                Assertions.assertEquals(index, writer.append(createRecord(index)));
+            }
+        }
+        
+        try (RecordWriter writer = new RecordWriter(path, serializer)) {
+            Assertions.assertEquals(500, writer.size());
+            for (int index = 500; index < 1000; index++) {
+                writer.append(createRecord(index));
+            }
+        }
+        
+        try (InputStream input = Files.newInputStream(path); RecordReader reader = new RecordReader(input, serializer)) {
+            int index = 0;
+            Tag tag;
+            while ((tag = reader.read()) != null) {
+                Assertions.assertEquals(createRecord(index++), tag);
+            }
+            
+            Assertions.assertEquals(1000, index);
+        }
+        
+        for (boolean map : new boolean[]{false, true}) {
+            try (RecordFile file = new RecordFile(path, serializer, map)) {
+                Assertions.assertEquals(1000, file.size());
+                Assertions.assertEquals(createRecord(737), file.read(737));
+                
+                AtomicLongArray seen = new AtomicLongArray(file.size());
+                file.forEach(ForkJoinPool.commonPool(), 0, file.size(), (index, tag) -> {
+                    Assertions.assertEquals(createRecord(index), tag);
+                    seen.incrementAndGet(index);
+                });
+                
+                for (int index = 0; index < seen.length(); index++) {
+                    Assertions.assertEquals(1, seen.get(index));
+                }
+            }
+        }
+    }
+    
+    @Test
+    public void testRecovery() throws IOException {
+        Path path = directory.resolve("records.bin");
+        try (RecordWriter writer = new RecordWriter(path, serializer)) {
+            for (int index = 0; index < 10; index++) {
+                writer.append(createRecord(index));
+            }
+        }
+        
+        try (RecordFile file = new RecordFile(path, serializer)) {
+            long offset = file.getOffset(9);
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                channel.truncate(offset + 10);
+            }
+        }
+        
+        try (RecordFile file = new RecordFile(path, serializer)) {
+            Assertions.assertEquals(9, file.size());
+            Assertions.assertEquals(createRecord(8), file.read(8));
+        }
+    }
+    
+    private CompoundTag createRecord(int index) {
+        CompoundTag compound = new CompoundTag();
+        compound.putInt("index", index);
+        compound.putString("name", "Record " + index);
+        compound.putLongArray("data", new long[index % 7]);
+        return compound;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2021 Alex Thomson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.lxgaming.binary.serializer.msgpack;
+
+import io.github.lxgaming.binary.store.TagStore;
+import io.github.lxgaming.binary.tag.CompoundTag;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class TagStoreTest {
+    
+    private final MessagePackSerializer serializer = new MessagePackSerializer();
+    
+    @TempDir
+    Path directory;
+    
+    @Test
+    public void testStore() throws Exception {
+        try (TagStore store = new TagStore(directory, serializer, 4096, 0.5D, true)) {
+            ExecutorService executor = Executors.newFixedThreadPool(4);
+            try {
+                List<Future<?>> futures = new ArrayList<>();
+                for (int thread = 0; thread < 4; thread++) {
+                    int offset = thread * 100;
+                    futures.add(executor.submit(() -> {
+                        for (int index = offset; index < offset + 100; index++) {
+                            store.put("player-" + index, createValue(index, 0));
+                        }
+                        
+                        return null;
+                    }));
+                }
+                
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+            } finally {
+                executor.shutdown();
+            }
+            
+            for (int revision = 1; revision <= 5; revision++) {
+                for (int index = 0; index < 400; index++) {
+                    store.put("player-" + index, createValue(index, revision));
+                }
+            }
+            
+            for (int index = 0; index < 400; index += 2) {
+                Assertions.assertTrue(store.remove("player-" + index));
+            }
+            
+            Assertions.assertFalse(store.remove("player-0"));
+            store.compact();
+            Assertions.assertEquals(200, store.size());
+            Assertions.assertNull(store.get("player-0"));
+            Assertions.assertEquals(createValue(1, 5), store.get("player-1"));
+        }
+        
+        try (TagStore store = new TagStore(directory, serializer, 4096, 0.5D, true)) {
+            Assertions.assertEquals(200, store.size());
+            for (int index = 0; index < 400; index++) {
+                Assertions.assertEquals(index % 2 == 0 ? null : createValue(index, 5), store.get("player-" + index));
+            }
+        }
+    }
+    
+    @Test
+    public void testRecovery() throws IOException {
+        try (TagStore store = new TagStore(directory, serializer)) {
+            store.put("first", createValue(1, 0));
+            store.put("second", createValue(2, 0));
+        }
+        
+        Path segment;
+        try (Stream<Path> stream = Files.list(directory)) {
+            segment = stream.filter(path -> path.toString().endsWith(".segment")).collect(Collectors.toList()).get(0);
+        }
+        
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 3);
+        }
+        
+        try (TagStore store = new TagStore(directory, serializer)) {
+            Assertions.assertEquals(1, store.size());
+            Assertions.assertEquals(createValue(1, 0), store.get("first"));
+            store.put("second", createValue(2, 1));
+        }
+        
+        try (TagStore store = new TagStore(directory, serializer)) {
+            Assertions.assertEquals(createValue(2, 1), store.get("second"));
+        }
+    }
+    
+    private CompoundTag createValue(int index, int revision) {
+        CompoundTag compound = new CompoundTag();
+        compound.putInt("index", index);
+        compound.putInt("revision", revision);
+        compound.putString("name", "Player " + index);
+        return compound;
+    }
+}
\ No newline at end of file
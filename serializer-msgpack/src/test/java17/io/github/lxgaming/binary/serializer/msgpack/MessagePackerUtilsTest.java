@@ -0,0 +1,187 @@
+/*
+ * Copyright 2021 Alex Thomson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.lxgaming.binary.serializer.msgpack;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.msgpack.core.MessageBufferPacker;
+import org.msgpack.core.MessagePack;
+import org.msgpack.core.MessagePacker;
+
+import java.io.File;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Random;
+
+/**
+ * Compares the Java 17 {@link MessagePackerUtils} with the Java 8 implementation, which is loaded from the main classes
+ * given by the {@code binary.java8.classes} system property.
+ */
+public class MessagePackerUtilsTest {
+    
+    private static final int[] LENGTHS = {0, 1, 2, 1023, 1024, 1025, 2048, 4099};
+    private static Class<?> java8Class;
+    
+    @BeforeAll
+    public static void setup() throws ReflectiveOperationException, MalformedURLException {
+        String property = System.getProperty("binary.java8.classes");
+        Assertions.assertNotNull(property, "binary.java8.classes is not set");
+        
+        String[] paths = property.split(File.pathSeparator);
+        URL[] urls = new URL[paths.length];
+        for (int index = 0; index < paths.length; index++) {
+            urls[index] = new File(paths[index]).toURI().toURL();
+        }
+        
+        java8Class = new Java8ClassLoader(urls, MessagePackerUtilsTest.class.getClassLoader()).loadClass(MessagePackerUtils.class.getName());
+        Assertions.assertNotSame(MessagePackerUtils.class, java8Class);
+        
+        // Fails if the main classes were put ahead of the Java 17 classes.
+        MessagePackerUtils.class.getDeclaredField("CHUNK_LENGTH");
+        Assertions.assertThrows(NoSuchFieldException.class, () -> java8Class.getDeclaredField("CHUNK_LENGTH"));
+    }
+    
+    @Test
+    public void testPackShort() throws Throwable {
+        MethodHandle java8 = find(java8Class, "packShort", short.class);
+        MethodHandle java17 = find(MessagePackerUtils.class, "packShort", short.class);
+        for (int value = Short.MIN_VALUE; value <= Short.MAX_VALUE; value++) {
+            assertPacked(java8, java17, (short) value);
+        }
+    }
+    
+    @Test
+    public void testPackInt() throws Throwable {
+        MethodHandle java8 = find(java8Class, "packInt", int.class);
+        MethodHandle java17 = find(MessagePackerUtils.class, "packInt", int.class);
+        for (int value : new int[]{0, 1, -1, 127, 128, -32, -33, 255, 256, 65535, 65536, Integer.MIN_VALUE, Integer.MAX_VALUE}) {
+            assertPacked(java8, java17, value);
+        }
+        
+        Random random = new Random(0L);
+        for (int index = 0; index < 10_000; index++) {
+            assertPacked(java8, java17, random.nextInt());
+        }
+    }
+    
+    @Test
+    public void testPackLong() throws Throwable {
+        MethodHandle java8 = find(java8Class, "packLong", long.class);
+        MethodHandle java17 = find(MessagePackerUtils.class, "packLong", long.class);
+        for (long value : new long[]{0L, 1L, -1L, 127L, 128L, -32L, -33L, 4294967295L, 4294967296L, Integer.MIN_VALUE, Long.MIN_VALUE, Long.MAX_VALUE}) {
+            assertPacked(java8, java17, value);
+        }
+        
+        Random random = new Random(0L);
+        for (int index = 0; index < 10_000; index++) {
+            assertPacked(java8, java17, random.nextLong());
+        }
+    }
+    
+    @Test
+    public void testPackFloats() throws Throwable {
+        MethodHandle java8 = find(java8Class, "packFloats", float[].class);
+        MethodHandle java17 = find(MessagePackerUtils.class, "packFloats", float[].class);
+        float[] specials = {
+                0.0F, -0.0F, Float.NaN, Float.intBitsToFloat(0x7FC12345), Float.intBitsToFloat(0xFF800001),
+                Float.POSITIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.MIN_VALUE, Float.MIN_NORMAL, Float.MAX_VALUE
+        };
+        
+        Random random = new Random(0L);
+        for (int length : LENGTHS) {
+            float[] values = new float[length];
+            for (int index = 0; index < length; index++) {
+                values[index] = index < specials.length ? specials[index] : Float.intBitsToFloat(random.nextInt());
+            }
+            
+            assertPacked(java8, java17, values);
+        }
+    }
+    
+    @Test
+    public void testPackDoubles() throws Throwable {
+        MethodHandle java8 = find(java8Class, "packDoubles", double[].class);
+        MethodHandle java17 = find(MessagePackerUtils.class, "packDoubles", double[].class);
+        double[] specials = {
+                0.0D, -0.0D, Double.NaN, Double.longBitsToDouble(0x7FF8000012345678L), Double.longBitsToDouble(0xFFF0000000000001L),
+                Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.MIN_VALUE, Double.MIN_NORMAL, Double.MAX_VALUE
+        };
+        
+        Random random = new Random(0L);
+        for (int length : LENGTHS) {
+            double[] values = new double[length];
+            for (int index = 0; index < length; index++) {
+                values[index] = index < specials.length ? specials[index] : Double.longBitsToDouble(random.nextLong());
+            }
+            
+            assertPacked(java8, java17, values);
+        }
+    }
+    
+    private static MethodHandle find(Class<?> type, String name, Class<?> parameterType) throws ReflectiveOperationException {
+        Class<?> returnType = parameterType.isArray() ? void.class : MessagePacker.class;
+        MethodHandle handle = MethodHandles.publicLookup().findStatic(type, name, MethodType.methodType(returnType, MessagePacker.class, parameterType));
+        return handle.asType(MethodType.methodType(void.class, MessagePacker.class, Object.class));
+    }
+    
+    private static void assertPacked(MethodHandle java8, MethodHandle java17, Object value) throws Throwable {
+        Assertions.assertArrayEquals(pack(java8, value), pack(java17, value), () -> String.format("Mismatch packing %s", value));
+    }
+    
+    private static byte[] pack(MethodHandle handle, Object value) throws Throwable {
+        try (MessageBufferPacker packer = MessagePack.newDefaultBufferPacker()) {
+            handle.invokeExact((MessagePacker) packer, value);
+            return packer.toByteArray();
+        }
+    }
+    
+    /**
+     * Defines {@link MessagePackerUtils} from the main classes and delegates everything else, so the Java 8
+     * implementation shares {@link MessagePacker} with the Java 17 implementation on the test classpath.
+     */
+    private static class Java8ClassLoader extends URLClassLoader {
+        
+        private Java8ClassLoader(URL[] urls, ClassLoader parent) {
+            super(urls, parent);
+        }
+        
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            if (!name.equals(MessagePackerUtils.class.getName())) {
+                return super.loadClass(name, resolve);
+            }
+            
+            synchronized (getClassLoadingLock(name)) {
+                Class<?> type = findLoadedClass(name);
+                if (type == null) {
+                    type = findClass(name);
+                }
+                
+                if (resolve) {
+                    resolveClass(type);
+                }
+                
+                return type;
+            }
+        }
+    }
+}
\ No newline at end of file
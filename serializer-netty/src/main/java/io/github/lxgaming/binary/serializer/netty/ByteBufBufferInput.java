@@ -0,0 +1,82 @@
+/*
+ * Copyright 2021 Alex Thomson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.lxgaming.binary.serializer.netty;
+
+import io.netty.buffer.ByteBuf;
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.msgpack.core.buffer.MessageBuffer;
+import org.msgpack.core.buffer.MessageBufferInput;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Exposes the readable bytes of a {@link ByteBuf} to a {@link org.msgpack.core.MessageUnpacker} without copying.
+ * <p>
+ * The reader index is left untouched, callers advance it by
+ * {@link org.msgpack.core.MessageUnpacker#getTotalReadBytes()} once a value has been read. Memory that cannot be
+ * wrapped, such as direct memory when {@link MessageBufferUtils#isDirectSupported()} is false, is copied instead.
+ */
+public class ByteBufBufferInput implements MessageBufferInput {
+    
+    private static final ByteBuffer[] EMPTY_BUFFERS = new ByteBuffer[0];
+    
+    private ByteBuf buffer;
+    private ByteBuffer[] buffers;
+    private int index;
+    
+    public ByteBufBufferInput(@NonNull ByteBuf buffer) {
+        reset(buffer);
+    }
+    
+    public @NonNull ByteBuf reset(@NonNull ByteBuf buffer) {
+        ByteBuf previous = this.buffer;
+        this.buffer = buffer;
+        this.buffers = null;
+        this.index = 0;
+        return previous;
+    }
+    
+    @Override
+    public @Nullable MessageBuffer next() {
+        if (buffers == null) {
+            buffers = buffer.isReadable() ? buffer.nioBuffers(buffer.readerIndex(), buffer.readableBytes()) : EMPTY_BUFFERS;
+        }
+        
+        while (index < buffers.length) {
+            ByteBuffer byteBuffer = buffers[index++];
+            if (!byteBuffer.hasRemaining()) {
+                continue;
+            }
+            
+            if (MessageBufferUtils.isWrappable(byteBuffer)) {
+                return MessageBuffer.wrap(byteBuffer);
+            }
+            
+            byte[] bytes = new byte[byteBuffer.remaining()];
+            byteBuffer.get(bytes);
+            return MessageBuffer.wrap(bytes);
+        }
+        
+        return null;
+    }
+    
+    @Override
+    public void close() {
+        // The buffer is owned by the caller
+    }
+}
\ No newline at end of file
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2021 Alex Thomson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.lxgaming.binary.serializer.netty;
+
+import io.netty.buffer.ByteBuf;
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.msgpack.core.buffer.MessageBuffer;
+import org.msgpack.core.buffer.MessageBufferOutput;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Lets a {@link org.msgpack.core.MessagePacker} write straight into the writable region of a {@link ByteBuf}.
+ * <p>
+ * Buffers that are not backed by a single NIO buffer, such as composite buffers, or whose memory cannot be wrapped are
+ * written through a scratch buffer.
+ */
+public class ByteBufBufferOutput implements MessageBufferOutput {
+    
+    private static final int SCRATCH_SIZE = 8192;
+    
+    private ByteBuf buffer;
+    private MessageBuffer scratch;
+    private boolean copy;
+    
+    public ByteBufBufferOutput(@NonNull ByteBuf buffer) {
+        this.buffer = buffer;
+    }
+    
+    public @NonNull ByteBuf reset(@NonNull ByteBuf buffer) {
+        ByteBuf previous = this.buffer;
+        this.buffer = buffer;
+        return previous;
+    }
+    
+    @Override
+    public @NonNull MessageBuffer next(int minimumSize) {
+        buffer.ensureWritable(minimumSize);
+        if (buffer.nioBufferCount() == 1) {
+            ByteBuffer byteBuffer = buffer.nioBuffer(buffer.writerIndex(), buffer.writableBytes());
+            if (MessageBufferUtils.isWrappable(byteBuffer)) {
+                copy = false;
+                return MessageBuffer.wrap(byteBuffer);
+            }
+        }
+        
+        if (scratch == null || scratch.size() < minimumSize) {
+            scratch = MessageBuffer.allocate(Math.max(minimumSize, SCRATCH_SIZE));
+        }
+        
+        copy = true;
+        return scratch;
+    }
+    
+    @Override
+    public void writeBuffer(int length) {
+        if (copy) {
+            buffer.writeBytes(scratch.sliceAsByteBuffer(0, length));
+        } else {
+            buffer.writerIndex(buffer.writerIndex() + length);
+        }
+    }
+    
+    @Override
+    public void write(byte @NonNull [] bytes, int offset, int length) {
+        buffer.writeBytes(bytes, offset, length);
+    }
+    
+    @Override
+    public void add(byte @NonNull [] bytes, int offset, int length) {
+        buffer.writeBytes(bytes, offset, length);
+    }
+    
+    @Override
+    public void flush() {
+        // Bytes are written to the buffer as they are produced
+    }
+    
+    @Override
+    public void close() {
+        // The buffer is owned by the caller
+    }
+}
\ No newline at end of file
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2021 Alex Thomson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.lxgaming.binary.serializer.netty;
+
+import org.msgpack.core.buffer.MessageBuffer;
+
+import java.nio.ByteBuffer;
+
+public class MessageBufferUtils {
+    
+    private static final boolean DIRECT_SUPPORTED;
+    
+    static {
+        boolean directSupported;
+        try {
+            // Wrapping direct memory needs reflective access to java.nio, which newer JDKs deny unless it is opened
+            MessageBuffer.wrap(ByteBuffer.allocateDirect(1));
+            directSupported = true;
+        } catch (Throwable throwable) {
+            directSupported = false;
+        }
+        
+        DIRECT_SUPPORTED = directSupported;
+    }
+    
+    public static boolean isDirectSupported() {
+        return DIRECT_SUPPORTED;
+    }
+    
+    public static boolean isWrappable(ByteBuffer buffer) {
+        return buffer.isDirect() ? DIRECT_SUPPORTED : buffer.hasArray();
+    }
+}
\ No newline at end of file
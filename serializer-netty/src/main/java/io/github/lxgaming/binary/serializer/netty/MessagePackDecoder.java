@@ -0,0 +1,145 @@
+/*
+ * Copyright 2021 Alex Thomson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.lxgaming.binary.serializer.netty;
+
+import io.github.lxgaming.binary.serializer.msgpack.MessagePackSerializer;
+import io.github.lxgaming.binary.serializer.msgpack.SerializerListener;
+import io.github.lxgaming.binary.tag.Tag;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.handler.codec.TooLongFrameException;
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.msgpack.core.MessageInsufficientBufferException;
+import org.msgpack.core.MessageUnpacker;
+
+import java.util.List;
+
+/**
+ * Decodes tags from inbound {@link ByteBuf}s.
+ * <p>
+ * With framing each tag is prefixed with a 4 byte length field written by a framed {@link MessagePackEncoder} and is
+ * only decoded once the whole frame has arrived. Without framing a decode is attempted whenever bytes arrive and is
+ * retried once more bytes are available if the tag is incomplete, which repeats work for tags spanning many reads.
+ */
+public class MessagePackDecoder extends ByteToMessageDecoder {
+    
+    public static final int DEFAULT_MAX_FRAME_LENGTH = 16 << 20;
+    
+    private final MessagePackSerializer serializer;
+    private final boolean framed;
+    private final int maxFrameLength;
+    private final ByteBufBufferInput input;
+    private final MessageUnpacker unpacker;
+    
+    public MessagePackDecoder(@NonNull MessagePackSerializer serializer) {
+        this(serializer, false, DEFAULT_MAX_FRAME_LENGTH);
+    }
+    
+    public MessagePackDecoder(@NonNull MessagePackSerializer serializer, boolean framed) {
+        this(serializer, framed, DEFAULT_MAX_FRAME_LENGTH);
+    }
+    
+    public MessagePackDecoder(@NonNull MessagePackSerializer serializer, boolean framed, int maxFrameLength) {
+        this.serializer = serializer;
+        this.framed = framed;
+        this.maxFrameLength = maxFrameLength;
+        this.input = new ByteBufBufferInput(Unpooled.EMPTY_BUFFER);
+        this.unpacker = serializer.newUnpacker(input);
+    }
+    
+    @Override
+    protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) throws Exception {
+        if (framed) {
+            decodeFrames(in, out);
+        } else {
+            decodeValues(in, out);
+        }
+    }
+    
+    private void decodeFrames(ByteBuf in, List<Object> out) throws Exception {
+        while (in.readableBytes() >= 4) {
+            int length = in.getInt(in.readerIndex());
+            if (length < 0) {
+                throw new CorruptedFrameException(String.format("Negative frame length %s", length));
+            }
+            
+            if (length > maxFrameLength) {
+                in.skipBytes(in.readableBytes());
+                throw new TooLongFrameException(String.format("Frame length %s exceeds %s", length, maxFrameLength));
+            }
+            
+            if (in.readableBytes() < 4 + length) {
+                return;
+            }
+            
+            ByteBuf frame = in.slice(in.readerIndex() + 4, length);
+            try {
+                out.add(read(frame));
+            } catch (MessageInsufficientBufferException ex) {
+                throw new CorruptedFrameException("Frame ended before the tag", ex);
+            } finally {
+                input.reset(Unpooled.EMPTY_BUFFER);
+            }
+            
+            if (unpacker.getTotalReadBytes() != length) {
+                throw new CorruptedFrameException(String.format("Frame length %s does not match tag length %s", length, unpacker.getTotalReadBytes()));
+            }
+            
+            in.skipBytes(4 + length);
+        }
+    }
+    
+    private void decodeValues(ByteBuf in, List<Object> out) throws Exception {
+        while (in.isReadable()) {
+            try {
+                out.add(read(in));
+            } catch (MessageInsufficientBufferException ex) {
+                // Partial tag, wait for more bytes
+                return;
+            } finally {
+                input.reset(Unpooled.EMPTY_BUFFER);
+            }
+            
+            in.skipBytes((int) unpacker.getTotalReadBytes());
+        }
+    }
+    
+    private Object read(ByteBuf buffer) throws Exception {
+        input.reset(buffer);
+        unpacker.reset(input);
+        SerializerListener listener = serializer.getListener();
+        if (listener == SerializerListener.NONE) {
+            return serializer.read(unpacker);
+        }
+        
+        long start = System.nanoTime();
+        Tag tag = serializer.read(unpacker);
+        listener.onRead(tag, unpacker.getTotalReadBytes(), System.nanoTime() - start);
+        return tag;
+    }
+    
+    public boolean isFramed() {
+        return framed;
+    }
+    
+    public int getMaxFrameLength() {
+        return maxFrameLength;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2021 Alex Thomson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.lxgaming.binary.serializer.netty;
+
+import io.github.lxgaming.binary.serializer.msgpack.MessagePackSerializer;
+import io.github.lxgaming.binary.serializer.msgpack.MessagePackerImpl;
+import io.github.lxgaming.binary.serializer.msgpack.SerializerListener;
+import io.github.lxgaming.binary.tag.Tag;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.MessageToByteEncoder;
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.msgpack.core.MessagePacker;
+
+/**
+ * Encodes tags into the outbound {@link ByteBuf}, optionally prefixed with a 4 byte length field.
+ * <p>
+ * Heap buffers are preferred when the packer cannot write to direct memory, keeping the encode free of copies. The
+ * outbound buffer is sized from {@link MessagePackSerializer#encodedSize(Tag)} so it never grows during the encode.
+ */
+@ChannelHandler.Sharable
+public class MessagePackEncoder extends MessageToByteEncoder<Tag> {
+    
+    private final MessagePackSerializer serializer;
+    private final boolean framed;
+    
+    public MessagePackEncoder(@NonNull MessagePackSerializer serializer) {
+        this(serializer, false);
+    }
+    
+    public MessagePackEncoder(@NonNull MessagePackSerializer serializer, boolean framed) {
+        super(Tag.class, MessageBufferUtils.isDirectSupported());
+        this.serializer = serializer;
+        this.framed = framed;
+    }
+    
+    @Override
+    protected ByteBuf allocateBuffer(ChannelHandlerContext ctx, Tag tag, boolean preferDirect) throws Exception {
+        long size = serializer.encodedSize(tag) + (framed ? 4 : 0);
+        if (size > Integer.MAX_VALUE) {
+            return super.allocateBuffer(ctx, tag, preferDirect);
+        }
+        
+        if (preferDirect) {
+            return ctx.alloc().ioBuffer((int) size);
+        } else {
+            return ctx.alloc().heapBuffer((int) size);
+        }
+    }
+    
+    @Override
+    protected void encode(ChannelHandlerContext ctx, Tag tag, ByteBuf out) throws Exception {
+        int start = out.writerIndex();
+        if (framed) {
+            out.writeInt(0);
+        }
+        
+        SerializerListener listener = serializer.getListener();
+        long time = listener != SerializerListener.NONE ? System.nanoTime() : 0L;
+        MessagePacker packer = new MessagePackerImpl(new ByteBufBufferOutput(out), serializer.getPackerConfig());
+        serializer.write(packer, tag);
+        packer.flush();
+        if (listener != SerializerListener.NONE) {
+            listener.onWrite(tag, packer.getTotalWrittenBytes(), System.nanoTime() - time);
+        }
+        
+        if (framed) {
+            out.setInt(start, out.writerIndex() - start - 4);
+        }
+    }
+    
+    public boolean isFramed() {
+        return framed;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2021 Alex Thomson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.lxgaming.binary.serializer.netty;
+
+import io.github.lxgaming.binary.serializer.msgpack.MessagePackSerializer;
+import io.github.lxgaming.binary.serializer.msgpack.MessagePackerImpl;
+import io.github.lxgaming.binary.tag.CompoundTag;
+import io.github.lxgaming.binary.tag.ListTag;
+import io.github.lxgaming.binary.tag.Tag;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.msgpack.core.MessagePacker;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+public class NettyTest {
+    
+    private final MessagePackSerializer serializer = new MessagePackSerializer();
+    
+    @Test
+    public void testEncoder() throws IOException {
+        CompoundTag compound = createCompound(0);
+        EmbeddedChannel channel = new EmbeddedChannel(new MessagePackEncoder(serializer));
+        Assertions.assertTrue(channel.writeOutbound(compound));
+        ByteBuf buffer = channel.readOutbound();
+        try {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            serializer.write(output, compound);
+            Assertions.assertArrayEquals(output.toByteArray(), toByteArray(buffer));
+        } finally {
+            buffer.release();
+        }
+        
+        CompositeByteBuf composite = Unpooled.compositeBuffer();
+        try {
+            MessagePacker packer = new MessagePackerImpl(new ByteBufBufferOutput(composite), serializer.getPackerConfig());
+            serializer.write(packer, compound);
+            packer.flush();
+            Assertions.assertEquals(compound, serializer.read(new ByteArrayInputStream(toByteArray(composite))));
+        } finally {
+            composite.release();
+        }
+    }
+    
+    @Test
+    public void testCodec() {
+        for (boolean framed : new boolean[]{false, true}) {
+            EmbeddedChannel encoder = new EmbeddedChannel(new MessagePackEncoder(serializer, framed));
+            EmbeddedChannel decoder = new EmbeddedChannel(new MessagePackDecoder(serializer, framed));
+            for (int index = 0; index < 8; index++) {
+                Assertions.assertTrue(encoder.writeOutbound(createCompound(index)));
+            }
+            
+            // Deliver the encoded stream in small pieces so most tags arrive as partial frames
+            ByteBuf stream = Unpooled.buffer();
+            ByteBuf buffer;
+            while ((buffer = encoder.readOutbound()) != null) {
+                stream.writeBytes(buffer);
+                buffer.release();
+            }
+            
+            while (stream.isReadable()) {
+                decoder.writeInbound(stream.readRetainedSlice(Math.min(7, stream.readableBytes())));
+            }
+            
+            stream.release();
+            for (int index = 0; index < 8; index++) {
+                Tag tag = decoder.readInbound();
+                Assertions.assertEquals(createCompound(index), tag);
+            }
+            
+            Assertions.assertNull(decoder.readInbound());
+            Assertions.assertFalse(decoder.finish());
+            Assertions.assertFalse(encoder.finish());
+        }
+    }
+    
+    private CompoundTag createCompound(int index) {
+        CompoundTag compound = new CompoundTag();
+        compound.putInt("index", index);
+        compound.putString("name", "Message " + index);
+        compound.putLongArray("long_array", new long[index * 16]);
+        ListTag list = new ListTag();
+        for (int value = 0; value < index; value++) {
+            CompoundTag entry = new CompoundTag();
+            entry.putDouble("value", value * 0.5D);
+            list.add(entry);
+        }
+        
+        compound.putList("list", list);
+        return compound;
+    }
+    
+    private byte[] toByteArray(ByteBuf buffer) {
+        byte[] bytes = new byte[buffer.readableBytes()];
+        buffer.getBytes(buffer.readerIndex(), bytes);
+        return bytes;
+    }
+}
\ No newline at end of file
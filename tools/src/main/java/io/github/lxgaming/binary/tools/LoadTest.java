@@ -0,0 +1,334 @@
+/*
+ * Copyright 2021 Alex Thomson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.lxgaming.binary.tools;
+
+import io.github.lxgaming.binary.serializer.msgpack.Histogram;
+import io.github.lxgaming.binary.serializer.msgpack.MessagePackSerializer;
+import io.github.lxgaming.binary.tag.Tag;
+import org.checkerframework.checker.nullness.qual.NonNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Replays a corpus of tags through a {@link MessagePackSerializer} from many threads and reports throughput, latency
+ * percentiles and allocation per operation.
+ * <p>
+ * The corpus is either every tag in the files of a directory, such as those captured by a
+ * {@link io.github.lxgaming.binary.serializer.msgpack.TagOutputSession}, or generated from a {@link ShapeSpec}. Each
+ * thread cycles through the operations and the corpus. With a target rate operations are scheduled at fixed intervals
+ * and latency is measured from the scheduled start, so a stall also counts against the operations queued behind it.
+ * <pre>
+ * gradle :binary-tools:run --args="--corpus captures --threads 8 --rate 20000 --duration 60"
+ * gradle :binary-tools:run --args="--shape count=16,depth=0,array=65536 --operations read,write"
+ * </pre>
+ */
+public class LoadTest {
+    
+    private static final String USAGE = String.join(System.lineSeparator(),
+            "Usage: LoadTest (--corpus <directory> | --shape <spec>) [options]",
+            "  --corpus <directory>   replay every tag in the files of the directory",
+            "  --shape <spec>         generate tags, for example count=64,entries=16,depth=2,fanout=2,list=8,array=256,string=16,seed=0",
+            "  --operations <list>    comma separated operations from read, write, copy and equals (default all)",
+            "  --threads <count>      number of threads (default available processors)",
+            "  --rate <count>         target operations per second across all threads, 0 for unlimited (default 0)",
+            "  --warmup <seconds>     time to run before measuring (default 5)",
+            "  --duration <seconds>   time to measure (default 30)");
+    
+    private static final ThreadMXBean THREAD_MX_BEAN = ManagementFactory.getThreadMXBean();
+    private static final boolean ALLOCATION_SUPPORTED = THREAD_MX_BEAN instanceof com.sun.management.ThreadMXBean
+            && ((com.sun.management.ThreadMXBean) THREAD_MX_BEAN).isThreadAllocatedMemorySupported()
+            && ((com.sun.management.ThreadMXBean) THREAD_MX_BEAN).isThreadAllocatedMemoryEnabled();
+    
+    private final MessagePackSerializer serializer;
+    private final List<Sample> samples;
+    private final List<Operation> operations;
+    private final int threads;
+    private final long rate;
+    private final Map<Operation, Result> results;
+    private final AtomicReference<Throwable> failure;
+    private volatile boolean running;
+    
+    public LoadTest(@NonNull MessagePackSerializer serializer, @NonNull List<Sample> samples, @NonNull List<Operation> operations, int threads, long rate) {
+        if (samples.isEmpty() || operations.isEmpty()) {
+            throw new IllegalArgumentException("Samples and operations must not be empty");
+        }
+        
+        this.serializer = serializer;
+        this.samples = samples;
+        this.operations = operations;
+        this.threads = threads;
+        this.rate = rate;
+        this.results = new EnumMap<>(Operation.class);
+        this.failure = new AtomicReference<>();
+        for (Operation operation : operations) {
+            results.put(operation, new Result());
+        }
+    }
+    
+    public static void main(String[] args) throws Exception {
+        MessagePackSerializer serializer = new MessagePackSerializer();
+        List<Tag> tags;
+        List<Operation> operations;
+        int threads;
+        long rate;
+        long warmup;
+        long duration;
+        try {
+            Map<String, String> options = parseOptions(args);
+            if (options.containsKey("help")) {
+                System.out.println(USAGE);
+                return;
+            }
+            
+            if (options.containsKey("corpus") == options.containsKey("shape")) {
+                throw new IllegalArgumentException("Expected one of --corpus or --shape");
+            }
+            
+            tags = options.containsKey("corpus") ? loadCorpus(serializer, Paths.get(options.get("corpus"))) : new ArrayList<>(ShapeSpec.parse(options.get("shape")).create());
+            operations = Stream.of(options.getOrDefault("operations", "read,write,copy,equals").split(","))
+                    .map(operation -> Operation.valueOf(operation.trim().toUpperCase(Locale.ROOT)))
+                    .distinct()
+                    .collect(Collectors.toList());
+            
+            threads = Integer.parseInt(options.getOrDefault("threads", String.valueOf(Runtime.getRuntime().availableProcessors())));
+            rate = Long.parseLong(options.getOrDefault("rate", "0"));
+            warmup = Long.parseLong(options.getOrDefault("warmup", "5"));
+            duration = Long.parseLong(options.getOrDefault("duration", "30"));
+            if (threads <= 0 || rate < 0 || warmup < 0 || duration <= 0) {
+                throw new IllegalArgumentException("Threads and duration must be positive, rate and warmup must not be negative");
+            }
+        } catch (IllegalArgumentException ex) {
+            System.err.println(ex.getMessage());
+            System.err.println(USAGE);
+            System.exit(1);
+            return;
+        }
+        
+        List<Sample> samples = new ArrayList<>(tags.size());
+        for (Tag tag : tags) {
+            samples.add(new Sample(serializer, tag));
+        }
+        
+        long bytes = samples.stream().mapToLong(sample -> sample.getBytes().length).sum();
+        System.out.printf("%s tags, %s bytes encoded, %s threads, rate %s, warmup %ss, duration %ss%n",
+                samples.size(), bytes, threads, rate != 0 ? rate + "/s" : "unlimited", warmup, duration);
+        
+        LoadTest loadTest = new LoadTest(serializer, samples, operations, threads, rate);
+        long elapsed = loadTest.run(TimeUnit.SECONDS.toNanos(warmup), TimeUnit.SECONDS.toNanos(duration));
+        loadTest.report(elapsed);
+    }
+    
+    /**
+     * Runs the threads, discarding results recorded during the warmup.
+     *
+     * @return the nanoseconds measured
+     */
+    public long run(long warmupNanos, long durationNanos) throws InterruptedException {
+        running = true;
+        List<Thread> workers = new ArrayList<>(threads);
+        for (int index = 0; index < threads; index++) {
+            int offset = index;
+            Thread thread = new Thread(() -> work(offset), "LoadTest-" + index);
+            thread.setDaemon(true);
+            thread.start();
+            workers.add(thread);
+        }
+        
+        TimeUnit.NANOSECONDS.sleep(warmupNanos);
+        results.values().forEach(Result::reset);
+        long start = System.nanoTime();
+        TimeUnit.NANOSECONDS.sleep(durationNanos);
+        running = false;
+        long elapsed = System.nanoTime() - start;
+        for (Thread thread : workers) {
+            thread.join();
+        }
+        
+        Throwable throwable = failure.get();
+        if (throwable != null) {
+            throw new IllegalStateException("Operation failed", throwable);
+        }
+        
+        return elapsed;
+    }
+    
+    private void work(int offset) {
+        long interval = rate != 0 ? TimeUnit.SECONDS.toNanos(1) * threads / rate : 0L;
+        long next = System.nanoTime() + offset * (interval / threads);
+        long iteration = offset;
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try {
+            while (running) {
+                long start;
+                if (interval != 0L) {
+                    long now;
+                    while ((now = System.nanoTime()) < next) {
+                        LockSupport.parkNanos(next - now);
+                    }
+                    
+                    start = next;
+                    next += interval;
+                } else {
+                    start = System.nanoTime();
+                }
+                
+                Operation operation = operations.get((int) (iteration % operations.size()));
+                Sample sample = samples.get((int) (iteration / operations.size() % samples.size()));
+                long allocated = getAllocatedBytes();
+                long bytes = operation.run(serializer, sample, output);
+                long end = System.nanoTime();
+                results.get(operation).record(end - start, bytes, getAllocatedBytes() - allocated);
+                iteration++;
+            }
+        } catch (Throwable throwable) {
+            failure.compareAndSet(null, throwable);
+            running = false;
+        }
+    }
+    
+    public void report(long elapsedNanos) {
+        double seconds = elapsedNanos / 1e9D;
+        System.out.printf("%-8s %12s %10s %10s %10s %10s %10s %12s%n", "", "ops/s", "MB/s", "p50 us", "p99 us", "p99.9 us", "max us", "alloc B/op");
+        for (Map.Entry<Operation, Result> entry : results.entrySet()) {
+            Histogram latency = entry.getValue().latency;
+            long count = latency.getCount();
+            System.out.printf("%-8s %12.0f %10.1f %10.1f %10.1f %10.1f %10.1f %12s%n",
+                    entry.getKey().name().toLowerCase(Locale.ROOT),
+                    count / seconds,
+                    entry.getValue().bytes.sum() / seconds / (1 << 20),
+                    latency.getPercentile(50D) / 1e3D,
+                    latency.getPercentile(99D) / 1e3D,
+                    latency.getPercentile(99.9D) / 1e3D,
+                    latency.getMax() / 1e3D,
+                    ALLOCATION_SUPPORTED && count != 0 ? String.valueOf(entry.getValue().allocated.sum() / count) : "n/a");
+        }
+        
+        if (rate != 0) {
+            long count = results.values().stream().mapToLong(result -> result.latency.getCount()).sum();
+            if (count < rate * seconds * 0.95D) {
+                System.out.printf("Target rate not reached, %.0f of %s operations per second%n", count / seconds, rate);
+            }
+        }
+    }
+    
+    public @NonNull Map<Operation, Result> getResults() {
+        return results;
+    }
+    
+    /**
+     * Reads every tag in the regular files of the directory, in file name order.
+     */
+    public static @NonNull List<Tag> loadCorpus(@NonNull MessagePackSerializer serializer, @NonNull Path directory) throws IOException {
+        List<Path> paths;
+        try (Stream<Path> stream = Files.list(directory)) {
+            paths = stream.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+        }
+        
+        List<Tag> tags = new ArrayList<>();
+        for (Path path : paths) {
+            try (Stream<Tag> stream = serializer.stream(path)) {
+                stream.forEach(tags::add);
+            }
+        }
+        
+        if (tags.isEmpty()) {
+            throw new IOException(String.format("%s contains no tags", directory));
+        }
+        
+        return tags;
+    }
+    
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (int index = 0; index < args.length; index++) {
+            if (!args[index].startsWith("--")) {
+                throw new IllegalArgumentException(String.format("Unexpected argument %s", args[index]));
+            }
+            
+            String key = args[index].substring(2);
+            if (key.equals("help")) {
+                options.put(key, "");
+            } else if (index + 1 < args.length) {
+                options.put(key, args[++index]);
+            } else {
+                throw new IllegalArgumentException(String.format("Missing value for %s", args[index]));
+            }
+        }
+        
+        return options;
+    }
+    
+    private static long getAllocatedBytes() {
+        if (!ALLOCATION_SUPPORTED) {
+            return 0L;
+        }
+        
+        return ((com.sun.management.ThreadMXBean) THREAD_MX_BEAN).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+    
+    public static class Result {
+        
+        private final Histogram latency = new Histogram();
+        private final LongAdder bytes = new LongAdder();
+        private final LongAdder allocated = new LongAdder();
+        
+        private void record(long latencyNanos, long bytes, long allocated) {
+            this.latency.record(Math.max(latencyNanos, 0L));
+            this.bytes.add(bytes);
+            this.allocated.add(allocated);
+        }
+        
+        private void reset() {
+            latency.reset();
+            bytes.reset();
+            allocated.reset();
+        }
+        
+        /**
+         * Latency in nanoseconds.
+         */
+        public @NonNull Histogram getLatency() {
+            return latency;
+        }
+        
+        public long getBytes() {
+            return bytes.sum();
+        }
+        
+        public long getAllocated() {
+            return allocated.sum();
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2021 Alex Thomson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.lxgaming.binary.tools;
+
+import io.github.lxgaming.binary.serializer.msgpack.MessagePackSerializer;
+import org.checkerframework.checker.nullness.qual.NonNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+public enum Operation {
+    
+    READ {
+        @Override
+        public long run(@NonNull MessagePackSerializer serializer, @NonNull Sample sample, @NonNull ByteArrayOutputStream output) throws IOException {
+            serializer.read(new ByteArrayInputStream(sample.getBytes()));
+            return sample.getBytes().length;
+        }
+    },
+    
+    WRITE {
+        @Override
+        public long run(@NonNull MessagePackSerializer serializer, @NonNull Sample sample, @NonNull ByteArrayOutputStream output) throws IOException {
+            output.reset();
+            serializer.write(output, sample.getTag());
+            return output.size();
+        }
+    },
+    
+    COPY {
+        @Override
+        public long run(@NonNull MessagePackSerializer serializer, @NonNull Sample sample, @NonNull ByteArrayOutputStream output) {
+            sample.getTag().copy();
+            return 0L;
+        }
+    },
+    
+    /**
+     * Compares the tag with a copy, failing the run if they differ.
+     */
+    EQUALS {
+        @Override
+        public long run(@NonNull MessagePackSerializer serializer, @NonNull Sample sample, @NonNull ByteArrayOutputStream output) {
+            if (!sample.getTag().equals(sample.getCopy())) {
+                throw new IllegalStateException("Tag is not equal to its copy");
+            }
+            
+            return 0L;
+        }
+    };
+    
+    /**
+     * Runs the operation once.
+     *
+     * @param output a buffer owned by the calling thread
+     * @return the number of encoded bytes read or written
+     */
+    public abstract long run(@NonNull MessagePackSerializer serializer, @NonNull Sample sample, @NonNull ByteArrayOutputStream output) throws IOException;
+}
\ No newline at end of file
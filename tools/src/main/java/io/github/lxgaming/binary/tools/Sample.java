@@ -0,0 +1,54 @@
+/*
+ * Copyright 2021 Alex Thomson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.lxgaming.binary.tools;
+
+import io.github.lxgaming.binary.serializer.msgpack.MessagePackSerializer;
+import io.github.lxgaming.binary.tag.Tag;
+import org.checkerframework.checker.nullness.qual.NonNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/**
+ * A tag from the corpus along with its encoded bytes and an equal copy.
+ */
+public class Sample {
+    
+    private final Tag tag;
+    private final Tag copy;
+    private final byte[] bytes;
+    
+    public Sample(@NonNull MessagePackSerializer serializer, @NonNull Tag tag) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        serializer.write(output, tag);
+        this.tag = tag;
+        this.copy = tag.copy();
+        this.bytes = output.toByteArray();
+    }
+    
+    public @NonNull Tag getTag() {
+        return tag;
+    }
+    
+    public @NonNull Tag getCopy() {
+        return copy;
+    }
+    
+    public byte @NonNull [] getBytes() {
+        return bytes;
+    }
+}
\ No newline at end of file
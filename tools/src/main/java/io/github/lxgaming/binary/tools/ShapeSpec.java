@@ -0,0 +1,170 @@
+/*
+ * Copyright 2021 Alex Thomson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.lxgaming.binary.tools;
+
+import io.github.lxgaming.binary.tag.CompoundTag;
+import io.github.lxgaming.binary.tag.ListTag;
+import org.checkerframework.checker.nullness.qual.NonNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Describes synthetic compounds, parsed from a comma separated list of {@code key=value} pairs.
+ * <ul>
+ *     <li>{@code count} the number of compounds to generate</li>
+ *     <li>{@code entries} the number of scalar entries in each compound</li>
+ *     <li>{@code depth} the number of levels of nested compounds below the root</li>
+ *     <li>{@code fanout} the number of nested compounds in each compound above the deepest level</li>
+ *     <li>{@code list} the number of small compounds in a list in each compound</li>
+ *     <li>{@code array} the length of an int and a double array in each compound</li>
+ *     <li>{@code string} the length of string values</li>
+ *     <li>{@code seed} the seed of the generator</li>
+ * </ul>
+ * Keys which are not given keep their defaults, for example {@code count=16,depth=0,array=65536} describes 16 flat
+ * compounds holding large arrays.
+ */
+public class ShapeSpec {
+    
+    private static final List<String> KEYS = Arrays.asList("count", "entries", "depth", "fanout", "list", "array", "string", "seed");
+    private static final String DEFAULT = "count=64,entries=16,depth=2,fanout=2,list=8,array=256,string=16,seed=0";
+    
+    private final Map<String, Long> values;
+    
+    private ShapeSpec(Map<String, Long> values) {
+        this.values = values;
+    }
+    
+    public static @NonNull ShapeSpec parse(@NonNull String spec) {
+        Map<String, Long> values = new LinkedHashMap<>();
+        parse(DEFAULT, values);
+        parse(spec, values);
+        return new ShapeSpec(values);
+    }
+    
+    private static void parse(String spec, Map<String, Long> values) {
+        for (String pair : spec.split(",")) {
+            if (pair.trim().isEmpty()) {
+                continue;
+            }
+            
+            int index = pair.indexOf('=');
+            String key = index != -1 ? pair.substring(0, index).trim() : pair.trim();
+            if (index == -1 || !KEYS.contains(key)) {
+                throw new IllegalArgumentException(String.format("%s is not a valid shape entry", pair));
+            }
+            
+            try {
+                long value = Long.parseLong(pair.substring(index + 1).trim());
+                if (value < 0 && !key.equals("seed")) {
+                    throw new IllegalArgumentException(String.format("%s is negative", key));
+                }
+                
+                values.put(key, value);
+            } catch (NumberFormatException ex) {
+                throw new IllegalArgumentException(String.format("%s is not a valid shape entry", pair), ex);
+            }
+        }
+    }
+    
+    public @NonNull List<CompoundTag> create() {
+        Random random = new Random(values.get("seed"));
+        int count = getInt("count");
+        List<CompoundTag> compounds = new ArrayList<>(count);
+        for (int index = 0; index < count; index++) {
+            compounds.add(create(random, getInt("depth")));
+        }
+        
+        return compounds;
+    }
+    
+    private CompoundTag create(Random random, int depth) {
+        CompoundTag compound = new CompoundTag();
+        for (int index = 0; index < getInt("entries"); index++) {
+            switch (index % 4) {
+                case 0:
+                    compound.putInt("int_" + index, random.nextInt());
+                    break;
+                case 1:
+                    compound.putLong("long_" + index, random.nextLong());
+                    break;
+                case 2:
+                    compound.putDouble("double_" + index, random.nextDouble());
+                    break;
+                default:
+                    compound.putString("string_" + index, createString(random));
+                    break;
+            }
+        }
+        
+        if (getInt("array") != 0) {
+            int[] ints = new int[getInt("array")];
+            double[] doubles = new double[ints.length];
+            for (int index = 0; index < ints.length; index++) {
+                ints[index] = random.nextInt(1 << 16);
+                doubles[index] = random.nextGaussian();
+            }
+            
+            compound.putIntArray("ints", ints);
+            compound.putDoubleArray("doubles", doubles);
+        }
+        
+        if (getInt("list") != 0) {
+            ListTag list = new ListTag();
+            for (int index = 0; index < getInt("list"); index++) {
+                CompoundTag entry = new CompoundTag();
+                entry.putInt("id", index);
+                entry.putString("name", createString(random));
+                list.add(entry);
+            }
+            
+            compound.putList("list", list);
+        }
+        
+        if (depth > 0) {
+            for (int index = 0; index < getInt("fanout"); index++) {
+                compound.putCompound("child_" + index, create(random, depth - 1));
+            }
+        }
+        
+        return compound;
+    }
+    
+    private String createString(Random random) {
+        StringBuilder stringBuilder = new StringBuilder(getInt("string"));
+        for (int index = 0; index < getInt("string"); index++) {
+            stringBuilder.append((char) ('a' + random.nextInt(26)));
+        }
+        
+        return stringBuilder.toString();
+    }
+    
+    private int getInt(String key) {
+        return (int) Math.min(values.get(key), Integer.MAX_VALUE);
+    }
+    
+    @Override
+    public String toString() {
+        StringBuilder stringBuilder = new StringBuilder();
+        values.forEach((key, value) -> stringBuilder.append(stringBuilder.length() != 0 ? "," : "").append(key).append('=').append(value));
+        return stringBuilder.toString();
+    }
+}
\ No newline at end of file